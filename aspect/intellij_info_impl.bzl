@@ -1268,7 +1268,11 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     if aspect_ids:
         aspect_hash = hash(".".join(aspect_ids))
         file_name = file_name + "-" + str(aspect_hash)
-    file_name = file_name + ".intellij-info.txt"
+
+    # JSON is much cheaper for the IDE to parse than a text format proto, but isn't understood by
+    # older versions of the plugin, so must be requested.
+    json_output = get_registry_flag(ctx, "_intellij_info_json")
+    file_name = file_name + (".intellij-info.json" if json_output else ".intellij-info.txt")
     ide_info_file = ctx.actions.declare_file(file_name)
 
     target_key = make_target_key(target.label, aspect_ids)
@@ -1304,7 +1308,7 @@ def intellij_info_aspect_impl(target, ctx, semantics):
 
     # Output the ide information file.
     info = struct_omit_none(**ide_info)
-    ctx.actions.write(ide_info_file, proto.encode_text(info))
+    ctx.actions.write(ide_info_file, json.encode(info) if json_output else proto.encode_text(info))
 
     # Return providers.
     return [
@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.blaze.base.filecache.FileCacheWriter;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
@@ -45,7 +46,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -213,8 +213,9 @@ public class LocalArtifactCache implements ArtifactCache {
           .run();
 
       // Copy files to disk and notify
+      FileCacheWriter writer = new FileCacheWriter();
       List<ListenableFuture<String>> copyFutures =
-          copyLocally(updatedKeyToArtifact, updatedKeyToCacheEntry);
+          copyLocally(updatedKeyToArtifact, updatedKeyToCacheEntry, writer);
       List<String> copiedKeys = Futures.allAsList(copyFutures).get();
       copiedKeys.stream()
           .filter(k -> !k.isEmpty())
@@ -222,7 +223,10 @@ public class LocalArtifactCache implements ArtifactCache {
 
       if (!copiedKeys.isEmpty()) {
         context.output(
-            PrintOutput.log(String.format("Copied %d files to %s", copiedKeys.size(), cacheName)));
+            PrintOutput.log(
+                String.format(
+                    "Copied %d files to %s (%s)",
+                    copiedKeys.size(), cacheName, writer.getSummary())));
       }
 
       // Delete files from disk and notify
@@ -325,14 +329,15 @@ public class LocalArtifactCache implements ArtifactCache {
    */
   private ImmutableList<ListenableFuture<String>> copyLocally(
       Map<String, OutputArtifactWithoutDigest> updatedKeyToArtifact,
-      Map<String, CacheEntry> updatedKeyToCacheEntry) {
+      Map<String, CacheEntry> updatedKeyToCacheEntry,
+      FileCacheWriter writer) {
     return updatedKeyToArtifact.entrySet().stream()
         .map(
             kv ->
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        copyLocally(
+                        writer.write(
                             kv.getValue(),
                             getPathToCachedFile(
                                 updatedKeyToCacheEntry.get(kv.getKey()).getFileName()));
@@ -350,13 +355,6 @@ public class LocalArtifactCache implements ArtifactCache {
         .collect(ImmutableList.toImmutableList());
   }
 
-  private static void copyLocally(OutputArtifactWithoutDigest blazeArtifact, Path destinationPath)
-      throws IOException {
-    try (InputStream stream = blazeArtifact.getInputStream()) {
-      Files.copy(stream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
-    }
-  }
-
   /**
    * Returns a list of futures deleting files corresponding to the keys from disk. The returned
    * futures return the cache key on successful deletion, or an empty string on failure.
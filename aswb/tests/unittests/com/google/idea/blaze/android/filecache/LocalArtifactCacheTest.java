@@ -32,6 +32,8 @@ import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.sync.workspace.MockArtifactLocationDecoder;
 import com.google.idea.blaze.common.artifact.OutputArtifactWithoutDigest;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
 import com.google.idea.testing.IntellijRule;
 import java.io.File;
 import java.io.IOException;
@@ -66,6 +68,8 @@ public class LocalArtifactCacheTest {
         FileOperationProvider.class, new FileOperationProvider());
     intellijRule.registerApplicationService(
         RemoteArtifactPrefetcher.class, new DefaultPrefetcher());
+    intellijRule.registerApplicationService(
+        ExperimentService.class, new MockExperimentService());
 
     workspaceRoot = new WorkspaceRoot(temporaryFolder.getRoot());
     ArtifactLocationDecoder artifactLocationDecoder =
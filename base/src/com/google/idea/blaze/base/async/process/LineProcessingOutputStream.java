@@ -20,6 +20,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 /** An base output stream which marshals output into newline-delimited segments for processing. */
 public final class LineProcessingOutputStream extends OutputStream {
@@ -34,7 +35,19 @@ public final class LineProcessingOutputStream extends OutputStream {
     boolean processLine(String line);
   }
 
-  private final StringBuffer stringBuffer = new StringBuffer();
+  /** Lines longer than this don't keep their buffer around after they're processed. */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
+  /** The bytes of the current, incomplete line. */
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+  private int bufferSize;
+
+  /** Whether the last byte written was a '\r', in which case a following '\n' is ignored. */
+  private boolean skipLineFeed;
+
   private volatile boolean closed;
   private final ImmutableList<LineProcessor> lineProcessors;
 
@@ -50,44 +63,67 @@ public final class LineProcessingOutputStream extends OutputStream {
     return new LineProcessingOutputStream(lineProcessors);
   }
 
+  /**
+   * Splits the bytes into lines, only looking at each byte once. Output is split on bytes rather
+   * than characters, which is safe for UTF-8 since line breaks never occur within a multibyte
+   * character. Bytes of an incomplete line are buffered until the rest of the line is written.
+   */
   @Override
   public synchronized void write(byte[] b, int off, int len) {
-    if (!closed) {
-      String text = new String(b, off, len, UTF_8);
-      stringBuffer.append(text);
-
-      while (true) {
-        int lineBreakIndex = -1;
-        int lineBreakLength = 0;
-        for (int i = 0; i < stringBuffer.length(); ++i) {
-          char c = stringBuffer.charAt(i);
-          if (c == '\r' || c == '\n') {
-            lineBreakIndex = i;
-            lineBreakLength = 1;
-            if (c == '\r'
-                && (i + 1) < stringBuffer.length()
-                && stringBuffer.charAt(i + 1) == '\n') {
-              ++lineBreakLength;
-            }
-            break;
-          }
-        }
-
-        if (lineBreakIndex == -1) {
-          return;
+    if (closed || len == 0) {
+      return;
+    }
+    int end = off + len;
+    int lineStart = off;
+    if (skipLineFeed && b[off] == '\n') {
+      lineStart++;
+    }
+    skipLineFeed = false;
+    for (int i = lineStart; i < end; i++) {
+      byte c = b[i];
+      if (c != '\n' && c != '\r') {
+        continue;
+      }
+      processLine(b, lineStart, i);
+      if (c == '\r') {
+        if (i + 1 == end) {
+          skipLineFeed = true;
+        } else if (b[i + 1] == '\n') {
+          i++;
         }
+      }
+      lineStart = i + 1;
+    }
+    appendToBuffer(b, lineStart, end);
+  }
 
-        String line = stringBuffer.substring(0, lineBreakIndex);
-
-        stringBuffer.delete(0, lineBreakIndex + lineBreakLength);
-
-        for (LineProcessor lineProcessor : lineProcessors) {
-          if (!lineProcessor.processLine(line)) {
-            break;
-          }
-        }
+  /** Processes the line made up of any buffered bytes followed by {@code b[start..end)}. */
+  private void processLine(byte[] b, int start, int end) {
+    String line;
+    if (bufferSize == 0) {
+      line = new String(b, start, end - start, UTF_8);
+    } else {
+      appendToBuffer(b, start, end);
+      line = new String(buffer, 0, bufferSize, UTF_8);
+      bufferSize = 0;
+      if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+        buffer = new byte[INITIAL_BUFFER_SIZE];
       }
     }
+    for (LineProcessor lineProcessor : lineProcessors) {
+      if (!lineProcessor.processLine(line)) {
+        break;
+      }
+    }
+  }
+
+  private void appendToBuffer(byte[] b, int start, int end) {
+    int length = end - start;
+    if (bufferSize + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferSize + length));
+    }
+    System.arraycopy(b, start, buffer, bufferSize, length);
+    bufferSize += length;
   }
 
   @Override
@@ -9,6 +9,7 @@ import com.google.idea.blaze.base.model.primitives.WorkspaceRoot
 import com.google.idea.blaze.base.scope.BlazeContext
 import com.google.idea.blaze.base.sync.aspects.BlazeBuildOutputs
 import com.google.idea.blaze.base.sync.aspects.BuildResult
+import com.google.idea.blaze.exception.BuildException
 import com.google.protobuf.CodedInputStream
 import com.intellij.execution.configurations.GeneralCommandLine
 import com.intellij.execution.process.OSProcessHandler
@@ -55,15 +56,6 @@ class BazelExecService(private val project: Project) : Disposable {
     )
   }
 
-  private fun <T> executionScope(
-    ctx: BlazeContext,
-    block: suspend CoroutineScope.(BuildResultHelper) -> T
-  ): T {
-    return ctx.pushJob(scope) {
-      BuildResultHelper().use { block(it) }
-    }
-  }
-
   private suspend fun execute(ctx: BlazeContext, cmd: BlazeCommand): Int {
     val root = cmd.effectiveWorkspaceRoot.orElseGet { WorkspaceRoot.fromProject(project).path() }
 
@@ -156,26 +148,62 @@ class BazelExecService(private val project: Project) : Disposable {
     }
   }
 
+  @Throws(BuildException::class)
   fun build(ctx: BlazeContext, cmdBuilder: BlazeCommand.Builder): BlazeBuildOutputs {
+    return buildWithoutParsingOutputs(ctx, cmdBuilder).parse()
+  }
+
+  /**
+   * Runs a build like [build], but returns as soon as bazel has finished, leaving the build event
+   * output to be parsed by [UnparsedBuildOutputs.parse]. This lets the caller start another build
+   * while the outputs are parsed.
+   */
+  fun buildWithoutParsingOutputs(
+    ctx: BlazeContext,
+    cmdBuilder: BlazeCommand.Builder,
+  ): UnparsedBuildOutputs {
     assertNonBlocking()
     LOG.assertTrue(cmdBuilder.name == BlazeCommandName.BUILD)
 
-    return executionScope(ctx) { provider ->
-      cmdBuilder.addBlazeFlags(provider.getBuildFlags())
+    val helper = BuildResultHelper()
+    try {
+      val result = ctx.pushJob(scope) {
+        cmdBuilder.addBlazeFlags(helper.getBuildFlags())
 
-      val parseJob = parseEvents(ctx, provider)
+        val parseJob = parseEvents(ctx, helper)
 
-      val exitCode = execute(ctx, cmdBuilder.build())
-      val result = BuildResult.fromExitCode(exitCode)
+        val exitCode = execute(ctx, cmdBuilder.build())
 
-      parseJob.cancelAndJoin()
+        parseJob.cancelAndJoin()
+        BuildResult.fromExitCode(exitCode)
+      }
+      return UnparsedBuildOutputs(result, helper)
+    } catch (e: Throwable) {
+      helper.close()
+      throw e
+    }
+  }
 
-      if (result.status != BuildResult.Status.SUCCESS) {
-        BlazeBuildOutputs.noOutputs(result)
-      } else {
-        BlazeBuildOutputs.fromParsedBepOutput(result, provider.getBuildOutput())
+  /** The result of a finished build whose build event output has not been parsed yet. */
+  class UnparsedBuildOutputs(
+    val buildResult: BuildResult,
+    private val helper: BuildResultHelper,
+  ) : AutoCloseable {
+    /** Parses the build outputs, then deletes the build event output file. */
+    @Throws(BuildException::class)
+    fun parse(): BlazeBuildOutputs {
+      return helper.use {
+        if (buildResult.status != BuildResult.Status.SUCCESS) {
+          BlazeBuildOutputs.noOutputs(buildResult)
+        } else {
+          BlazeBuildOutputs.fromParsedBepOutput(buildResult, helper.getBuildOutput())
+        }
       }
     }
+
+    /** Deletes the build event output file without parsing it. */
+    override fun close() {
+      helper.close()
+    }
   }
 }
-
@@ -166,7 +166,8 @@ public class CommandLineBlazeCommandRunner implements BlazeCommandRunner {
               .ignoreExitCode(true)
               .build()
               .run();
-      SyncQueryStatsScope.fromContext(context).ifPresent(stats -> stats.setBazelExitCode(retVal));
+      SyncQueryStatsScope.fromContext(context)
+          .ifPresent(stats -> stats.recordBazelExitCode(retVal));
       BazelExitCodeException.throwIfFailed(
           blazeCommandBuilder, retVal, ThrowOption.ALLOW_PARTIAL_SUCCESS);
       return new BufferedInputStream(
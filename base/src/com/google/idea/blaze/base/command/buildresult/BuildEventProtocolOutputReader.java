@@ -33,7 +33,10 @@ import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Predicate;
@@ -56,6 +59,33 @@ public final class BuildEventProtocolOutputReader {
    */
   public static BlazeTestResults parseTestResults(BuildEventStreamProvider streamProvider)
       throws BuildEventStreamException {
+    return parseTestResults(streamProvider, null);
+  }
+
+  /** Receives the test results of each test target, as soon as all of them are known. */
+  @FunctionalInterface
+  public interface TestResultsListener {
+    /** Called once for each test target, with the results of all its shards, runs and attempts. */
+    void onTargetResults(Label label, ImmutableList<BlazeTestResult> results);
+  }
+
+  /**
+   * Returns all test results from {@link BuildEventStreamProvider}, notifying {@code listener} of
+   * the results of each test target as soon as its {@code TEST_SUMMARY} event is seen.
+   *
+   * <p>Bazel sends the summary of a target after all of its individual test results, so when used
+   * with a stream that is read while the tests are running (see {@link
+   * BuildResultHelper#streamTestResults}), results are reported as each target finishes. Targets
+   * without a summary (e.g. when the invocation is interrupted) are reported at the end of the
+   * stream.
+   *
+   * @throws BuildEventStreamException if the BEP {@link BuildEventStreamProvider} is incorrectly
+   *     formatted
+   */
+  public static BlazeTestResults parseTestResults(
+      BuildEventStreamProvider streamProvider, @Nullable TestResultsListener listener)
+      throws BuildEventStreamException {
+    Map<String, List<BlazeTestResult>> pendingResults = new LinkedHashMap<>();
     Map<String, String> configIdToMnemonic = new HashMap<>();
     Map<String, Kind> labelToKind = new HashMap<>();
     Map<String, String> labelToMnemonic = new HashMap<>();
@@ -91,17 +121,33 @@ public final class BuildEventProtocolOutputReader {
           continue;
         case TEST_RESULT:
           label = event.getId().getTestResult().getLabel();
-          results.add(
+          BlazeTestResult result =
               parseTestResult(
                   label,
                   labelToKind.get(label),
                   labelToMnemonic.get(label),
                   event.getTestResult(),
-                  startTimeMillis));
+                  startTimeMillis);
+          results.add(result);
+          if (listener != null) {
+            pendingResults.computeIfAbsent(label, l -> new ArrayList<>()).add(result);
+          }
+          continue;
+        case TEST_SUMMARY:
+          label = event.getId().getTestSummary().getLabel();
+          List<BlazeTestResult> targetResults = pendingResults.remove(label);
+          if (listener != null && targetResults != null) {
+            listener.onTargetResults(Label.create(label), ImmutableList.copyOf(targetResults));
+          }
           continue;
         default: // continue
       }
     }
+    if (listener != null) {
+      pendingResults.forEach(
+          (label, targetResults) ->
+              listener.onTargetResults(Label.create(label), ImmutableList.copyOf(targetResults)));
+    }
     return BlazeTestResults.fromFlatList(results.build());
   }
 
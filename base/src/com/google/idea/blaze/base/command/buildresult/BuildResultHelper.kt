@@ -29,6 +29,7 @@ import java.io.File
 import java.io.FileInputStream
 import java.io.IOException
 import java.util.*
+import java.util.concurrent.Future
 import java.util.function.Predicate
 
 private val LOG = Logger.getInstance(BuildResultHelper::class.java)
@@ -66,6 +67,34 @@ class BuildResultHelper(val outputFile: File) : AutoCloseable {
     }
   }
 
+  /**
+   * Parses the BEP output while the build is still running, and returns the corresponding
+   * {@link ParsedBepOutput} once the build has finished.
+   *
+   * <p>The outputs of each target are passed to [listener] as soon as the target completes, so that
+   * consumers can start fetching them while the rest of the build is still running. This blocks
+   * until [buildFinished] is done and the BEP output has been fully read, so it should be called on
+   * a background thread concurrently with the build.
+   */
+  @Throws(GetArtifactsException::class)
+  fun streamBuildOutput(
+    listener: ParsedBepOutput.TargetOutputsListener,
+    buildFinished: Future<*>,
+  ): ParsedBepOutput {
+    return try {
+      BufferedInputStream(GrowingFileInputStream(outputFile, buildFinished)).use {
+        ParsedBepOutput.parseBepArtifacts(
+          BuildEventStreamProvider.fromInputStream(it), /* interner= */ null, listener)
+      }
+    } catch (e: IOException) {
+      LOG.warn(e)
+      throw GetArtifactsException(e.message)
+    } catch (e: BuildEventStreamException) {
+      LOG.warn(e)
+      throw GetArtifactsException(e.message)
+    }
+  }
+
   /**
    * Parses the BEP output data and returns the corresponding {@link ParsedBepOutput}.
    */
@@ -81,6 +110,30 @@ class BuildResultHelper(val outputFile: File) : AutoCloseable {
     }
   }
 
+  /**
+   * Reads the test results while the tests are still running, passing the results of each target to
+   * [listener] as soon as they are all known. Returns all results once [testsFinished] is done and
+   * the BEP output has been fully read, so it should be called on a background thread concurrently
+   * with the tests.
+   */
+  fun streamTestResults(
+    listener: BuildEventProtocolOutputReader.TestResultsListener,
+    testsFinished: Future<*>,
+  ): BlazeTestResults {
+    return try {
+      BufferedInputStream(GrowingFileInputStream(outputFile, testsFinished)).use {
+        BuildEventProtocolOutputReader.parseTestResults(
+          BuildEventStreamProvider.fromInputStream(it), listener)
+      }
+    } catch (e: IOException) {
+      LOG.warn(e)
+      return BlazeTestResults.NO_RESULTS
+    } catch (e: BuildEventStreamException) {
+      LOG.warn(e)
+      return BlazeTestResults.NO_RESULTS
+    }
+  }
+
   fun deleteTemporaryOutputFiles() {
     outputFile.delete()
   }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.buildresult;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+
+/**
+ * An input stream that reads a file which is still being appended to by another process.
+ *
+ * <p>When the end of the file is reached, reads block until more data is available, or until the
+ * writer has finished, at which point the end of the stream is reported as usual. Waiting for more
+ * data polls the file, but completion of the writer is noticed immediately.
+ */
+final class GrowingFileInputStream extends InputStream {
+
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+  private final File file;
+  private final Future<?> writerFinished;
+  @Nullable private InputStream in;
+
+  /**
+   * @param writerFinished completes (successfully or not) once the writer will no longer append to
+   *     the file.
+   */
+  GrowingFileInputStream(File file, Future<?> writerFinished) {
+    this.file = file;
+    this.writerFinished = writerFinished;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int read = read(b, 0, 1);
+    return read == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      // Note, we must check whether the writer has finished *before* reading, otherwise we may miss
+      // data written between the read and the check.
+      boolean finished = writerFinished.isDone();
+      if (in == null && file.exists()) {
+        in = new FileInputStream(file);
+      }
+      if (in != null) {
+        int read = in.read(b, off, len);
+        if (read != -1) {
+          return read;
+        }
+      }
+      if (finished) {
+        return -1;
+      }
+      awaitWriter();
+    }
+  }
+
+  /** Waits for the writer to finish, or for the poll interval to elapse. */
+  private void awaitWriter() throws InterruptedIOException {
+    try {
+      writerFinished.get(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + file);
+    } catch (TimeoutException | ExecutionException | CancellationException e) {
+      // Either more data may have been written in the meantime, or the writer is done (possibly
+      // with an error). Both cases are handled by the next read.
+    }
+  }
+
+  @Override
+  public int available() throws IOException {
+    return in == null ? 0 : in.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
@@ -75,6 +75,19 @@ public final class ParsedBepOutput {
 
   private static final String WORKSPACE_ITEM_KEY_SOURCE_URI = "SOURCE_URI";
 
+  /**
+   * Receives the outputs of each target as soon as the target completes, while the rest of the
+   * build event stream is still being parsed.
+   */
+  @FunctionalInterface
+  public interface TargetOutputsListener {
+    /**
+     * Called once for each output group of each completed target, with the transitive outputs of
+     * that output group.
+     */
+    void onTargetOutputs(Label target, String outputGroup, ImmutableList<OutputArtifact> outputs);
+  }
+
   /** Parses BEP events into {@link ParsedBepOutput} */
   public static ParsedBepOutput parseBepArtifacts(InputStream bepStream)
       throws BuildEventStreamException {
@@ -97,6 +110,24 @@ public final class ParsedBepOutput {
   public static ParsedBepOutput parseBepArtifacts(
       BuildEventStreamProvider stream, @Nullable Interner<String> interner)
       throws BuildEventStreamException {
+    return parseBepArtifacts(stream, interner, null);
+  }
+
+  /**
+   * Parses BEP events into {@link ParsedBepOutput}, notifying {@code listener} of the outputs of
+   * each target as soon as it has completed.
+   *
+   * <p>Bazel always announces a {@link NamedSetOfFiles} before any event that refers to it, so the
+   * full set of outputs of a target is known as soon as its {@code TARGET_COMPLETED} event is seen.
+   * When used with a stream that is read while the build is running (see {@link
+   * BuildResultHelper#streamBuildOutput}), this allows consumers to start processing outputs before
+   * the build has finished.
+   */
+  public static ParsedBepOutput parseBepArtifacts(
+      BuildEventStreamProvider stream,
+      @Nullable Interner<String> interner,
+      @Nullable TargetOutputsListener listener)
+      throws BuildEventStreamException {
 
     if (interner == null) {
       interner = Interners.newStrongInterner();
@@ -172,6 +203,10 @@ public final class ParsedBepOutput {
                           });
                     }
                   });
+          if (listener != null) {
+            notifyTargetOutputs(
+                listener, event, fileSets, configIdToMnemonic.get(configId), startTimeMillis);
+          }
           continue;
         case STARTED:
           buildId = Strings.emptyToNull(event.getStarted().getUuid());
@@ -202,6 +237,37 @@ public final class ParsedBepOutput {
         targetsWithErrors.build());
   }
 
+  /** Resolves the transitive outputs of a completed target, and passes them to the listener. */
+  private static void notifyTargetOutputs(
+      TargetOutputsListener listener,
+      BuildEvent event,
+      Map<String, FileSet.Builder> fileSets,
+      @Nullable String configMnemonic,
+      long startTimeMillis) {
+    if (configMnemonic == null) {
+      // Consistent with FileSet.Builder.isValid, outputs with no known configuration are ignored.
+      return;
+    }
+    Label label = Label.create(event.getId().getTargetCompleted().getLabel());
+    for (OutputGroup group : event.getCompleted().getOutputGroupList()) {
+      ImmutableList.Builder<OutputArtifact> outputs = ImmutableList.builder();
+      Queue<String> toVisit = Queues.newArrayDeque(getFileSets(group));
+      Set<String> visited = new HashSet<>(toVisit);
+      while (!toVisit.isEmpty()) {
+        FileSet.Builder fileSet = fileSets.get(toVisit.remove());
+        if (fileSet == null || fileSet.namedSet == null) {
+          continue;
+        }
+        outputs.addAll(parseFiles(fileSet.namedSet, configMnemonic, startTimeMillis));
+        fileSet.namedSet.getFileSetsList().stream()
+            .map(NamedSetOfFilesId::getId)
+            .filter(visited::add)
+            .forEach(toVisit::add);
+      }
+      listener.onTargetOutputs(label, group.getName(), outputs.build());
+    }
+  }
+
   private static List<String> getFileSets(OutputGroup group) {
     return group.getFileSetsList().stream()
         .map(NamedSetOfFilesId::getId)
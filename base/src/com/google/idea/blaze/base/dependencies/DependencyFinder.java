@@ -16,11 +16,11 @@
 package com.google.idea.blaze.base.dependencies;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.Dependency.DependencyType;
 import com.google.idea.blaze.base.ideinfo.Dependency;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
@@ -38,7 +38,10 @@ public class DependencyFinder {
   @Nullable
   public static ImmutableList<TargetInfo> getCompileTimeDependencyTargets(
       Project project, Label target) {
-    ImmutableMap<TargetKey, TargetIdeInfo> targetMap = getTargetMap(project);
+    TargetMap targetMap = getTargetMap(project);
+    if (targetMap == null) {
+      return null;
+    }
     TargetIdeInfo ideInfo = targetMap.get(TargetKey.forPlainTarget(target));
     if (ideInfo == null) {
       return null;
@@ -50,18 +53,18 @@ public class DependencyFinder {
         .collect(ImmutableList.toImmutableList());
   }
 
-  private static ImmutableMap<TargetKey, TargetIdeInfo> getTargetMap(Project project) {
+  @Nullable
+  private static TargetMap getTargetMap(Project project) {
     BlazeProjectData projectData =
         BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    return projectData != null ? projectData.getTargetMap().map() : ImmutableMap.of();
+    return projectData != null ? projectData.getTargetMap() : null;
   }
 
   @Nullable
-  private static TargetInfo createTargetInfo(
-      Dependency dependency, ImmutableMap<TargetKey, TargetIdeInfo> targetMap) {
+  private static TargetInfo createTargetInfo(Dependency dependency, TargetMap targetMap) {
     TargetKey key = dependency.getTargetKey();
     TargetIdeInfo ideInfo = targetMap.get(key);
-    return ideInfo != null ? ideInfo.toTargetInfo() : null;
+    return ideInfo != null ? targetMap.toTargetInfo(ideInfo) : null;
   }
 
   private DependencyFinder() {}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import com.google.idea.blaze.base.command.buildresult.LocalFileArtifact;
+import com.google.idea.blaze.common.artifact.BlazeArtifact;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes build artifacts into a local file cache.
+ *
+ * <p>Local artifacts are hard linked into the cache where the file system allows it, rather than
+ * copied byte by byte. Blaze replaces output files rather than modifying them in place, so the
+ * cached link keeps the contents it had when it was created, just as a copy would. Remote artifacts
+ * are always streamed into the cache.
+ *
+ * <p>A writer keeps count of the bytes copied and linked, for logging. It is safe to use from
+ * multiple threads.
+ */
+public final class FileCacheWriter {
+
+  private static final Logger logger = Logger.getInstance(FileCacheWriter.class);
+
+  private static final BoolExperiment hardLinkLocalArtifacts =
+      new BoolExperiment("blaze.filecache.hardlink.local.artifacts", true);
+
+  private final AtomicLong bytesCopied = new AtomicLong();
+  private final AtomicLong bytesLinked = new AtomicLong();
+  private volatile boolean linksUnsupported =
+      SystemInfo.isWindows || !hardLinkLocalArtifacts.getValue();
+
+  /** Writes the artifact to the given path, replacing any existing file. */
+  public void write(BlazeArtifact artifact, Path destination) throws IOException {
+    if (artifact instanceof LocalFileArtifact) {
+      Path source = ((LocalFileArtifact) artifact).getFile().toPath();
+      if (!linksUnsupported && tryLink(source, destination)) {
+        bytesLinked.addAndGet(Files.size(destination));
+        return;
+      }
+      Files.copy(
+          source,
+          destination,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.COPY_ATTRIBUTES);
+      bytesCopied.addAndGet(Files.size(destination));
+      return;
+    }
+    try (InputStream stream = artifact.getInputStream()) {
+      bytesCopied.addAndGet(Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING));
+    }
+  }
+
+  private boolean tryLink(Path source, Path destination) throws IOException {
+    Files.deleteIfExists(destination);
+    try {
+      Files.createLink(destination, source);
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      // Most likely the cache is on a different file system to the artifacts. That won't change
+      // from one file to the next, so don't try again.
+      logger.info("Cannot hard link to " + source + ", copying cached files instead", e);
+      linksUnsupported = true;
+      return false;
+    }
+  }
+
+  public long getBytesCopied() {
+    return bytesCopied.get();
+  }
+
+  public long getBytesLinked() {
+    return bytesLinked.get();
+  }
+
+  /** Returns a summary of the bytes written, suitable for logging. */
+  public String getSummary() {
+    return String.format(
+        "%d kB copied, %d kB hard linked", bytesCopied.get() / 1024, bytesLinked.get() / 1024);
+  }
+}
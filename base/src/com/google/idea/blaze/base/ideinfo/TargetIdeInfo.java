@@ -200,6 +200,15 @@ public final class TargetIdeInfo implements ProtoWrapper<IntellijIdeInfo.TargetI
 
   @Override
   public IntellijIdeInfo.TargetIdeInfo toProto() {
+    return toProto(syncTimeMillis);
+  }
+
+  /** Serializes this target with the given sync time, see {@link TargetMap#getSyncTime}. */
+  IntellijIdeInfo.TargetIdeInfo toProto(@Nullable Instant syncTime) {
+    return toProto(syncTime != null ? Long.valueOf(syncTime.toEpochMilli()) : null);
+  }
+
+  private IntellijIdeInfo.TargetIdeInfo toProto(@Nullable Long syncTimeMillis) {
     IntellijIdeInfo.TargetIdeInfo.Builder builder =
         IntellijIdeInfo.TargetIdeInfo.newBuilder()
             .setKey(key.toProto())
@@ -361,16 +370,34 @@ public final class TargetIdeInfo implements ProtoWrapper<IntellijIdeInfo.TargetI
     return kotlinToolchainIdeInfo;
   }
 
+  /**
+   * The time of the sync which produced this target info.
+   *
+   * <p>Later syncs which build the target without changing it don't update this, see {@link
+   * TargetMap#getSyncTime} for the time of the most recent sync which built the target.
+   */
   @Nullable
   public Instant getSyncTime() {
     return syncTimeMillis != null ? Instant.ofEpochMilli(syncTimeMillis) : null;
   }
 
+  /**
+   * Creates a {@link TargetInfo} with the sync time recorded in this target, which is stale if a
+   * later sync built the target without changing it.
+   *
+   * @deprecated Use {@link TargetMap#toTargetInfo}, which has the most recent sync time.
+   */
+  @Deprecated
   public TargetInfo toTargetInfo() {
+    return toTargetInfo(getSyncTime());
+  }
+
+  /** Creates a {@link TargetInfo} with the given sync time, see {@link TargetMap#toTargetInfo}. */
+  TargetInfo toTargetInfo(@Nullable Instant syncTime) {
     return TargetInfo.builder(getKey().getLabel(), getKind().getKindString())
         .setTestSize(getTestIdeInfo() != null ? getTestIdeInfo().getTestSize() : null)
         .setTestClass(getJavaIdeInfo() != null ? getJavaIdeInfo().getTestClass() : null)
-        .setSyncTime(getSyncTime())
+        .setSyncTime(syncTime)
         .setSources(ImmutableList.copyOf(getSources()))
         .build();
   }
@@ -17,17 +17,104 @@ package com.google.idea.blaze.base.ideinfo;
 
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
 import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.dependencies.TargetInfo;
+import java.time.Instant;
 import java.util.Objects;
+import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
-/** Map of configured targets (and soon aspects). */
+/**
+ * Map of configured targets (and soon aspects).
+ *
+ * <p>Also tracks the time of the most recent sync which built each target. This is kept separately
+ * from the {@link TargetIdeInfo}s, so that a sync which builds a target without changing it can
+ * reuse the existing {@link TargetIdeInfo} instance.
+ */
 public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
   private final ImmutableMap<TargetKey, TargetIdeInfo> targetMap;
 
+  /** The time of the most recent sync which built every target in this map, if any. */
+  @Nullable private final Instant syncTime;
+
+  /**
+   * The time of the most recent sync which built a target, for targets which have been built by a
+   * partial sync since {@link #syncTime}, without changing.
+   */
+  private final ImmutableMap<TargetKey, Instant> partialSyncTimes;
+
+  private final Version version = new Version();
+
+  /** The targets changed by the sync which produced this map, if it updated an earlier map. */
+  @Nullable private final Changes changes;
+
   public TargetMap(ImmutableMap<TargetKey, TargetIdeInfo> targetMap) {
+    this(targetMap, null, ImmutableMap.of());
+  }
+
+  public TargetMap(
+      ImmutableMap<TargetKey, TargetIdeInfo> targetMap,
+      @Nullable Instant syncTime,
+      ImmutableMap<TargetKey, Instant> partialSyncTimes) {
+    this(targetMap, syncTime, partialSyncTimes, null);
+  }
+
+  public TargetMap(
+      ImmutableMap<TargetKey, TargetIdeInfo> targetMap,
+      @Nullable Instant syncTime,
+      ImmutableMap<TargetKey, Instant> partialSyncTimes,
+      @Nullable Changes changes) {
     this.targetMap = targetMap;
+    this.syncTime = syncTime;
+    this.partialSyncTimes = partialSyncTimes;
+    this.changes = changes;
+  }
+
+  /**
+   * Identifies a {@link TargetMap} instance without keeping it in memory, so that data derived from
+   * it can later be updated using {@link #getChangesSince}.
+   */
+  public static final class Version {
+    private Version() {}
+  }
+
+  /** The targets added, replaced or removed by a sync, relative to the map it updated. */
+  public static final class Changes {
+    private final Version base;
+    private final ImmutableMap<TargetKey, ImmutableList<TargetKey>> previousDependencies;
+
+    /**
+     * @param previousDependencies the keys of all changed targets, mapped to their dependencies in
+     *     {@code base}, or to an empty list for added targets
+     */
+    public Changes(
+        TargetMap base, ImmutableMap<TargetKey, ImmutableList<TargetKey>> previousDependencies) {
+      this.base = base.version;
+      this.previousDependencies = previousDependencies;
+    }
+
+    /** The keys of the changed targets, mapped to their dependencies before the change. */
+    public ImmutableMap<TargetKey, ImmutableList<TargetKey>> previousDependencies() {
+      return previousDependencies;
+    }
+  }
+
+  /** Returns the version of this map. Not preserved by serialization or {@link #filter}. */
+  public Version version() {
+    return version;
+  }
+
+  /**
+   * Returns the targets changed since the map with the given version, or null if this map was not
+   * produced by a sync which updated that map.
+   */
+  @Nullable
+  public Changes getChangesSince(Version previous) {
+    return changes != null && changes.base == previous ? changes : null;
   }
 
   public static TargetMap fromProto(ProjectData.TargetMap proto) {
@@ -41,10 +128,60 @@ public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
   @Override
   public ProjectData.TargetMap toProto() {
     ProjectData.TargetMap.Builder builder = ProjectData.TargetMap.newBuilder();
-    targetMap.values().stream().map(TargetIdeInfo::toProto).forEach(builder::addTargets);
+    targetMap.values().stream().map(this::toProto).forEach(builder::addTargets);
     return builder.build();
   }
 
+  /** Serializes a target of this map, including its most recent sync time. */
+  public IntellijIdeInfo.TargetIdeInfo toProto(TargetIdeInfo target) {
+    return target.toProto(getSyncTime(target));
+  }
+
+  /** Returns the {@link TargetInfo} of a target of this map, with its most recent sync time. */
+  public TargetInfo toTargetInfo(TargetIdeInfo target) {
+    return target.toTargetInfo(getSyncTime(target));
+  }
+
+  /** Returns the time of the most recent sync which built the given target, if known. */
+  @Nullable
+  public Instant getSyncTime(TargetKey key) {
+    TargetIdeInfo target = targetMap.get(key);
+    return target != null ? getSyncTime(target) : null;
+  }
+
+  @Nullable
+  private Instant getSyncTime(TargetIdeInfo target) {
+    return later(
+        later(target.getSyncTime(), syncTime), partialSyncTimes.get(target.getKey()));
+  }
+
+  @Nullable
+  private static Instant later(@Nullable Instant a, @Nullable Instant b) {
+    if (a == null) {
+      return b;
+    }
+    return b != null && b.isAfter(a) ? b : a;
+  }
+
+  /** Returns a map with only the targets matching the given predicate. */
+  public TargetMap filter(Predicate<TargetKey> targetsToKeep) {
+    return new TargetMap(
+        ImmutableMap.copyOf(Maps.filterKeys(targetMap, targetsToKeep::test)),
+        syncTime,
+        ImmutableMap.copyOf(Maps.filterKeys(partialSyncTimes, targetsToKeep::test)));
+  }
+
+  /** See {@link #syncTime}. Used when updating this map after a sync. */
+  @Nullable
+  public Instant syncTime() {
+    return syncTime;
+  }
+
+  /** See {@link #partialSyncTimes}. Used when updating this map after a sync. */
+  public ImmutableMap<TargetKey, Instant> partialSyncTimes() {
+    return partialSyncTimes;
+  }
+
   @Nullable
   public TargetIdeInfo get(TargetKey key) {
     return targetMap.get(key);
@@ -71,12 +208,14 @@ public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
       return false;
     }
     TargetMap other = (TargetMap) o;
-    return Objects.equals(targetMap, other.targetMap);
+    return Objects.equals(targetMap, other.targetMap)
+        && Objects.equals(syncTime, other.syncTime)
+        && Objects.equals(partialSyncTimes, other.partialSyncTimes);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(targetMap);
+    return Objects.hash(targetMap, syncTime, partialSyncTimes);
   }
 
   public int size() {
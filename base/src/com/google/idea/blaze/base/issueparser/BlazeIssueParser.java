@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.issueparser;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
@@ -137,12 +138,32 @@ public class BlazeIssueParser {
     ParseResult parse(String currentLine, List<String> previousLines);
   }
 
-  /** Base for a Parser that consumes a single contextless line at a time, matched via regex */
+  /**
+   * Base for a Parser that consumes a single contextless line at a time, matched via regex.
+   *
+   * <p>Most build output lines match none of the parsers, so before running the regex each line is
+   * checked for the literal text the regex starts with (e.g. "ERROR: "), which is much cheaper.
+   */
   public abstract static class SingleLineParser implements Parser {
     final Pattern pattern;
 
+    /** Text which any matching line must contain, or start with if the regex is anchored. */
+    private final String requiredLiteral;
+
+    private final boolean anchored;
+
     public SingleLineParser(String regex) {
       pattern = Pattern.compile(regex);
+      requiredLiteral = literalPrefix(regex);
+      anchored = regex.startsWith("^");
+    }
+
+    /**
+     * Returns false if the line definitely doesn't match this parser's regex. Subclasses may
+     * override this with a more specific check.
+     */
+    protected boolean mayMatch(String line) {
+      return anchored ? line.startsWith(requiredLiteral) : line.contains(requiredLiteral);
     }
 
     @Override
@@ -153,6 +174,9 @@ public class BlazeIssueParser {
     }
 
     ParseResult parse(String line) {
+      if (!mayMatch(line)) {
+        return ParseResult.NO_RESULT;
+      }
       Matcher matcher = pattern.matcher(line);
       if (matcher.find()) {
         IssueOutput issue = createIssue(matcher);
@@ -163,6 +187,61 @@ public class BlazeIssueParser {
 
     @Nullable
     protected abstract IssueOutput createIssue(Matcher matcher);
+
+    /**
+     * Returns the literal text at the start of the regex, ignoring any leading {@code ^}, which
+     * every match must contain. Returns an empty string if there is none, or if the regex has a
+     * top-level alternation.
+     */
+    @VisibleForTesting
+    static String literalPrefix(String regex) {
+      if (hasTopLevelAlternation(regex)) {
+        return "";
+      }
+      StringBuilder literal = new StringBuilder();
+      for (int i = regex.startsWith("^") ? 1 : 0; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        if (c == '\\') {
+          // Only escaped punctuation is a plain literal; \d, \Q etc. are not.
+          if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+            break;
+          }
+          c = regex.charAt(++i);
+        } else if (".[]()}^$|".indexOf(c) >= 0) {
+          break;
+        } else if ("*+?{".indexOf(c) >= 0) {
+          // The quantified character is optional (or repeated), so isn't part of the literal.
+          if (literal.length() > 0) {
+            literal.setLength(literal.length() - 1);
+          }
+          break;
+        }
+        literal.append(c);
+      }
+      return literal.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+      int depth = 0;
+      boolean inClass = false;
+      for (int i = 0; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        if (c == '\\') {
+          i++;
+        } else if (inClass) {
+          inClass = c != ']';
+        } else if (c == '[') {
+          inClass = true;
+        } else if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (c == '|' && depth == 0) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   public static File fileFromAbsolutePath(String absolutePath) {
@@ -246,6 +325,13 @@ public class BlazeIssueParser {
       this.project = project;
     }
 
+    @Override
+    protected boolean mayMatch(String line) {
+      // The regex has no literal prefix, but the first colon must be followed by the line number.
+      int colon = line.indexOf(':');
+      return colon > 0 && colon + 1 < line.length() && Character.isDigit(line.charAt(colon + 1));
+    }
+
     @Override
     protected IssueOutput createIssue(Matcher matcher) {
       final File file = FileResolver.resolveToFile(project, matcher.group(1));
@@ -278,6 +364,7 @@ public class BlazeIssueParser {
   }
 
   static class TracebackParser implements Parser {
+    private static final String TRACEBACK = "Traceback (most recent call last):";
     private static final Pattern PATTERN =
         Pattern.compile(
             "(ERROR): (.*?):([0-9]+):([0-9]+): (Traceback \\(most recent call last\\):)");
@@ -285,7 +372,7 @@ public class BlazeIssueParser {
     @Override
     public ParseResult parse(String currentLine, List<String> previousLines) {
       if (previousLines.isEmpty()) {
-        if (PATTERN.matcher(currentLine).find()) {
+        if (currentLine.contains(TRACEBACK) && PATTERN.matcher(currentLine).find()) {
           return ParseResult.NEEDS_MORE_INPUT;
         } else {
           return ParseResult.NO_RESULT;
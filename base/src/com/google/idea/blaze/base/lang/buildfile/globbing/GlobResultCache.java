@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.AsyncFileListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the results of globs in BUILD files, so that they aren't re-evaluated against the file
+ * system each time a glob reference is resolved.
+ *
+ * <p>Cached results for a package are dropped when a file is created, deleted, moved or renamed
+ * anywhere under the package directory. The VFS doesn't report changes in directories it hasn't
+ * loaded, so each cached result also records the modification time of every directory the glob
+ * visited, and is only used if none of them has changed since. Entries also expire after a while.
+ */
+public final class GlobResultCache implements Disposable {
+
+  private static final int MAX_CACHED_GLOBS = 1000;
+  private static final Duration EXPIRY = Duration.ofMinutes(10);
+
+  public static GlobResultCache getInstance(Project project) {
+    return project.getService(GlobResultCache.class);
+  }
+
+  private final Cache<Key, CachedGlob> cache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_GLOBS)
+          .expireAfterWrite(EXPIRY)
+          .build();
+
+  /** Incremented on each invalidation, so that globs racing with a change aren't cached. */
+  private final AtomicLong generation = new AtomicLong();
+
+  public GlobResultCache() {
+    VirtualFileManager.getInstance().addAsyncFileListener(new Listener(), this);
+  }
+
+  /**
+   * Returns the files under {@code base} matching the given patterns, as found by {@link
+   * UnixGlob}.
+   *
+   * <p>The directory filter must depend only on the file system under {@code base}, since it is
+   * not part of the cache key.
+   */
+  public ImmutableList<File> glob(
+      File base,
+      List<String> includes,
+      List<String> excludes,
+      boolean excludeDirectories,
+      Predicate<File> directoryFilter)
+      throws IOException, InterruptedException {
+    Key key =
+        Key.create(
+            FileUtil.toSystemIndependentName(base.getPath()),
+            ImmutableList.copyOf(includes),
+            ImmutableList.copyOf(excludes),
+            excludeDirectories);
+    CachedGlob cached = cache.getIfPresent(key);
+    if (cached != null && cached.isUpToDate()) {
+      return cached.files();
+    }
+    long generationBefore = generation.get();
+    FileOperationProvider fileOperationProvider = FileOperationProvider.getInstance();
+    // The modification times are read before each directory is listed, so that a change made while
+    // globbing is noticed by the next lookup.
+    Map<File, Long> directoryModifiedTimes = new ConcurrentHashMap<>();
+    directoryModifiedTimes.put(base, fileOperationProvider.getFileModifiedTime(base));
+    ImmutableList<File> files =
+        ImmutableList.copyOf(
+            UnixGlob.forPath(base)
+                .addPatterns(includes)
+                .addExcludes(excludes)
+                .setExcludeDirectories(excludeDirectories)
+                .setDirectoryFilter(
+                    dir -> {
+                      directoryModifiedTimes.computeIfAbsent(
+                          dir, fileOperationProvider::getFileModifiedTime);
+                      return directoryFilter.test(dir);
+                    })
+                .glob());
+    if (generation.get() == generationBefore) {
+      cache.put(key, CachedGlob.create(files, ImmutableMap.copyOf(directoryModifiedTimes)));
+    }
+    return files;
+  }
+
+  /** Drops cached results for any package containing one of the given paths. */
+  @VisibleForTesting
+  void invalidate(Collection<String> changedPaths) {
+    Set<String> affectedDirectories = new HashSet<>();
+    for (String path : changedPaths) {
+      String dir = FileUtil.toSystemIndependentName(path);
+      // Stop early once we reach a directory already added, since its ancestors will be too.
+      while (dir != null && affectedDirectories.add(dir)) {
+        dir = getParentPath(dir);
+      }
+    }
+    generation.incrementAndGet();
+    cache.asMap().keySet().removeIf(key -> affectedDirectories.contains(key.directory()));
+  }
+
+  @Nullable
+  private static String getParentPath(String path) {
+    int index = path.lastIndexOf('/');
+    return index > 0 ? path.substring(0, index) : null;
+  }
+
+  @Override
+  public void dispose() {
+    cache.invalidateAll();
+  }
+
+  @AutoValue
+  abstract static class Key {
+    abstract String directory();
+
+    abstract ImmutableList<String> includes();
+
+    abstract ImmutableList<String> excludes();
+
+    abstract boolean excludeDirectories();
+
+    static Key create(
+        String directory,
+        ImmutableList<String> includes,
+        ImmutableList<String> excludes,
+        boolean excludeDirectories) {
+      return new AutoValue_GlobResultCache_Key(directory, includes, excludes, excludeDirectories);
+    }
+  }
+
+  @AutoValue
+  abstract static class CachedGlob {
+    abstract ImmutableList<File> files();
+
+    /** The modification time of each directory visited by the glob, when it was visited. */
+    abstract ImmutableMap<File, Long> directoryModifiedTimes();
+
+    static CachedGlob create(
+        ImmutableList<File> files, ImmutableMap<File, Long> directoryModifiedTimes) {
+      return new AutoValue_GlobResultCache_CachedGlob(files, directoryModifiedTimes);
+    }
+
+    /**
+     * Returns false if any of the visited directories has been modified, i.e. had an entry added,
+     * removed or renamed, since the glob was evaluated.
+     */
+    boolean isUpToDate() {
+      FileOperationProvider fileOperationProvider = FileOperationProvider.getInstance();
+      return directoryModifiedTimes().entrySet().stream()
+          .allMatch(e -> fileOperationProvider.getFileModifiedTime(e.getKey()) == e.getValue());
+    }
+  }
+
+  private class Listener implements AsyncFileListener {
+    @Nullable
+    @Override
+    public ChangeApplier prepareChange(List<? extends VFileEvent> events) {
+      Set<String> changedPaths = new HashSet<>();
+      for (VFileEvent event : events) {
+        if (event instanceof VFileContentChangeEvent
+            || (event instanceof VFilePropertyChangeEvent
+                && !((VFilePropertyChangeEvent) event).isRename())) {
+          // Glob results only depend on which files exist.
+          continue;
+        }
+        changedPaths.add(event.getPath());
+        VirtualFile newParent = null;
+        if (event instanceof VFileMoveEvent) {
+          newParent = ((VFileMoveEvent) event).getNewParent();
+        } else if (event instanceof VFileCopyEvent) {
+          newParent = ((VFileCopyEvent) event).getNewParent();
+        }
+        if (newParent != null) {
+          changedPaths.add(newParent.getPath());
+        }
+      }
+      if (changedPaths.isEmpty()) {
+        return null;
+      }
+      return new ChangeApplier() {
+        @Override
+        public void afterVfsChange() {
+          invalidate(changedPaths);
+        }
+      };
+    }
+  }
+}
@@ -92,10 +92,17 @@ public final class UnixGlob {
     return list;
   }
 
-  /** Calls {@link #matches(String, String, Cache) matches(pattern, str, null)} */
+  /** Compiled patterns for {@link #matches(String, String)}, which is called repeatedly. */
+  private static final Cache<String, Pattern> matchesPatternCache =
+      CacheBuilder.newBuilder().maximumSize(1000).build();
+
+  /**
+   * Calls {@link #matches(String, String, Cache) matches(pattern, str, patternCache)} with a shared
+   * cache of compiled patterns.
+   */
   public static boolean matches(String pattern, String str) {
     try {
-      return matches(pattern, str, null);
+      return matches(pattern, str, matchesPatternCache);
     } catch (PatternSyntaxException e) {
       return false;
     }
@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.logging.utils;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import java.time.Duration;
 
 /** Stats of sharded targets. */
 @AutoValue
@@ -28,12 +29,36 @@ public abstract class ShardStats {
 
   public abstract ShardingApproach shardingApproach();
 
+  /** The predicted build time of each shard, or empty if the sharder made no prediction. */
+  public abstract ImmutableList<Duration> predictedShardDurations();
+
+  /** The measured build time of each shard, or empty if the shards have not all been built. */
+  public abstract ImmutableList<Duration> actualShardDurations();
+
   public static ShardStats create(
       int suggestedTargetSizePerShard,
       ImmutableList<Integer> actualTargetSizePerShard,
       ShardingApproach shardingApproach) {
+    return create(
+        suggestedTargetSizePerShard,
+        actualTargetSizePerShard,
+        shardingApproach,
+        ImmutableList.of(),
+        ImmutableList.of());
+  }
+
+  public static ShardStats create(
+      int suggestedTargetSizePerShard,
+      ImmutableList<Integer> actualTargetSizePerShard,
+      ShardingApproach shardingApproach,
+      ImmutableList<Duration> predictedShardDurations,
+      ImmutableList<Duration> actualShardDurations) {
     return new AutoValue_ShardStats(
-        suggestedTargetSizePerShard, actualTargetSizePerShard, shardingApproach);
+        suggestedTargetSizePerShard,
+        actualTargetSizePerShard,
+        shardingApproach,
+        predictedShardDurations,
+        actualShardDurations);
   }
 
   /** Types of sharding method */
@@ -41,6 +66,7 @@ public abstract class ShardStats {
     PARTITION_WITHOUT_EXPANDING,
     BUILD_TARGET_BATCHING_SERVICE,
     LEXICOGRAPHIC_TARGET_SHARDER,
+    COST_AWARE_TARGET_SHARDER,
     ERROR
   }
 }
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.idea.blaze.base.settings.BuildBinaryType;
 import com.google.idea.blaze.common.Label;
+import com.google.idea.blaze.common.artifact.BuildArtifactCacheStats;
 import java.time.Duration;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -53,6 +54,8 @@ public abstract class BuildDepsStats implements QuerySyncOperationStats {
 
   public abstract Optional<Long> artifactBytesConsumed();
 
+  public abstract Optional<BuildArtifactCacheStats> artifactCacheStats();
+
   @Override
   public abstract Optional<Duration> totalClockTime();
 
@@ -94,6 +97,8 @@ public abstract class BuildDepsStats implements QuerySyncOperationStats {
 
     public abstract Builder setArtifactBytesConsumed(@Nullable Long value);
 
+    public abstract Builder setArtifactCacheStats(@Nullable BuildArtifactCacheStats value);
+
     public abstract Builder setTotalClockTime(@Nullable Duration value);
 
     public abstract BuildDepsStats build();
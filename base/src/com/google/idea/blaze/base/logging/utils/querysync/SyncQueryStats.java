@@ -49,6 +49,12 @@ public abstract class SyncQueryStats implements QuerySyncOperationStats {
 
   public abstract Optional<Long> queryResultSizeBytes();
 
+  /** The number of java source files whose package was taken from the package cache. */
+  public abstract Optional<Integer> packageCacheHits();
+
+  /** The number of java source files whose package had to be read from disk. */
+  public abstract Optional<Integer> packageCacheMisses();
+
   @Override
   public abstract Optional<Duration> totalClockTime();
 
@@ -64,6 +70,19 @@ public abstract class SyncQueryStats implements QuerySyncOperationStats {
 
     public abstract Builder setBazelExitCode(@Nullable Integer value);
 
+    abstract Optional<Integer> bazelExitCode();
+
+    /**
+     * Records the exit code of a query invocation. If a query is run as several invocations, the
+     * first failure is kept.
+     */
+    public synchronized Builder recordBazelExitCode(int value) {
+      if (bazelExitCode().map(code -> code == 0).orElse(true)) {
+        setBazelExitCode(value);
+      }
+      return this;
+    }
+
     public abstract Builder setBlazeBinaryType(BuildBinaryType value);
 
     public abstract Builder setQueryFlags(ImmutableList<String> value);
@@ -72,6 +91,10 @@ public abstract class SyncQueryStats implements QuerySyncOperationStats {
 
     public abstract Builder setQueryResultSizeBytes(@Nullable Long value);
 
+    public abstract Builder setPackageCacheHits(@Nullable Integer value);
+
+    public abstract Builder setPackageCacheMisses(@Nullable Integer value);
+
     public abstract Builder setTotalClockTime(@Nullable Duration value);
 
     public abstract SyncQueryStats build();
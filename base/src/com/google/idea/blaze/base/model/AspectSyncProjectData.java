@@ -18,6 +18,7 @@ package com.google.idea.blaze.base.model;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
@@ -33,13 +34,10 @@ import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
 import com.google.idea.blaze.common.BuildTarget;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Objects;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import javax.annotation.concurrent.Immutable;
 import org.jetbrains.annotations.Nullable;
 
@@ -77,10 +75,16 @@ public final class AspectSyncProjectData implements BlazeProjectData {
   @VisibleForTesting
   public static AspectSyncProjectData fromProto(
       BuildSystemName buildSystemName, ProjectData.BlazeProjectData proto) {
+    return fromProto(buildSystemName, proto, parseTargetData(proto));
+  }
+
+  private static AspectSyncProjectData fromProto(
+      BuildSystemName buildSystemName,
+      ProjectData.BlazeProjectData proto,
+      ProjectTargetData targetData) {
     BlazeInfo blazeInfo = BlazeInfo.fromProto(buildSystemName, proto.getBlazeInfo());
     WorkspacePathResolver workspacePathResolver =
         WorkspacePathResolver.fromProto(proto.getWorkspacePathResolver());
-    ProjectTargetData targetData = parseTargetData(proto);
     return new AspectSyncProjectData(
         targetData,
         blazeInfo,
@@ -109,8 +113,12 @@ public final class AspectSyncProjectData implements BlazeProjectData {
 
   @VisibleForTesting
   public ProjectData.BlazeProjectData toProto() {
+    return toProto(targetData.toProto());
+  }
+
+  private ProjectData.BlazeProjectData toProto(ProjectData.TargetData targetDataProto) {
     return ProjectData.BlazeProjectData.newBuilder()
-        .setTargetData(targetData.toProto())
+        .setTargetData(targetDataProto)
         .setBlazeInfo(blazeInfo.toProto())
         .setBlazeVersionData(blazeVersionData.toProto())
         .setWorkspacePathResolver(workspacePathResolver.toProto())
@@ -125,13 +133,13 @@ public final class AspectSyncProjectData implements BlazeProjectData {
     // look for a plain target first
     TargetIdeInfo target = map.get(TargetKey.forPlainTarget(label));
     if (target != null) {
-      return target.toTargetInfo();
+      return map.toTargetInfo(target);
     }
     // otherwise just return any matching target
     return map.targets().stream()
         .filter(t -> Objects.equals(label, t.getKey().getLabel()))
         .findFirst()
-        .map(TargetIdeInfo::toTargetInfo)
+        .map(map::toTargetInfo)
         .orElse(null);
   }
 
@@ -148,9 +156,8 @@ public final class AspectSyncProjectData implements BlazeProjectData {
 
   @Override
   public ImmutableList<TargetInfo> targets() {
-    return getTargetMap().targets().stream()
-        .map(TargetIdeInfo::toTargetInfo)
-        .collect(ImmutableList.toImmutableList());
+    TargetMap map = getTargetMap();
+    return map.targets().stream().map(map::toTargetInfo).collect(ImmutableList.toImmutableList());
   }
 
   public ProjectTargetData getTargetData() {
@@ -207,18 +214,32 @@ public final class AspectSyncProjectData implements BlazeProjectData {
     return false;
   }
 
+  /**
+   * Loads project data from disk. Files in both the {@link SectionedProjectDataFile sectioned}
+   * format and the older single gzipped proto format are supported.
+   */
   public static AspectSyncProjectData loadFromDisk(BuildSystemName buildSystemName, File file)
       throws IOException {
+    if (SectionedProjectDataFile.isSectionedFile(file)) {
+      SectionedProjectDataFile.Contents contents =
+          SectionedProjectDataFile.read(file, BlazeExecutor.getInstance().getExecutor());
+      return fromProto(
+          buildSystemName,
+          contents.projectData,
+          ProjectTargetData.fromProto(contents.projectData.getTargetData())
+              .withTargetMap(contents.targetMap));
+    }
     try (InputStream stream = new GZIPInputStream(new FileInputStream(file))) {
       return fromProto(buildSystemName, ProjectData.BlazeProjectData.parseFrom(stream));
     }
   }
 
   public void saveToDisk(File file) throws IOException {
-    ProjectData.BlazeProjectData proto = toProto();
-    try (OutputStream stream = new GZIPOutputStream(new FileOutputStream(file))) {
-      proto.writeTo(stream);
-    }
+    SectionedProjectDataFile.write(
+        file,
+        toProto(targetData.toProtoWithoutTargetMap()),
+        targetData.targetMap(),
+        BlazeExecutor.getInstance().getExecutor());
   }
 
   @Override
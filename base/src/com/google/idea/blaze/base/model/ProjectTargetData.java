@@ -15,8 +15,6 @@
  */
 package com.google.idea.blaze.base.model;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import com.google.devtools.intellij.model.ProjectData;
 import com.google.devtools.intellij.model.ProjectData.TargetData;
 import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
@@ -58,14 +56,26 @@ public final class ProjectTargetData implements ProtoWrapper<ProjectData.TargetD
     return new ProjectTargetData(targetMap, ideInterfaceState, remoteOutputs);
   }
 
+  /** Replaces the target map of a deserialized {@link ProjectTargetData}. */
+  ProjectTargetData withTargetMap(TargetMap targetMap) {
+    return new ProjectTargetData(targetMap, ideInterfaceState, remoteOutputs);
+  }
+
   @Override
   public TargetData toProto() {
+    return toProtoBuilder().setTargetMap(targetMap.toProto()).build();
+  }
+
+  /** Returns the proto form of this data without the target map, which is stored separately. */
+  TargetData toProtoWithoutTargetMap() {
+    return toProtoBuilder().build();
+  }
+
+  private ProjectData.TargetData.Builder toProtoBuilder() {
     ProjectData.TargetData.Builder builder =
-        ProjectData.TargetData.newBuilder()
-            .setTargetMap(targetMap.toProto())
-            .setRemoteOutputs(remoteOutputs.toProto());
+        ProjectData.TargetData.newBuilder().setRemoteOutputs(remoteOutputs.toProto());
     ProtoWrapper.unwrapAndSetIfNotNull(builder::setIdeInterfaceState, ideInterfaceState);
-    return builder.build();
+    return builder;
   }
 
   /**
@@ -73,8 +83,7 @@ public final class ProjectTargetData implements ProtoWrapper<ProjectData.TargetD
    */
   public ProjectTargetData filter(
       Predicate<TargetKey> targetsToKeep, WorkspaceLanguageSettings settings) {
-    TargetMap newTargets =
-        new TargetMap(ImmutableMap.copyOf(Maps.filterKeys(targetMap.map(), targetsToKeep::test)));
+    TargetMap newTargets = targetMap.filter(targetsToKeep);
     BlazeIdeInterfaceState newState =
         ideInterfaceState != null ? ideInterfaceState.filter(targetsToKeep) : null;
     RemoteOutputArtifacts newOutputs = remoteOutputs.removeUntrackedOutputs(newTargets, settings);
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.model;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.protobuf.MessageLite;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes {@link ProjectData.BlazeProjectData} in a sectioned file format.
+ *
+ * <p>Almost all of the project data is the target map. Rather than storing everything in a single
+ * gzip stream, which can only be compressed, decompressed and parsed on one thread, the target map
+ * is split into chunks which are stored as independently compressed sections. The sections are
+ * then encoded and decoded in parallel.
+ *
+ * <p>The file starts with a header giving the length of each section. The first section holds the
+ * project data with an empty target map; the rest each hold a {@link ProjectData.TargetMap} with
+ * up to {@link #TARGETS_PER_SECTION} targets.
+ *
+ * <p>The file is written to a temporary file which then replaces it, so a failed write never leaves
+ * a truncated file behind.
+ */
+final class SectionedProjectDataFile {
+
+  private static final int MAGIC = 0x42504453; // "BPDS"
+  private static final int VERSION = 1;
+  private static final int TARGETS_PER_SECTION = 5000;
+
+  private SectionedProjectDataFile() {}
+
+  /** The contents of a sectioned file. */
+  static final class Contents {
+    /** The project data, without its target map. */
+    final ProjectData.BlazeProjectData projectData;
+
+    final TargetMap targetMap;
+
+    Contents(ProjectData.BlazeProjectData projectData, TargetMap targetMap) {
+      this.projectData = projectData;
+      this.targetMap = targetMap;
+    }
+  }
+
+  /** Returns true if the given file is in the sectioned format. */
+  static boolean isSectionedFile(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return file.length() >= Integer.BYTES && in.readInt() == MAGIC;
+    }
+  }
+
+  static void write(
+      File file,
+      ProjectData.BlazeProjectData projectData,
+      TargetMap targetMap,
+      ListeningExecutorService executor)
+      throws IOException {
+    List<ListenableFuture<byte[]>> sections = Lists.newArrayList();
+    sections.add(executor.submit(() -> compress(projectData)));
+    for (List<TargetIdeInfo> chunk :
+        Lists.partition(targetMap.targets().asList(), TARGETS_PER_SECTION)) {
+      sections.add(
+          executor.submit(
+              () -> {
+                ProjectData.TargetMap.Builder builder = ProjectData.TargetMap.newBuilder();
+                chunk.forEach(target -> builder.addTargets(targetMap.toProto(target)));
+                return compress(builder.build());
+              }));
+    }
+    ImmutableList<byte[]> encoded = getAll(sections);
+
+    Path path = file.getAbsoluteFile().toPath();
+    Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(encoded.size());
+        for (byte[] section : encoded) {
+          out.writeInt(section.length);
+        }
+        for (byte[] section : encoded) {
+          out.write(section);
+        }
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  static Contents read(File file, ListeningExecutorService executor) throws IOException {
+    // The sections are read onto the heap rather than mapping the file, since a mapped file stays
+    // open until the buffer is garbage collected, and can't be replaced on Windows until then.
+    List<byte[]> sections = Lists.newArrayList();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a sectioned project data file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported project data version " + version + " in " + file);
+      }
+      int sectionCount = in.readInt();
+      if (sectionCount <= 0 || sectionCount > file.length() / Integer.BYTES) {
+        throw new IOException("Truncated project data file: " + file);
+      }
+      int[] lengths = new int[sectionCount];
+      long remaining = file.length() - (long) Integer.BYTES * (3 + lengths.length);
+      for (int i = 0; i < lengths.length; i++) {
+        lengths[i] = in.readInt();
+      }
+      for (int length : lengths) {
+        if (length < 0 || length > remaining) {
+          throw new IOException("Truncated project data file: " + file);
+        }
+        byte[] section = new byte[length];
+        in.readFully(section);
+        sections.add(section);
+        remaining -= length;
+      }
+    }
+
+    ListenableFuture<ProjectData.BlazeProjectData> projectData =
+        executor.submit(
+            () -> {
+              try (InputStream in = decompress(sections.get(0))) {
+                return ProjectData.BlazeProjectData.parseFrom(in);
+              }
+            });
+    ImmutableList<ListenableFuture<TargetMap>> chunks =
+        sections.subList(1, sections.size()).stream()
+            .map(
+                section ->
+                    executor.submit(
+                        () -> {
+                          try (InputStream in = decompress(section)) {
+                            return TargetMap.fromProto(ProjectData.TargetMap.parseFrom(in));
+                          }
+                        }))
+            .collect(toImmutableList());
+
+    ImmutableMap.Builder<TargetKey, TargetIdeInfo> targets = ImmutableMap.builder();
+    for (TargetMap chunk : getAll(chunks)) {
+      targets.putAll(chunk.map());
+    }
+    return new Contents(await(projectData), new TargetMap(targets.buildOrThrow()));
+  }
+
+  private static byte[] compress(MessageLite message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      message.writeTo(out);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static InputStream decompress(byte[] bytes) throws IOException {
+    return new GZIPInputStream(new ByteArrayInputStream(bytes));
+  }
+
+  private static <T> ImmutableList<T> getAll(List<? extends ListenableFuture<T>> futures)
+      throws IOException {
+    return await(Futures.allAsList(futures)).stream().collect(toImmutableList());
+  }
+
+  private static <T> T await(ListenableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -34,6 +34,9 @@ import com.google.common.io.CharSource;
 import com.google.common.io.MoreFiles;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.idea.blaze.base.bazel.BazelExitCodeException;
 import com.google.idea.blaze.base.bazel.BazelExitCodeException.ThrowOption;
@@ -44,6 +47,7 @@ import com.google.idea.blaze.base.command.BlazeCommandName;
 import com.google.idea.blaze.base.command.BlazeFlags;
 import com.google.idea.blaze.base.command.BlazeInvocationContext;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper;
+import com.google.idea.blaze.base.command.buildresult.ParsedBepOutput.TargetOutputsListener;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStats;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStatsScope;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
@@ -72,9 +76,11 @@ import com.google.idea.common.experiments.BoolExperiment;
 import com.google.protobuf.Message;
 import com.google.protobuf.TextFormat;
 import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.PluginDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtilRt;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -84,16 +90,34 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 /** An object that knows how to build dependencies for given targets */
 public class BazelDependencyBuilder implements DependencyBuilder {
 
+  private static final Logger logger = Logger.getInstance(BazelDependencyBuilder.class);
+
   public static final BoolExperiment fetchArtifactInfoInParallel =
       new BoolExperiment("qsync.parallel.artifact.info.fetch", true);
 
+  /**
+   * Starts reading artifact info files while the build is still running, as soon as the target
+   * that produced them completes. Only used when {@link #fetchArtifactInfoInParallel} is enabled.
+   *
+   * <p>Jars and AARs are still fetched once the whole build has finished.
+   */
+  public static final BoolExperiment streamArtifactInfoFetch =
+      new BoolExperiment("qsync.stream.artifact.info.fetch", false);
+
+  /** Executor used to parse the build event stream while the build is running. */
+  private static final ListeningExecutorService BEP_STREAMING_EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor("BepStreamingExecutor", 1));
+
   public static final BoolExperiment buildGeneratedSrcJars =
       new BoolExperiment("qsync.build.generated.src.jars", false);
 
@@ -207,8 +231,32 @@ public class BazelDependencyBuilder implements DependencyBuilder {
       buildDepsStatsBuilder.ifPresent(
           stats -> stats.setBuildFlags(builder.build().toArgumentList()));
       Instant buildTime = Instant.now();
-      BlazeBuildOutputs outputs =
-          invoker.getCommandRunner().run(project, builder, buildResultHelper, context, ImmutableMap.of());
+      Map<String, ListenableFuture<JavaArtifacts>> artifactInfoReads = new ConcurrentHashMap<>();
+      Map<String, ListenableFuture<CcCompilationInfo>> ccInfoReads = new ConcurrentHashMap<>();
+      TargetOutputsListener infoFileReader =
+          (target, outputGroup, artifacts) -> {
+            if (outputGroup.equals(OutputGroup.ARTIFACT_INFO_FILE.outputGroupName())) {
+              startReading(artifacts, artifactInfoReads, this::readArtifactInfoFile);
+            } else if (outputGroup.equals(OutputGroup.CC_INFO_FILE.outputGroupName())) {
+              startReading(artifacts, ccInfoReads, this::readCcInfoFile);
+            }
+          };
+      SettableFuture<Void> buildFinished = SettableFuture.create();
+      ListenableFuture<?> bepStreaming =
+          streamArtifactInfoFetch.getValue() && fetchArtifactInfoInParallel.getValue()
+              ? BEP_STREAMING_EXECUTOR.submit(
+                  () -> buildResultHelper.streamBuildOutput(infoFileReader, buildFinished))
+              : Futures.immediateVoidFuture();
+      BlazeBuildOutputs outputs;
+      try {
+        outputs =
+            invoker
+                .getCommandRunner()
+                .run(project, builder, buildResultHelper, context, ImmutableMap.of());
+      } finally {
+        buildFinished.set(null);
+      }
+      awaitBepStreaming(bepStreaming, artifactInfoReads.size() + ccInfoReads.size(), context);
       buildDepsStatsBuilder.ifPresent(
           stats -> {
             stats.setBuildIds(outputs.getBuildIds());
@@ -220,7 +268,46 @@ public class BazelDependencyBuilder implements DependencyBuilder {
           ThrowOption.ALLOW_PARTIAL_SUCCESS,
           ThrowOption.ALLOW_BUILD_FAILURE);
 
-      return createOutputInfo(outputs, outputGroups, buildTime, context);
+      return createOutputInfo(
+          outputs, outputGroups, buildTime, artifactInfoReads, ccInfoReads, context);
+    }
+  }
+
+  /**
+   * Starts reading the given artifact info files, unless they are being read already.
+   *
+   * <p>Called while the build is still running; the results are picked up by {@link
+   * #createOutputInfo} once it has finished.
+   */
+  private <T> void startReading(
+      Collection<OutputArtifact> artifactInfoFiles,
+      Map<String, ListenableFuture<T>> reads,
+      CheckedTransform<OutputArtifact, T> transform) {
+    for (OutputArtifact artifactInfoFile : artifactInfoFiles) {
+      var unused =
+          reads.computeIfAbsent(
+              artifactInfoFile.getRelativePath(),
+              path ->
+                  Futures.submit(() -> transform.apply(artifactInfoFile), FetchExecutor.EXECUTOR));
+    }
+  }
+
+  /**
+   * Waits for the build event stream to be fully read. Failures are not fatal, since any artifact
+   * info files not read early are read once the complete build output is available.
+   */
+  private static void awaitBepStreaming(
+      ListenableFuture<?> bepStreaming, int startedEarly, BlazeContext context) {
+    try {
+      Uninterruptibles.getUninterruptibly(bepStreaming);
+    } catch (ExecutionException e) {
+      logger.warn("Failed to read build event stream during the build", e);
+    }
+    if (startedEarly > 0) {
+      context.output(
+          PrintOutput.log(
+              String.format(
+                  "Started reading %d artifact info files during the build", startedEarly)));
     }
   }
 
@@ -266,6 +353,8 @@ public class BazelDependencyBuilder implements DependencyBuilder {
       BlazeBuildOutputs blazeBuildOutputs,
       Set<OutputGroup> outputGroups,
       Instant buildTime,
+      Map<String, ListenableFuture<JavaArtifacts>> artifactInfoReads,
+      Map<String, ListenableFuture<CcCompilationInfo>> ccInfoReads,
       BlazeContext context)
       throws BuildException {
     ImmutableListMultimap<OutputGroup, OutputArtifact> allArtifacts =
@@ -297,9 +386,10 @@ public class BazelDependencyBuilder implements DependencyBuilder {
     if (fetchArtifactInfoInParallel.getValue()) {
       try {
         ListenableFuture<List<JavaArtifacts>> artifactInfoFutures =
-            readAndTransformInfoFiles(artifactInfoFiles, this::readArtifactInfoFile);
+            readAndTransformInfoFiles(
+                artifactInfoFiles, artifactInfoReads, this::readArtifactInfoFile);
         ListenableFuture<List<CcCompilationInfo>> ccInfoFutures =
-            readAndTransformInfoFiles(ccArtifactInfoFiles, this::readCcInfoFile);
+            readAndTransformInfoFiles(ccArtifactInfoFiles, ccInfoReads, this::readCcInfoFile);
 
         artifactInfoFilesBuilder.addAll(Uninterruptibles.getUninterruptibly(artifactInfoFutures));
         ccInfoBuilder.addAll(Uninterruptibles.getUninterruptibly(ccInfoFutures));
@@ -346,12 +436,21 @@ public class BazelDependencyBuilder implements DependencyBuilder {
     R apply(T t) throws BuildException;
   }
 
+  /**
+   * Reads the given artifact info files, reusing any reads that were already started while the
+   * build was running.
+   */
   private <T> ListenableFuture<List<T>> readAndTransformInfoFiles(
       ImmutableList<OutputArtifact> artifactInfoFiles,
+      Map<String, ListenableFuture<T>> startedReads,
       CheckedTransform<OutputArtifact, T> transform) {
     List<ListenableFuture<T>> futures = Lists.newArrayList();
     for (OutputArtifact artifactInfoFile : artifactInfoFiles) {
-      futures.add(Futures.submit(() -> transform.apply(artifactInfoFile), FetchExecutor.EXECUTOR));
+      ListenableFuture<T> started = startedReads.get(artifactInfoFile.getRelativePath());
+      futures.add(
+          started != null
+              ? started
+              : Futures.submit(() -> transform.apply(artifactInfoFile), FetchExecutor.EXECUTOR));
     }
     return Futures.allAsList(futures);
   }
@@ -15,7 +15,17 @@
  */
 package com.google.idea.blaze.base.qsync;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.errorprone.annotations.MustBeClosed;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.bazel.BuildSystem;
 import com.google.idea.blaze.base.bazel.BuildSystem.BuildInvoker;
 import com.google.idea.blaze.base.command.BlazeCommand;
@@ -29,6 +39,7 @@ import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.exception.BuildException;
 import com.google.idea.blaze.qsync.query.QuerySpec;
 import com.google.idea.blaze.qsync.query.QuerySummary;
+import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.IOException;
@@ -38,7 +49,10 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /** The default implementation of QueryRunner. */
@@ -46,6 +60,14 @@ public class BazelQueryRunner implements QueryRunner {
 
   private static final Logger logger = Logger.getInstance(BazelQueryRunner.class);
 
+  /**
+   * The maximum number of shards to split a query into. Shards are split by the project view
+   * directories, so a project with fewer directories than this will use fewer shards. A value of 1
+   * disables sharding.
+   */
+  @VisibleForTesting
+  static final IntExperiment queryShards = new IntExperiment("qsync.query.shards", 1);
+
   private final Project project;
   private final BuildSystem buildSystem;
 
@@ -63,6 +85,121 @@ public class BazelQueryRunner implements QueryRunner {
         SyncQueryStatsScope.fromContext(context);
     syncQueryStatsBuilder.ifPresent(stats -> stats.setBlazeBinaryType(invoker.getType()));
 
+    ImmutableList<QuerySpec> shards = query.shard(queryShards.getValue());
+    QuerySummary querySummary =
+        shards.size() == 1
+            ? runQueryShard(query, invoker, context, /* recordQueryFlags= */ true)
+            : runShardedQuery(shards, invoker, context);
+    int packagesWithErrorsCount = querySummary.proto().getPackagesWithErrorsCount();
+    context.output(
+        PrintOutput.output("Total query time ms: " + timer.elapsed(TimeUnit.MILLISECONDS)));
+    if (packagesWithErrorsCount > 0) {
+      context.output(
+          PrintOutput.error(
+              "There were errors in %d packages; project will be incomplete. Please fix the above"
+                  + " errors and try again.",
+              packagesWithErrorsCount));
+      context.setHasWarnings();
+    }
+    return querySummary;
+  }
+
+  /**
+   * Runs several query shards and merges their results.
+   *
+   * <p>If the invoker supports parallelism, all shards are run concurrently. Otherwise, the shards
+   * are run one after another, but the output of each shard is summarized in the background while
+   * the next shard is running.
+   *
+   * <p>The shards differ only in their query expression, so only the flags of the first shard are
+   * recorded in the query stats.
+   */
+  private QuerySummary runShardedQuery(
+      ImmutableList<QuerySpec> shards, BuildInvoker invoker, BlazeContext context)
+      throws IOException, BuildException {
+    context.output(PrintOutput.output("Running query in %d shards", shards.size()));
+    ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
+    List<ListenableFuture<QuerySummary>> summaries = new ArrayList<>();
+    try {
+      for (QuerySpec shard : shards) {
+        boolean recordQueryFlags = summaries.isEmpty();
+        if (invoker.supportsParallelism()) {
+          summaries.add(
+              executor.submit(() -> runQueryShard(shard, invoker, context, recordQueryFlags)));
+        } else {
+          summaries.add(summarizeInBackground(shard, invoker, context, recordQueryFlags, executor));
+        }
+      }
+      return QuerySummary.merge(Uninterruptibles.getUninterruptibly(Futures.allAsList(summaries)));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), BuildException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new BuildException("Failed to run query", e.getCause());
+    } finally {
+      summaries.forEach(f -> f.cancel(true));
+    }
+  }
+
+  private QuerySummary runQueryShard(
+      QuerySpec query, BuildInvoker invoker, BlazeContext context, boolean recordQueryFlags)
+      throws IOException, BuildException {
+    try (BuildResultHelper buildResultHelper = invoker.createBuildResultHelper();
+        InputStream in =
+            startQuery(query, invoker, buildResultHelper, context, recordQueryFlags)) {
+      return readFrom(in, context);
+    }
+  }
+
+  /**
+   * Runs a query shard, and summarizes its output on the given executor. The query output is
+   * closed once the returned future is done, including when it is cancelled before it has started.
+   */
+  private ListenableFuture<QuerySummary> summarizeInBackground(
+      QuerySpec query,
+      BuildInvoker invoker,
+      BlazeContext context,
+      boolean recordQueryFlags,
+      ListeningExecutorService executor)
+      throws IOException, BuildException {
+    BuildResultHelper buildResultHelper = invoker.createBuildResultHelper();
+    InputStream in;
+    try {
+      in = startQuery(query, invoker, buildResultHelper, context, recordQueryFlags);
+    } catch (IOException | BuildException | RuntimeException e) {
+      buildResultHelper.close();
+      throw e;
+    }
+    ListenableFuture<QuerySummary> summary;
+    try {
+      summary = executor.submit(() -> readFrom(in, context));
+    } catch (RuntimeException e) {
+      closeQueryOutput(buildResultHelper, in);
+      throw e;
+    }
+    summary.addListener(
+        () -> closeQueryOutput(buildResultHelper, in), MoreExecutors.directExecutor());
+    return summary;
+  }
+
+  private static void closeQueryOutput(BuildResultHelper buildResultHelper, InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      logger.warn("Failed to close query output", e);
+    } finally {
+      buildResultHelper.close();
+    }
+  }
+
+  @MustBeClosed
+  private InputStream startQuery(
+      QuerySpec query,
+      BuildInvoker invoker,
+      BuildResultHelper buildResultHelper,
+      BlazeContext context,
+      boolean recordQueryFlags)
+      throws IOException, BuildException {
     BlazeCommandRunner commandRunner = invoker.getCommandRunner();
     logger.info(
         String.format(
@@ -87,25 +224,11 @@ public class BazelQueryRunner implements QueryRunner {
     commandBuilder.setWorkspaceRoot(query.workspaceRoot());
     addExtraFlags(commandBuilder);
 
-    syncQueryStatsBuilder.ifPresent(
-        stats -> stats.setQueryFlags(commandBuilder.build().toArgumentList()));
-    try (BuildResultHelper buildResultHelper = invoker.createBuildResultHelper();
-        InputStream in =
-            commandRunner.runQuery(project, commandBuilder, buildResultHelper, context)) {
-      QuerySummary querySummary = readFrom(in, context);
-      int packagesWithErrorsCount = querySummary.proto().getPackagesWithErrorsCount();
-      context.output(
-          PrintOutput.output("Total query time ms: " + timer.elapsed(TimeUnit.MILLISECONDS)));
-      if (packagesWithErrorsCount > 0) {
-        context.output(
-            PrintOutput.error(
-                "There were errors in %d packages; project will be incomplete. Please fix the above"
-                    + " errors and try again.",
-                packagesWithErrorsCount));
-        context.setHasWarnings();
-      }
-      return querySummary;
+    if (recordQueryFlags) {
+      SyncQueryStatsScope.fromContext(context)
+          .ifPresent(stats -> stats.setQueryFlags(commandBuilder.build().toArgumentList()));
     }
+    return commandRunner.runQuery(project, commandBuilder, buildResultHelper, context);
   }
 
   /** Allows derived classes to add proprietary flags to the query invocation. */
@@ -55,6 +55,7 @@ import com.google.idea.blaze.qsync.ProjectRefresher;
 import com.google.idea.blaze.qsync.VcsStateDiffer;
 import com.google.idea.blaze.qsync.deps.ArtifactTracker;
 import com.google.idea.blaze.qsync.deps.NewArtifactTracker;
+import com.google.idea.blaze.qsync.java.CachingPackageReader;
 import com.google.idea.blaze.qsync.java.PackageStatementParser;
 import com.google.idea.blaze.qsync.java.ParallelPackageReader;
 import com.google.idea.blaze.qsync.project.ProjectDefinition;
@@ -66,6 +67,7 @@ import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.util.SimpleModificationTracker;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Optional;
 import org.jetbrains.annotations.Nullable;
 
@@ -149,7 +151,11 @@ public class ProjectLoader {
     FileRefresher fileRefresher = new FileRefresher(project);
     BuildArtifactCache artifactCache =
         BuildArtifactCache.create(
-            ideProjectBasePath.resolve("buildcache"), artifactFetcher, executor);
+            ideProjectBasePath.resolve("buildcache"),
+            artifactFetcher,
+            executor,
+            QuerySync.BUILD_ARTIFACT_CACHE_MAX_SIZE_MB.getValue() * 1024L * 1024L,
+            Duration.ofHours(QuerySync.BUILD_ARTIFACT_CACHE_MIN_AGE_HOURS.getValue()));
 
     ArtifactTracker<BlazeContext> artifactTracker;
     RenderJarArtifactTracker renderJarArtifactTracker;
@@ -198,10 +204,11 @@ public class ProjectLoader {
             vcsHandler.map(BlazeVcsHandler::getVcsStateDiffer).orElse(VcsStateDiffer.NONE),
             workspaceRoot.path(),
             graph::getCurrent);
+    CachingPackageReader packageReader = createWorkspaceRelativePackageReader(importSettings);
     BlazeProjectSnapshotBuilder blazeProjectSnapshotBuilder =
         new BlazeProjectSnapshotBuilder(
             executor,
-            createWorkspaceRelativePackageReader(),
+            packageReader,
             workspaceRoot.path(),
             handledRules,
             QuerySync.USE_NEW_RES_DIR_LOGIC::getValue,
@@ -234,6 +241,7 @@ public class ProjectLoader {
             appInspectorTracker,
             projectQuerier,
             blazeProjectSnapshotBuilder,
+            packageReader,
             latestProjectDef,
             projectViewSet,
             workspacePathResolver,
@@ -249,8 +257,12 @@ public class ProjectLoader {
     return querySyncProject;
   }
 
-  private ParallelPackageReader createWorkspaceRelativePackageReader() {
-    return new ParallelPackageReader(executor, new PackageStatementParser());
+  private CachingPackageReader createWorkspaceRelativePackageReader(
+      BlazeImportSettings importSettings) {
+    return new CachingPackageReader(
+        executor,
+        new ParallelPackageReader(executor, new PackageStatementParser()),
+        BlazeDataStorage.getProjectDataDir(importSettings).toPath().resolve("package_cache"));
   }
 
   private ProjectQuerierImpl createProjectQuerier(
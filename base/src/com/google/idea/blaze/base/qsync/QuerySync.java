@@ -20,6 +20,7 @@ import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BlazeImportSettings.ProjectType;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.google.idea.common.experiments.FeatureRolloutExperiment;
+import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.project.Project;
 import java.util.function.Supplier;
 
@@ -43,6 +44,14 @@ public class QuerySync {
   public static final BoolExperiment ATTACH_DEP_SRCJARS =
       new BoolExperiment("querysync.attach.dep.srcjars", true);
 
+  /** The size, in MB, beyond which least recently used build artifacts are evicted. */
+  public static final IntExperiment BUILD_ARTIFACT_CACHE_MAX_SIZE_MB =
+      new IntExperiment("query.sync.build.cache.max.size.mb", 1024);
+
+  /** Build artifacts used within this many hours are never evicted, regardless of cache size. */
+  public static final IntExperiment BUILD_ARTIFACT_CACHE_MIN_AGE_HOURS =
+      new IntExperiment("query.sync.build.cache.min.age.hours", 24);
+
   public static final boolean USE_NEW_BUILD_ARTIFACT_MANAGEMENT =
       new BoolExperiment("query.sync.new.artifact.management", false).getValue();
 
@@ -52,6 +52,7 @@ import com.google.idea.blaze.qsync.BlazeProject;
 import com.google.idea.blaze.qsync.BlazeProjectSnapshot;
 import com.google.idea.blaze.qsync.BlazeProjectSnapshotBuilder;
 import com.google.idea.blaze.qsync.deps.ArtifactTracker;
+import com.google.idea.blaze.qsync.java.CachingPackageReader;
 import com.google.idea.blaze.qsync.project.PostQuerySyncData;
 import com.google.idea.blaze.qsync.project.ProjectDefinition;
 import com.google.idea.blaze.qsync.project.ProjectPath;
@@ -99,6 +100,7 @@ public class QuerySyncProject {
   private final AppInspectorTracker appInspectorTracker;
   private final ProjectQuerier projectQuerier;
   private final BlazeProjectSnapshotBuilder blazeProjectSnapshotBuilder;
+  private final CachingPackageReader packageReader;
   private final ProjectDefinition projectDefinition;
   private final ProjectViewSet projectViewSet;
   // TODO(mathewi) only one of these two should strictly be necessary:
@@ -129,6 +131,7 @@ public class QuerySyncProject {
       AppInspectorTracker appInspectorTracker,
       ProjectQuerier projectQuerier,
       BlazeProjectSnapshotBuilder blazeProjectSnapshotBuilder,
+      CachingPackageReader packageReader,
       ProjectDefinition projectDefinition,
       ProjectViewSet projectViewSet,
       WorkspacePathResolver workspacePathResolver,
@@ -153,6 +156,7 @@ public class QuerySyncProject {
     this.appInspectorTracker = appInspectorTracker;
     this.projectQuerier = projectQuerier;
     this.blazeProjectSnapshotBuilder = blazeProjectSnapshotBuilder;
+    this.packageReader = packageReader;
     this.projectDefinition = projectDefinition;
     this.projectViewSet = projectViewSet;
     this.workspacePathResolver = workspacePathResolver;
@@ -265,6 +269,7 @@ public class QuerySyncProject {
                 postQuerySyncData,
                 artifactTracker.getStateSnapshot(),
                 projectProtoTransforms.getComposedTransform());
+        reportPackageCacheStats(context);
         onNewSnapshot(context, newSnapshot);
 
         // TODO: Revisit SyncListeners once we switch fully to qsync
@@ -291,6 +296,18 @@ public class QuerySyncProject {
     }
   }
 
+  private void reportPackageCacheStats(BlazeContext context) {
+    CachingPackageReader.Stats stats = packageReader.takeStats();
+    context.output(
+        PrintOutput.log(
+            "%-10d Java packages read from cache (%d files changed)",
+            stats.hits(), stats.misses()));
+    SyncQueryStatsScope.fromContext(context)
+        .ifPresent(
+            builder ->
+                builder.setPackageCacheHits(stats.hits()).setPackageCacheMisses(stats.misses()));
+  }
+
   /**
    * Returns the list of project targets related to the given workspace file.
    *
@@ -338,7 +355,10 @@ public class QuerySyncProject {
       throws IOException, BuildException {
     try (BlazeContext context = BlazeContext.create(parentContext)) {
       context.push(new BuildDepsStatsScope());
-      if (getDependencyTracker().buildDependenciesForTargets(context, request)) {
+      boolean built = getDependencyTracker().buildDependenciesForTargets(context, request);
+      BuildDepsStatsScope.fromContext(context)
+          .ifPresent(stats -> stats.setArtifactCacheStats(buildArtifactCache.getStats()));
+      if (built) {
         BlazeProjectSnapshot newSnapshot =
             blazeProjectSnapshotBuilder.createBlazeProjectSnapshot(
                 context,
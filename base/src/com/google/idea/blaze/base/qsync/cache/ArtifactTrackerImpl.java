@@ -30,8 +30,8 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Predicate.not;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
@@ -39,6 +39,8 @@ import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.Multimaps;
@@ -46,6 +48,8 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.intellij.qsync.ArtifactTrackerData.ArtifactTrackerState;
 import com.google.devtools.intellij.qsync.ArtifactTrackerData.CachedArtifacts;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStats;
@@ -57,7 +61,7 @@ import com.google.idea.blaze.base.qsync.QuerySync;
 import com.google.idea.blaze.base.qsync.RenderJarArtifactTracker;
 import com.google.idea.blaze.base.qsync.RenderJarInfo;
 import com.google.idea.blaze.base.qsync.cache.FileCache.CacheLayout;
-import com.google.idea.blaze.base.qsync.cache.FileCache.OutputArtifactDestination;
+import com.google.idea.blaze.base.qsync.cache.FileCache.DisallowConflictsStrategy;
 import com.google.idea.blaze.base.qsync.cache.FileCache.OutputArtifactDestinationAndLayout;
 import com.google.idea.blaze.base.qsync.cc.CcProjectProtoTransform;
 import com.google.idea.blaze.base.scope.BlazeContext;
@@ -93,6 +97,7 @@ import com.google.protobuf.ExtensionRegistry;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -103,13 +108,16 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -131,6 +139,18 @@ public class ArtifactTrackerImpl
   public static final int STORAGE_VERSION = 3;
   private static final Logger logger = Logger.getInstance(ArtifactTrackerImpl.class);
 
+  /**
+   * The number of artifacts fetched by each call to the artifact fetcher. Large enough for the
+   * fetcher to batch its work, while letting layouts start before all artifacts are fetched.
+   */
+  private static final int FETCH_CHUNK_SIZE = 200;
+
+  /** Executor for unpacking fetched artifacts into their final layouts. */
+  private static final ListeningExecutorService LAYOUT_EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor(
+              "ArtifactLayoutExecutor", Runtime.getRuntime().availableProcessors()));
+
   // Information about java dependency artifacts derived when the dependencies were built.
   // Note that artifacts that do not produce files are also stored here.
   private final Map<Label, JavaArtifactInfo> javaArtifacts = new HashMap<>();
@@ -330,15 +350,22 @@ public class ArtifactTrackerImpl
   }
 
   /**
-   * Fetches the output artifacts requested in {@code artifactToDestinationMap}.
+   * Fetches the output artifacts requested in {@code artifactToDestinationMap} whose digest has
+   * changed, and creates their final layouts.
+   *
+   * <p>Fetching and layout preparation are pipelined: artifacts are fetched in chunks of {@link
+   * #FETCH_CHUNK_SIZE}, and as soon as a chunk has been fetched, the final destinations of its
+   * artifacts are created on {@link #LAYOUT_EXECUTOR}, so that unzipping of AARs and source jars
+   * overlaps with the remaining downloads. Artifacts with a conflict resolution strategy other
+   * than {@link DisallowConflictsStrategy} are laid out once all of them have been fetched, since
+   * the strategy needs to see all conflicting artifacts at once.
    *
-   * @return A map of {@link OutputArtifactDestination}'s from the original request to the original
-   *     artifact key that it was derived from.
+   * @return A map of final destination path to the key of the artifact that it was derived from.
    */
-  private <T extends OutputArtifactDestination>
-      ListenableFuture<ImmutableMap<T, Path>> fetchArtifacts(
-          BlazeContext context, ImmutableMap<OutputArtifact, T> artifactToDestinationMap) {
-    final ImmutableMap<OutputArtifact, ArtifactDestination> artifactToDestinationPathMap =
+  private ListenableFuture<ImmutableMap<Path, Path>> fetchArtifactsAndPrepareLayouts(
+      BlazeContext context,
+      ImmutableMap<OutputArtifact, OutputArtifactDestinationAndLayout> artifactToDestinationMap) {
+    final ImmutableMap<OutputArtifact, OutputArtifactDestinationAndLayout> toFetch =
         runMeasureAndLog(
             () ->
                 artifactToDestinationMap.entrySet().stream()
@@ -347,41 +374,131 @@ public class ArtifactTrackerImpl
                             !Objects.equals(
                                 it.getKey().getDigest(),
                                 cacheDirectoryManager.getStoredArtifactDigest(it.getKey())))
-                    .collect(
-                        toImmutableMap(
-                            Entry::getKey,
-                            it -> new ArtifactDestination(it.getValue().getCopyDestination()))),
+                    .collect(toImmutableMap(Entry::getKey, Entry::getValue)),
             String.format("Read %d artifact digests", artifactToDestinationMap.size()),
             Duration.ofSeconds(1));
 
     runMeasureAndLog(
         () -> {
-          for (OutputArtifact outputArtifact : artifactToDestinationPathMap.keySet()) {
+          for (OutputArtifact outputArtifact : toFetch.keySet()) {
             // Once fetching starts we do not know the state of downloaded files. If fetching fails,
             // consider files lost.
             cacheDirectoryManager.setStoredArtifactDigest(outputArtifact, "");
           }
         },
-        String.format("Reset %d artifact digests", artifactToDestinationPathMap.size()),
+        String.format("Reset %d artifact digests", toFetch.size()),
         Duration.ofSeconds(1));
-    return Futures.transform(
-        artifactFetcher.copy(artifactToDestinationPathMap, context),
-        unused ->
-            runMeasureAndLog(
-                () -> {
-                  ImmutableMap.Builder<T, Path> destinationToArtifactMap = ImmutableMap.builder();
-                  for (OutputArtifact artifact : artifactToDestinationPathMap.keySet()) {
-                    T artifactDestination = artifactToDestinationMap.get(artifact);
-                    Preconditions.checkNotNull(artifactDestination);
-                    cacheDirectoryManager.setStoredArtifactDigest(artifact, artifact.getDigest());
-                    destinationToArtifactMap.put(
-                        artifactDestination, Path.of(artifact.getRelativePath()));
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    // The time from the start until the last fetch completed, and the total time spent laying out.
+    AtomicLong lastFetchDoneMillis = new AtomicLong();
+    AtomicLong layoutMillis = new AtomicLong();
+    Map<Path, Path> eagerLayouts = new ConcurrentHashMap<>();
+    ListMultimap<Path, OutputArtifactDestinationAndLayout> eagerDestinations =
+        ArrayListMultimap.create();
+    Map<OutputArtifact, ArtifactDestination> eager = new LinkedHashMap<>();
+    Map<OutputArtifact, ArtifactDestination> deferred = new LinkedHashMap<>();
+    for (Entry<OutputArtifact, OutputArtifactDestinationAndLayout> entry : toFetch.entrySet()) {
+      ArtifactDestination destination =
+          new ArtifactDestination(entry.getValue().getCopyDestination());
+      if (entry.getValue().getConflictStrategy() == DisallowConflictsStrategy.INSTANCE) {
+        eager.put(entry.getKey(), destination);
+      } else {
+        deferred.put(entry.getKey(), destination);
+      }
+    }
+    ImmutableList.Builder<ListenableFuture<?>> tasks = ImmutableList.builder();
+    for (List<OutputArtifact> chunk :
+        Lists.partition(ImmutableList.copyOf(eager.keySet()), FETCH_CHUNK_SIZE)) {
+      ImmutableMap<OutputArtifact, ArtifactDestination> chunkDestinations =
+          chunk.stream().collect(toImmutableMap(a -> a, eager::get));
+      tasks.add(
+          Futures.transformAsync(
+              artifactFetcher.copy(chunkDestinations, context),
+              unused -> {
+                lastFetchDoneMillis.accumulateAndGet(stopwatch.elapsed(MILLISECONDS), Math::max);
+                ImmutableList.Builder<ListenableFuture<?>> layouts = ImmutableList.builder();
+                for (OutputArtifact artifact : chunk) {
+                  cacheDirectoryManager.setStoredArtifactDigest(artifact, artifact.getDigest());
+                  OutputArtifactDestinationAndLayout layout = toFetch.get(artifact);
+                  Path finalDest = layout.determineFinalDestination();
+                  synchronized (eagerDestinations) {
+                    eagerDestinations.put(finalDest, layout);
+                    if (eagerDestinations.get(finalDest).size() > 1) {
+                      // This is a conflict, which is reported once everything else is done.
+                      continue;
+                    }
                   }
-                  return destinationToArtifactMap.buildOrThrow();
-                },
-                String.format("Store %d artifact digests", artifactToDestinationPathMap.size()),
-                Duration.ofSeconds(1)),
-        ArtifactFetchers.EXECUTOR);
+                  layouts.add(
+                      LAYOUT_EXECUTOR.submit(
+                          () -> {
+                            long elapsed =
+                                runMeasureAndLog(
+                                    () -> {
+                                      Stopwatch layoutStopwatch = Stopwatch.createStarted();
+                                      layout.createFinalDestination(finalDest);
+                                      return layoutStopwatch.elapsed(MILLISECONDS);
+                                    },
+                                    String.format("Create final destination %s", finalDest),
+                                    Duration.ofSeconds(1));
+                            layoutMillis.addAndGet(elapsed);
+                            eagerLayouts.put(finalDest, Path.of(artifact.getRelativePath()));
+                          }));
+                }
+                return Futures.allAsList(layouts.build());
+              },
+              LAYOUT_EXECUTOR));
+    }
+    ListenableFuture<?> deferredFetch =
+        deferred.isEmpty()
+            ? Futures.immediateVoidFuture()
+            : Futures.transform(
+                artifactFetcher.copy(ImmutableMap.copyOf(deferred), context),
+                unused ->
+                    lastFetchDoneMillis.accumulateAndGet(
+                        stopwatch.elapsed(MILLISECONDS), Math::max),
+                ArtifactFetchers.EXECUTOR);
+    tasks.add(deferredFetch);
+
+    return Futures.whenAllSucceed(tasks.build())
+        .call(
+            () -> {
+              for (Path finalDest : eagerDestinations.keySet()) {
+                List<OutputArtifactDestinationAndLayout> conflicting =
+                    eagerDestinations.get(finalDest);
+                if (conflicting.size() > 1) {
+                  OutputArtifactDestinationAndLayout unused =
+                      DisallowConflictsStrategy.INSTANCE.resolveConflicts(
+                          finalDest, conflicting, context);
+                }
+              }
+              ImmutableMap.Builder<OutputArtifactDestinationAndLayout, Path>
+                  deferredDestinationToArtifact = ImmutableMap.builder();
+              for (OutputArtifact artifact : deferred.keySet()) {
+                cacheDirectoryManager.setStoredArtifactDigest(artifact, artifact.getDigest());
+                deferredDestinationToArtifact.put(
+                    artifactToDestinationMap.get(artifact), Path.of(artifact.getRelativePath()));
+              }
+              Stopwatch layoutStopwatch = Stopwatch.createStarted();
+              ImmutableMap<Path, Path> deferredLayouts =
+                  prepareFinalLayouts(deferredDestinationToArtifact.buildOrThrow(), context);
+              layoutMillis.addAndGet(layoutStopwatch.elapsed(MILLISECONDS));
+              context.output(
+                  PrintOutput.log(
+                      String.format(
+                          "Fetched %d artifacts, the last after %d ms; spent %d ms preparing %d"
+                              + " layouts (%d ms total)",
+                          toFetch.size(),
+                          lastFetchDoneMillis.get(),
+                          layoutMillis.get(),
+                          eagerLayouts.size() + deferredLayouts.size(),
+                          stopwatch.elapsed(MILLISECONDS))));
+              return ImmutableMap.<Path, Path>builder()
+                  .putAll(eagerLayouts)
+                  .putAll(deferredLayouts)
+                  .buildOrThrow();
+            },
+            LAYOUT_EXECUTOR);
   }
 
   /**
@@ -512,8 +629,8 @@ public class ArtifactTrackerImpl
     DownloadTrackingScope downloads = new DownloadTrackingScope();
     context.push(downloads);
     Optional<BuildDepsStats.Builder> builder = BuildDepsStatsScope.fromContext(context);
-    ListenableFuture<ImmutableMap<OutputArtifactDestinationAndLayout, Path>>
-        cachePathToArtifactKeyMapFuture = fetchArtifacts(context, artifactMap);
+    ListenableFuture<ImmutableMap<Path, Path>> updatedFuture =
+        fetchArtifactsAndPrepareLayouts(context, artifactMap);
 
     if (downloads.getFileCount() > 0) {
       context.output(
@@ -526,13 +643,18 @@ public class ArtifactTrackerImpl
           });
     }
 
-    // NOTE: The cache conflict detection inside `prepareFinalLayouts` doesn't work as we'd want it,
-    // as we only pass the updated artifacts in here. Than means that conflict cache entries
-    // produced by subsequent builds will not be detected. Instead, we should consider the entire
-    // cache contents when detecting conflicts, and then subsequently update just those that are
-    // new/changed.
-    ImmutableMap<Path, Path> updated =
-        prepareFinalLayouts(getUninterruptibly(cachePathToArtifactKeyMapFuture), context);
+    // NOTE: The cache conflict detection inside `fetchArtifactsAndPrepareLayouts` doesn't work as
+    // we'd want it, as we only pass the updated artifacts in here. Than means that conflict cache
+    // entries produced by subsequent builds will not be detected. Instead, we should consider the
+    // entire cache contents when detecting conflicts, and then subsequently update just those that
+    // are new/changed.
+    ImmutableMap<Path, Path> updated;
+    try {
+      updated = getUninterruptibly(updatedFuture);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), BuildException.class);
+      throw e;
+    }
     builder.ifPresent(stats -> stats.setUpdatedFilesCount(updated.size()));
     ImmutableSet<Path> updatedFiles = updated.keySet();
     ImmutableSet<String> removedKeys = ImmutableSet.of();
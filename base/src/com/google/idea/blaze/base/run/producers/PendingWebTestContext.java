@@ -19,7 +19,6 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
-import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -116,7 +115,7 @@ public class PendingWebTestContext extends TestContext implements PendingRunConf
         .map(targetMap::get)
         .filter(Objects::nonNull)
         .filter(t -> t.getKind().isWebTest())
-        .map(TargetIdeInfo::toTargetInfo)
+        .map(targetMap::toTargetInfo)
         .sorted(Comparator.comparing(t -> t.label))
         .collect(ImmutableList.toImmutableList());
   }
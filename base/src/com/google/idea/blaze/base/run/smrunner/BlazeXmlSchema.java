@@ -23,43 +23,254 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.annotation.XmlAnyElement;
-import javax.xml.bind.annotation.XmlAttribute;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlMixed;
-import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /** Used to parse the test.xml generated by the blaze/bazel testing framework. */
 public class BlazeXmlSchema {
 
-  private static final JAXBContext CONTEXT;
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
 
-  static {
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+  /**
+   * Parses a test XML file. The file is read as a stream of events, building only the {@link
+   * TestSuite} tree, and unknown elements are skipped.
+   */
+  public static TestSuite parse(InputStream input) {
     try {
-      CONTEXT = JAXBContext.newInstance(TestSuite.class, TestSuites.class);
-    } catch (JAXBException e) {
-      throw new RuntimeException(e);
+      XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+      try {
+        reader.nextTag();
+        switch (reader.getLocalName()) {
+          case "testsuites":
+            return readTestSuites(reader).convertToTestSuite();
+          case "testsuite":
+            return readTestSuite(reader);
+          default:
+            throw new XMLStreamException(
+                "Unexpected root element " + reader.getLocalName(), reader.getLocation());
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new RuntimeException("Failed to parse test XML", e);
     }
   }
 
-  public static TestSuite parse(InputStream input) {
+  private static TestSuites readTestSuites(XMLStreamReader reader) throws XMLStreamException {
+    TestSuites suites = new TestSuites();
+    while (nextChildElement(reader)) {
+      if (reader.getLocalName().equals("testsuite")) {
+        suites.testSuites.add(readTestSuite(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+    return suites;
+  }
+
+  private static TestSuite readTestSuite(XMLStreamReader reader) throws XMLStreamException {
+    TestSuite suite = new TestSuite();
+    suite.name = reader.getAttributeValue(null, "name");
+    suite.classname = reader.getAttributeValue(null, "classname");
+    suite.tests = intAttribute(reader, "tests");
+    suite.failures = intAttribute(reader, "failures");
+    suite.errors = intAttribute(reader, "errors");
+    suite.skipped = intAttribute(reader, "skipped");
+    suite.disabled = intAttribute(reader, "disabled");
+    suite.time = doubleAttribute(reader, "time");
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          suite.sysOut = readText(reader);
+          break;
+        case "system-err":
+          suite.sysErr = readText(reader);
+          break;
+        case "error":
+          suite.error = readErrorOrFailureOrSkipped(reader);
+          break;
+        case "failure":
+          suite.failure = readErrorOrFailureOrSkipped(reader);
+          break;
+        case "testsuite":
+          suite.testSuites.add(readTestSuite(reader));
+          break;
+        case "testdecorator":
+          suite.testDecorators.add(readTestSuite(reader));
+          break;
+        case "testcase":
+          suite.testCases.add(readTestCase(reader));
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return suite;
+  }
+
+  private static TestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+    TestCase test = new TestCase();
+    test.name = reader.getAttributeValue(null, "name");
+    test.classname = reader.getAttributeValue(null, "classname");
+    test.status = reader.getAttributeValue(null, "status");
+    test.result = reader.getAttributeValue(null, "result");
+    test.time = reader.getAttributeValue(null, "time");
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          test.sysOut = readText(reader);
+          break;
+        case "system-err":
+          test.sysErr = readText(reader);
+          break;
+        case "error":
+          test.errors.add(readErrorOrFailureOrSkipped(reader));
+          break;
+        case "failure":
+          test.failures.add(readErrorOrFailureOrSkipped(reader));
+          break;
+        case "skipped":
+          test.skipped = readErrorOrFailureOrSkipped(reader);
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return test;
+  }
+
+  private static ErrorOrFailureOrSkipped readErrorOrFailureOrSkipped(XMLStreamReader reader)
+      throws XMLStreamException {
+    ErrorOrFailureOrSkipped err = new ErrorOrFailureOrSkipped();
+    err.message = reader.getAttributeValue(null, "message");
+    err.type = reader.getAttributeValue(null, "type");
+    while (true) {
+      switch (reader.next()) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          if (err.content == null) {
+            err.content = new ArrayList<>();
+          }
+          err.content.add(reader.getText());
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          switch (reader.getLocalName()) {
+            case "expected":
+              err.expected = readValues(reader);
+              break;
+            case "actual":
+              err.actual = readValues(reader);
+              break;
+            default:
+              skipElement(reader);
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          return err;
+        default: // ignore comments and processing instructions
+      }
+    }
+  }
+
+  private static Values readValues(XMLStreamReader reader) throws XMLStreamException {
+    Values values = new Values();
+    while (nextChildElement(reader)) {
+      if (reader.getLocalName().equals("value")) {
+        values.values.add(readText(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Moves to the start of the next child element of the current element, skipping any text.
+   * Returns false if the end of the current element is reached first.
+   */
+  private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+    while (true) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          return true;
+        case XMLStreamConstants.END_ELEMENT:
+          return false;
+        default: // continue
+      }
+    }
+  }
+
+  /** Returns the text content of the current element, ignoring any nested elements. */
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    while (true) {
+      switch (reader.next()) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getText());
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          skipElement(reader);
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          return text.toString();
+        default: // continue
+      }
+    }
+  }
+
+  /** Skips the current element and all of its children. */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static int intAttribute(XMLStreamReader reader, String name) {
+    String value = reader.getAttributeValue(null, name);
+    if (value == null) {
+      return 0;
+    }
     try {
-      Object parsed = CONTEXT.createUnmarshaller().unmarshal(input);
-      return parsed instanceof TestSuites
-          ? ((TestSuites) parsed).convertToTestSuite()
-          : (TestSuite) parsed;
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
 
-    } catch (JAXBException e) {
-      throw new RuntimeException("Failed to parse test XML", e);
+  private static double doubleAttribute(XMLStreamReader reader, String name) {
+    String value = reader.getAttributeValue(null, name);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
     }
   }
 
   // optional wrapping XML element. Some test runners don't include it.
-  @XmlRootElement(name = "testsuites")
   static class TestSuites {
-    @XmlElement(name = "testsuite")
     List<TestSuite> testSuites = Lists.newArrayList();
 
     TestSuite convertToTestSuite() {
@@ -70,36 +281,22 @@ public class BlazeXmlSchema {
   }
 
   /** XML output by blaze test runners. */
-  @XmlRootElement(name = "testsuite")
   public static class TestSuite {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public int tests;
-    @XmlAttribute public int failures;
-    @XmlAttribute public int errors;
-    @XmlAttribute public int skipped;
-    @XmlAttribute public int disabled;
-    @XmlAttribute public double time;
-
-    @XmlElement(name = "system-out")
-    public String sysOut;
+    public String name;
+    public String classname;
+    public int tests;
+    public int failures;
+    public int errors;
+    public int skipped;
+    public int disabled;
+    public double time;
 
-    @XmlElement(name = "system-err")
+    public String sysOut;
     public String sysErr;
-
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped error;
-
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped failure;
-
-    @XmlElement(name = "testsuite")
     public List<TestSuite> testSuites = Lists.newArrayList();
-
-    @XmlElement(name = "testdecorator")
     List<TestSuite> testDecorators = Lists.newArrayList();
-
-    @XmlElement(name = "testcase")
     public List<TestCase> testCases = Lists.newArrayList();
 
     /** Used to merge test suites from a single target, split across multiple shards */
@@ -139,25 +336,16 @@ public class BlazeXmlSchema {
 
   /** Individual test case XML output by blaze test runners. */
   public static class TestCase {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public String status;
-    @XmlAttribute public String result;
-    @XmlAttribute public String time;
+    public String name;
+    public String classname;
+    public String status;
+    public String result;
+    public String time;
 
-    @XmlElement(name = "system-out")
     String sysOut;
-
-    @XmlElement(name = "system-err")
     String sysErr;
-
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
     public List<ErrorOrFailureOrSkipped> errors = Lists.newArrayList();
-
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
     public List<ErrorOrFailureOrSkipped> failures = Lists.newArrayList();
-
-    @XmlElement(name = "skipped", type = ErrorOrFailureOrSkipped.class)
     public ErrorOrFailureOrSkipped skipped;
   }
 
@@ -167,31 +355,22 @@ public class BlazeXmlSchema {
       return null;
     }
     return err.content.stream()
-        .filter(Objects::nonNull)
-        .map(Object::toString)
         .map(String::trim)
         .filter(s -> !s.isEmpty())
         .collect(joining("\n"));
   }
 
   static class ErrorOrFailureOrSkipped {
-    // Can't use @XmlValue with @XmlElement
-    @XmlMixed
-    @XmlAnyElement(lax = true)
-    private List<Object> content;
-
-    @XmlAttribute String message;
-    @XmlAttribute String type;
+    // The text of the element, excluding the expected and actual values.
+    private List<String> content;
 
-    @XmlElement(name = "expected", type = Values.class)
+    String message;
+    String type;
     Values expected;
-
-    @XmlElement(name = "actual", type = Values.class)
     Values actual;
   }
 
   static class Values {
-    @XmlElement(name = "value", type = String.class)
     List<String> values = new ArrayList<>();
   }
 }
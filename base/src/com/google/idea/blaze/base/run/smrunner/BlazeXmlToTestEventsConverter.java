@@ -18,8 +18,9 @@ package com.google.idea.blaze.base.run.smrunner;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Kind;
@@ -53,12 +54,22 @@ import com.intellij.execution.testframework.sm.runner.events.TestSuiteStartedEve
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import jetbrains.buildServer.messages.serviceMessages.TestSuiteStarted;
 
@@ -67,12 +78,27 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
   private static final ErrorOrFailureOrSkipped NO_ERROR = new ErrorOrFailureOrSkipped();
   private static final BoolExperiment removeZeroRunTimeCheck =
       new BoolExperiment("remove.zero.run.time.check", true);
+  private static final BoolExperiment streamTestResults =
+      new BoolExperiment("blaze.test.results.streaming", false);
+  private static final Logger logger = Logger.getInstance(BlazeXmlToTestEventsConverter.class);
+
+  /** The number of targets whose test XML is parsed ahead of the one being reported. */
+  private static final int PARSE_AHEAD_TARGETS = 4;
 
   {
     NO_ERROR.message = "No message"; // cannot be null
   }
 
   private final BlazeTestResultFinderStrategy testResultFinderStrategy;
+  /** Completed once the 'blaze test' process has terminated. */
+  private final SettableFuture<Void> processFinished = SettableFuture.create();
+  /** Targets whose results have already been reported while the tests were running. */
+  private final Set<Label> reportedTargets = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean reporterAttached = new AtomicBoolean();
+
+  @GuardedBy("this")
+  @Nullable
+  private Future<BlazeTestResults> streamedResults;
 
   public BlazeXmlToTestEventsConverter(
       String testFrameworkName,
@@ -82,37 +108,121 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     this.testResultFinderStrategy = testResultFinderStrategy;
   }
 
+  @Override
+  public void onStartTesting() {
+    super.onStartTesting();
+    if (!streamTestResults.getValue() || !testResultFinderStrategy.supportsStreaming()) {
+      return;
+    }
+    synchronized (this) {
+      if (streamedResults != null || processFinished.isDone()) {
+        return;
+      }
+      streamedResults =
+          AppExecutorUtil.getAppExecutorService()
+              .submit(
+                  () ->
+                      testResultFinderStrategy.streamTestResults(
+                          this::reportTargetResults, processFinished));
+    }
+  }
+
   @Override
   public void flushBufferOnProcessTermination(int exitCode) {
     super.flushBufferOnProcessTermination(exitCode);
 
     try {
-      BlazeTestResults testResults = testResultFinderStrategy.findTestResults();
-      if (testResults == BlazeTestResults.NO_RESULTS) {
+      BlazeTestResults testResults = finishStreaming();
+      if (testResults == null || testResults == BlazeTestResults.NO_RESULTS) {
+        testResults = testResultFinderStrategy.findTestResults();
+      }
+      if (testResults == BlazeTestResults.NO_RESULTS && reportedTargets.isEmpty()) {
         reportError(exitCode);
       } else {
         processAllTestResults(testResults);
       }
     } catch (GetArtifactsException e) {
       Logger.getInstance(this.getClass()).error(e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     } finally {
       testResultFinderStrategy.deleteTemporaryOutputFiles();
     }
   }
 
+  @Override
+  public void dispose() {
+    // Stop streaming results if the process never terminates, e.g. the console is closed first.
+    processFinished.cancel(false);
+    super.dispose();
+  }
+
+  /**
+   * Waits for the results streamed while the tests were running to be reported, and returns all
+   * test results, or null if they weren't streamed.
+   */
+  @Nullable
+  private BlazeTestResults finishStreaming() throws InterruptedException {
+    Future<BlazeTestResults> streamed;
+    synchronized (this) {
+      processFinished.set(null);
+      streamed = streamedResults;
+    }
+    if (streamed == null) {
+      return null;
+    }
+    try {
+      return streamed.get();
+    } catch (InterruptedException e) {
+      streamed.cancel(true);
+      throw e;
+    } catch (ExecutionException | CancellationException e) {
+      logger.warn("Failed to stream test results", e);
+      return null;
+    }
+  }
+
+  /** Reports the results of a single target while the tests are still running. */
+  private void reportTargetResults(Label label, ImmutableList<BlazeTestResult> results) {
+    if (getProcessor() == null || !reportedTargets.add(label)) {
+      return;
+    }
+    attachReporter();
+    processParsedTestResults(parseTestXml(label, results));
+  }
+
+  private void attachReporter() {
+    if (reporterAttached.compareAndSet(false, true)) {
+      getProcessor().onTestsReporterAttached();
+    }
+  }
+
+  /** Reports all targets which weren't already reported while the tests were running. */
   private void processAllTestResults(BlazeTestResults testResults) {
     onStartTesting();
-    getProcessor().onTestsReporterAttached();
-    List<ListenableFuture<ParsedTargetResults>> futures = new ArrayList<>();
-    for (Label label : testResults.perTargetResults.keySet()) {
-      futures.add(
-          FetchExecutor.EXECUTOR.submit(
-              () -> parseTestXml(label, testResults.perTargetResults.get(label))));
-    }
-    List<ParsedTargetResults> parsedResults =
-        FuturesUtil.getIgnoringErrors(Futures.allAsList(futures));
-    if (parsedResults != null) {
-      parsedResults.forEach(this::processParsedTestResults);
+    attachReporter();
+    Iterator<Label> labels =
+        testResults.perTargetResults.keySet().stream()
+            .filter(label -> !reportedTargets.contains(label))
+            .iterator();
+    // Parse a few targets ahead of the one being reported, keeping the target order so the test
+    // tree is stable between runs. Only those targets' test trees are held in memory at once.
+    Deque<ListenableFuture<ParsedTargetResults>> pending = new ArrayDeque<>();
+    while (labels.hasNext() || !pending.isEmpty()) {
+      while (labels.hasNext() && pending.size() < PARSE_AHEAD_TARGETS) {
+        Label label = labels.next();
+        pending.add(
+            FetchExecutor.EXECUTOR.submit(
+                () -> parseTestXml(label, testResults.perTargetResults.get(label))));
+      }
+      ParsedTargetResults parsedResults = FuturesUtil.getIgnoringErrors(pending.remove());
+      if (Thread.currentThread().isInterrupted()) {
+        pending.forEach(f -> f.cancel(true));
+        return;
+      }
+      if (parsedResults != null) {
+        processParsedTestResults(parsedResults);
+      }
     }
   }
 
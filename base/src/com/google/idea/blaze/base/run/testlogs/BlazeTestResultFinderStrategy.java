@@ -15,7 +15,11 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader.TestResultsListener;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /** A strategy for locating results from 'blaze test' invocation (e.g. output XML files). */
 public interface BlazeTestResultFinderStrategy {
@@ -27,6 +31,32 @@ public interface BlazeTestResultFinderStrategy {
    */
   BlazeTestResults findTestResults() throws GetArtifactsException;
 
+  /** Whether {@link #streamTestResults} can be used while the 'blaze test' process is running. */
+  default boolean supportsStreaming() {
+    return false;
+  }
+
+  /**
+   * Reads the test results while the 'blaze test' process is running, passing the results of each
+   * target to {@code listener} as soon as they are known. Blocks until {@code testsFinished} is
+   * done, then returns all results as {@link #findTestResults} would.
+   *
+   * <p>Only called if {@link #supportsStreaming} returns true. By default, no results are streamed:
+   * this waits for the tests to finish and returns the results of {@link #findTestResults}.
+   */
+  default BlazeTestResults streamTestResults(
+      TestResultsListener listener, Future<?> testsFinished) throws GetArtifactsException {
+    try {
+      testsFinished.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return BlazeTestResults.NO_RESULTS;
+    } catch (ExecutionException | CancellationException e) {
+      // The tests are finished either way, so look for whatever results they left behind.
+    }
+    return findTestResults();
+  }
+
   /** Remove any temporary files used by this result finder. */
   void deleteTemporaryOutputFiles();
 }
@@ -15,9 +15,10 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader.TestResultsListener;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
-import java.util.Optional;
+import java.util.concurrent.Future;
 
 /**
  * A strategy for locating results from a single 'blaze test' invocation (e.g. output XML files).
@@ -37,6 +38,16 @@ public final class LocalBuildEventProtocolTestFinderStrategy
     return buildResultHelper.getTestResults();
   }
 
+  @Override
+  public boolean supportsStreaming() {
+    return true;
+  }
+
+  @Override
+  public BlazeTestResults streamTestResults(TestResultsListener listener, Future<?> testsFinished) {
+    return buildResultHelper.streamTestResults(listener, testsFinished);
+  }
+
   @Override
   public void deleteTemporaryOutputFiles() {
     buildResultHelper.deleteTemporaryOutputFiles();
@@ -17,11 +17,11 @@ package com.google.idea.blaze.base.run.testmap;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
+import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
@@ -29,6 +29,7 @@ import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap.ReverseDependencies;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.util.Collection;
@@ -56,6 +57,11 @@ public class FilteredTargetMap {
     this.filter = filter;
   }
 
+  /** Returns the {@link TargetInfo} of a target, see {@link TargetMap#toTargetInfo}. */
+  public TargetInfo toTargetInfo(TargetIdeInfo target) {
+    return targetMap.toTargetInfo(target);
+  }
+
   public ImmutableSet<TargetIdeInfo> targetsForSourceFile(File sourceFile) {
     return targetsForSourceFiles(ImmutableList.of(sourceFile));
   }
@@ -70,7 +76,7 @@ public class FilteredTargetMap {
   }
 
   private ImmutableSet<TargetIdeInfo> targetsForSourceFilesImpl(
-      ImmutableMultimap<TargetKey, TargetKey> rdepsMap, Collection<File> sourceFiles) {
+      ReverseDependencies rdepsMap, Collection<File> sourceFiles) {
     ImmutableSet.Builder<TargetIdeInfo> result = ImmutableSet.builder();
     Set<TargetKey> roots =
         sourceFiles.stream()
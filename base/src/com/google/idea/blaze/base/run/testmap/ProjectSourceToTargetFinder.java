@@ -22,7 +22,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
-import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Kind;
@@ -87,7 +86,7 @@ public class ProjectSourceToTargetFinder implements SourceToTargetFinder {
     }
     ImmutableSet<TargetInfo> targets =
         targetMap.targetsForSourceFiles(sourceFiles).stream()
-            .map(TargetIdeInfo::toTargetInfo)
+            .map(targetMap::toTargetInfo)
             .filter(target -> !ruleType.isPresent() || target.getRuleType().equals(ruleType.get()))
             .collect(toImmutableSet());
     return Futures.immediateFuture(targets);
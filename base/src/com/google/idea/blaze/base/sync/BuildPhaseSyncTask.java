@@ -261,6 +261,8 @@ public final class BuildPhaseSyncTask {
         getBlazeBuildResult(context, viewSet, shardedTargets, syncBuildInvoker, parallel);
     resultBuilder.setBuildResult(blazeBuildResult);
     buildStats
+        // Includes the actual shard build times, now that the shards have been built.
+        .setShardStats(shardedTargets.shardStats())
         .setBuildResult(blazeBuildResult.buildResult)
         .setBuildIds(blazeBuildResult.getBuildIds())
         .setBuildBinaryType(syncBuildInvoker.getType());
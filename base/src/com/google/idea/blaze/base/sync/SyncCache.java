@@ -15,28 +15,96 @@
  */
 package com.google.idea.blaze.base.sync;
 
+import static com.intellij.openapi.progress.util.ProgressIndicatorUtils.awaitWithCheckCanceled;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
-/** Computes a cache on the project data. */
+/**
+ * Computes a cache on the project data.
+ *
+ * <p>Each value is computed at most once per sync, by the first caller to ask for it. Other callers
+ * asking for the same key wait for that computation, while values for other keys can be computed
+ * concurrently.
+ */
 public class SyncCache {
+  private static final Logger logger = Logger.getInstance(SyncCache.class);
+
+  private static final BoolExperiment warmUpAfterSync =
+      new BoolExperiment("blaze.sync.cache.warmup", true);
+
   /** Computes a value based on the sync project data. */
   public interface SyncCacheComputable<T> {
     @Nullable
     T compute(Project project, BlazeProjectData projectData);
   }
 
+  /**
+   * Fills in cache entries on a background thread after each successful sync, so that they're
+   * ready before they're first needed, e.g. from a read action in the editor.
+   */
+  public interface Warmer {
+    ExtensionPointName<Warmer> EP_NAME =
+        ExtensionPointName.create("com.google.idea.blaze.SyncCacheWarmer");
+
+    /** Populates the cache, typically by calling the method which reads the value from it. */
+    void warmUp(Project project);
+  }
+
+  /** The number of cache hits for a key, and the time taken to compute its value. */
+  public static final class KeyStats {
+    private final int hits;
+    private final Duration computeTime;
+
+    private KeyStats(int hits, Duration computeTime) {
+      this.hits = hits;
+      this.computeTime = computeTime;
+    }
+
+    public int hits() {
+      return hits;
+    }
+
+    public Duration computeTime() {
+      return computeTime;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d hits, computed in %d ms", hits, computeTime.toMillis());
+    }
+  }
+
+  /** A cache entry, which is complete once the value has been computed. */
+  private static final class Entry {
+    // Values may be null, so they're wrapped in an Optional.
+    final CompletableFuture<Optional<Object>> value = new CompletableFuture<>();
+    final AtomicInteger hits = new AtomicInteger();
+    volatile Duration computeTime = Duration.ZERO;
+  }
+
   private final Project project;
-  private final Map<Object, Object> cache = Maps.newHashMap();
+  private final Map<Object, Entry> cache = new ConcurrentHashMap<>();
 
   public SyncCache(Project project) {
     this.project = project;
@@ -49,25 +117,95 @@ public class SyncCache {
   /** Computes a value derived from the sync project data and caches it until the next sync. */
   @Nullable
   @SuppressWarnings("unchecked")
-  public synchronized <T> T get(Object key, SyncCacheComputable<T> computable) {
-    if (cache.containsKey(key)) {
-      return (T) cache.get(key);
+  public <T> T get(Object key, SyncCacheComputable<T> computable) {
+    while (true) {
+      Entry entry = cache.get(key);
+      if (entry != null) {
+        Optional<Object> value = await(entry);
+        if (value != null) {
+          entry.hits.incrementAndGet();
+          return (T) value.orElse(null);
+        }
+        // The computation failed or was cancelled, so compute the value again.
+        cache.remove(key, entry);
+        continue;
+      }
+      Entry newEntry = new Entry();
+      if (cache.putIfAbsent(key, newEntry) != null) {
+        continue;
+      }
+      return (T) compute(key, newEntry, computable);
     }
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
-      return null;
+  }
+
+  /** Waits for an entry's value to be computed, returning null if the computation failed. */
+  @Nullable
+  private static Optional<Object> await(Entry entry) {
+    if (!entry.value.isDone()) {
+      awaitWithCheckCanceled(entry.value.handle((value, e) -> null));
     }
-    T value = computable.compute(project, blazeProjectData);
-    cache.put(key, value);
+    return entry.value.isCompletedExceptionally() ? null : entry.value.join();
+  }
+
+  @Nullable
+  private <T> T compute(Object key, Entry entry, SyncCacheComputable<T> computable) {
+    T value;
+    try {
+      BlazeProjectData blazeProjectData =
+          BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+      if (blazeProjectData == null) {
+        // Don't cache anything until there's project data to compute the value from.
+        cache.remove(key, entry);
+        entry.value.complete(Optional.empty());
+        return null;
+      }
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      value = computable.compute(project, blazeProjectData);
+      entry.computeTime = stopwatch.elapsed();
+    } catch (RuntimeException | Error e) {
+      cache.remove(key, entry);
+      entry.value.completeExceptionally(e);
+      throw e;
+    }
+    entry.value.complete(Optional.ofNullable(value));
     return value;
   }
 
+  /** Returns the number of hits and the compute time of each value currently in the cache. */
+  public ImmutableMap<Object, KeyStats> getStats() {
+    ImmutableMap.Builder<Object, KeyStats> stats = ImmutableMap.builder();
+    cache.forEach(
+        (key, entry) -> {
+          if (entry.value.isDone() && !entry.value.isCompletedExceptionally()) {
+            stats.put(key, new KeyStats(entry.hits.get(), entry.computeTime));
+          }
+        });
+    return stats.buildOrThrow();
+  }
+
   @VisibleForTesting
-  public synchronized void clear() {
+  public void clear() {
+    if (logger.isDebugEnabled()) {
+      getStats().forEach((key, stats) -> logger.debug(String.format("%s: %s", key, stats)));
+    }
     cache.clear();
   }
 
+  private void warmUp() {
+    for (Warmer warmer : Warmer.EP_NAME.getExtensions()) {
+      if (project.isDisposed()) {
+        return;
+      }
+      try {
+        warmer.warmUp(project);
+      } catch (ProcessCanceledException e) {
+        // The value will be computed when it's first needed instead.
+      } catch (RuntimeException e) {
+        logger.warn("Failed to warm up sync cache with " + warmer.getClass().getName(), e);
+      }
+    }
+  }
+
   static class ClearSyncCache implements SyncListener {
     @Override
     public void onSyncComplete(
@@ -81,6 +219,9 @@ public class SyncCache {
         SyncResult syncResult) {
       SyncCache syncCache = getInstance(project);
       syncCache.clear();
+      if (syncResult.successful() && warmUpAfterSync.getValue()) {
+        AppExecutorUtil.getAppExecutorService().execute(syncCache::warmUp);
+      }
     }
   }
 }
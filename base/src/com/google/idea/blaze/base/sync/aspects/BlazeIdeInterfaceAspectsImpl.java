@@ -19,12 +19,12 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
@@ -35,6 +35,7 @@ import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.bazel.BuildSystem.BuildInvoker;
 import com.google.idea.blaze.base.buildview.BazelExecService;
+import com.google.idea.blaze.base.buildview.BazelExecService.UnparsedBuildOutputs;
 import com.google.idea.blaze.base.command.BlazeCommand;
 import com.google.idea.blaze.base.command.BlazeCommandName;
 import com.google.idea.blaze.base.command.BlazeFlags;
@@ -87,6 +88,7 @@ import com.google.idea.blaze.base.sync.projectview.LanguageSupport;
 import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.sharding.ShardedBuildProgressTracker;
 import com.google.idea.blaze.base.sync.sharding.ShardedTargetList;
+import com.google.idea.blaze.base.sync.sharding.ShardedTargetList.ShardOutputs;
 import com.google.idea.blaze.base.toolwindow.Task;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.common.artifact.ArtifactState;
@@ -347,10 +349,12 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               BlazeIdeInterfaceState.Builder state = BlazeIdeInterfaceState.builder();
               state.ideInfoFileState = ImmutableMap.copyOf(nextFileState);
 
-              Map<TargetKey, TargetIdeInfo> targetMap = Maps.newHashMap();
+              TargetMapUpdate targetMap;
               if (prevState != null && oldTargetMap != null) {
-                targetMap.putAll(oldTargetMap.map());
+                targetMap = new TargetMapUpdate(oldTargetMap);
                 state.ideInfoToTargetKey.putAll(prevState.ideInfoFileToTargetKey);
+              } else {
+                targetMap = new TargetMapUpdate(null);
               }
 
               // Update removed unless we're merging with the old state
@@ -449,13 +453,17 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                 }
               }
 
-              // update sync time for unchanged targets
-              for (String artifactKey : fileState.getNewState().keySet()) {
-                TargetKey targetKey = state.ideInfoToTargetKey.get(artifactKey);
-                TargetIdeInfo target = targetKey != null ? targetMap.get(targetKey) : null;
-                if (target != null) {
-                  targetMap.put(targetKey, target.updateSyncTime(syncTime));
+              // update sync time for unchanged targets. Unless merging, every target in the new
+              // map was built by this sync.
+              if (mergeWithOldState) {
+                for (String artifactKey : fileState.getNewState().keySet()) {
+                  TargetKey targetKey = state.ideInfoToTargetKey.get(artifactKey);
+                  if (targetKey != null) {
+                    targetMap.markSynced(targetKey);
+                  }
                 }
+              } else {
+                targetMap.markAllSynced();
               }
 
               ignoredLanguages.retainAll(
@@ -464,8 +472,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               warnIgnoredLanguages(project, context, ignoredLanguages);
 
               return Result.of(
-                  new TargetMapAndInterfaceState(
-                      new TargetMap(ImmutableMap.copyOf(targetMap)), state.build()));
+                  new TargetMapAndInterfaceState(targetMap.build(syncTime), state.build()));
             });
 
     if (result.error != null) {
@@ -632,7 +639,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     List<String> additionalBlazeFlags =
         BlazeFlags.blazeFlags(
             project, projectViewSet, BlazeCommandName.BUILD, context, blazeInvocationContext);
-    Function<List<? extends TargetExpression>, BuildResult> invocation =
+    Function<List<? extends TargetExpression>, ShardOutputs> invocation =
         targets ->
             Scope.push(
                 context,
@@ -648,9 +655,11 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
 
                   setupToolWindow(project, childContext, workspaceRoot, task);
                   progressTracker.onBuildStarted(context);
+                  Stopwatch shardTimer = Stopwatch.createStarted();
 
+                  UnparsedBuildOutputs outputs;
                   try {
-                    BlazeBuildOutputs result =
+                    outputs =
                         runBuildForTargets(
                             project,
                             childContext,
@@ -662,26 +671,19 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                             outputGroups,
                             additionalBlazeFlags,
                             invokeParallel);
-                    if (result.buildResult.outOfMemory()) {
-                      logger.warn(
-                          String.format(
-                              "Build shard failed with OOM error build-id=%s",
-                              result.getBuildIds().stream().findFirst().orElse(null)));
-                    }
-                    printShardFinishedSummary(context, task.getName(), result, invoker);
-                    synchronized (combinedResult) {
-                      combinedResult.set(
-                          combinedResult.isNull()
-                              ? result
-                              : combinedResult.get().updateOutputs(result));
-                    }
-                    return result.buildResult;
                   } catch (BuildException e) {
                     context.handleException("Failed to build targets", e);
-                    return BuildResult.FATAL_ERROR;
+                    return ShardOutputs.processed(BuildResult.FATAL_ERROR);
                   } finally {
-                    progressTracker.onBuildCompleted(context);
+                    progressTracker.onBuildCompleted(
+                        context, task.getName(), shardTimer.elapsed());
                   }
+                  return ShardOutputs.of(
+                      outputs.getBuildResult(),
+                      () ->
+                          processShardOutputs(
+                              context, task.getName(), outputs, invoker, combinedResult),
+                      outputs::close);
                 });
     BuildResult buildResult =
         shardedTargets.runShardedCommand(
@@ -694,6 +696,33 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     return combinedResult.get();
   }
 
+  /** Parses the outputs of a built shard, and adds them to the combined outputs. */
+  private BuildResult processShardOutputs(
+      BlazeContext context,
+      String taskName,
+      UnparsedBuildOutputs outputs,
+      BuildInvoker invoker,
+      Ref<BlazeBuildOutputs> combinedResult) {
+    try {
+      BlazeBuildOutputs result = outputs.parse();
+      if (result.buildResult.outOfMemory()) {
+        logger.warn(
+            String.format(
+                "Build shard failed with OOM error build-id=%s",
+                result.getBuildIds().stream().findFirst().orElse(null)));
+      }
+      printShardFinishedSummary(context, taskName, result, invoker);
+      synchronized (combinedResult) {
+        combinedResult.set(
+            combinedResult.isNull() ? result : combinedResult.get().updateOutputs(result));
+      }
+      return result.buildResult;
+    } catch (BuildException e) {
+      context.handleException("Failed to build targets", e);
+      return BuildResult.FATAL_ERROR;
+    }
+  }
+
   /* Prints summary only for failed shards */
   private void printShardFinishedSummary(
       BlazeContext context, String taskName, BlazeBuildOutputs result, BuildInvoker invoker) {
@@ -736,8 +765,8 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
             .build());
   }
 
-  /** Runs a blaze build for the given output groups. */
-  private static BlazeBuildOutputs runBuildForTargets(
+  /** Runs a blaze build for the given output groups, leaving its outputs to be parsed. */
+  private static UnparsedBuildOutputs runBuildForTargets(
       Project project,
       BlazeContext context,
       BuildInvoker invoker,
@@ -774,7 +803,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
       aspectStrategy.addAspectAndOutputGroups(
           builder, outputGroups, activeLanguages, onlyDirectDeps);
 
-      return BazelExecService.instance(project).build(context, builder);
+      return BazelExecService.instance(project).buildWithoutParsingOutputs(context, builder);
     } finally {
       if (!Registry.is("bazel.sync.keep.target.files")) {
           try {
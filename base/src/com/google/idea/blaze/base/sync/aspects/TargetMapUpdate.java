@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A set of changes to a {@link TargetMap}, recorded on top of the previous map rather than a copy
+ * of it.
+ *
+ * <p>Targets which are built without changing keep their existing {@link TargetIdeInfo}; their
+ * sync time is tracked by the {@link TargetMap} instead. If no target was added, replaced or
+ * removed, {@link #build} reuses the previous map's targets as they are. Otherwise the new map
+ * records which targets changed, so that data derived from the previous map can be updated.
+ */
+final class TargetMapUpdate {
+
+  private final TargetMap base;
+  private final Map<TargetKey, TargetIdeInfo> updated = new HashMap<>();
+
+  /** Keys of {@link #base} which have been removed, and not since re-added. */
+  private final Set<TargetKey> removed = new HashSet<>();
+
+  /** Keys of the targets built by a partial sync. Not tracked once {@link #allSynced} is set. */
+  private final Set<TargetKey> synced = new HashSet<>();
+
+  /** Whether every target in the updated map has been built by this sync. */
+  private boolean allSynced;
+
+  TargetMapUpdate(@Nullable TargetMap base) {
+    this.base = base != null ? base : new TargetMap(ImmutableMap.of());
+  }
+
+  @Nullable
+  TargetIdeInfo get(TargetKey key) {
+    if (removed.contains(key)) {
+      return null;
+    }
+    TargetIdeInfo target = updated.get(key);
+    return target != null ? target : base.get(key);
+  }
+
+  void put(TargetKey key, TargetIdeInfo target) {
+    removed.remove(key);
+    updated.put(key, target);
+  }
+
+  /**
+   * Adds the target if there is not already one with the given key. Returns the existing target,
+   * or null if there was none.
+   */
+  @Nullable
+  TargetIdeInfo putIfAbsent(TargetKey key, TargetIdeInfo target) {
+    TargetIdeInfo existing = get(key);
+    if (existing == null) {
+      put(key, target);
+    }
+    return existing;
+  }
+
+  void remove(TargetKey key) {
+    updated.remove(key);
+    if (base.contains(key)) {
+      removed.add(key);
+    }
+  }
+
+  /**
+   * Marks the target as built by this sync, so its sync time is updated when the map is built.
+   *
+   * <p>Only needed for partial syncs: see {@link #markAllSynced}.
+   */
+  void markSynced(TargetKey key) {
+    if (!allSynced) {
+      synced.add(key);
+    }
+  }
+
+  /** Marks every target of the updated map as built by this sync. */
+  void markAllSynced() {
+    allSynced = true;
+    synced.clear();
+  }
+
+  int size() {
+    int added = 0;
+    for (TargetKey key : updated.keySet()) {
+      if (!base.contains(key)) {
+        added++;
+      }
+    }
+    return base.size() - removed.size() + added;
+  }
+
+  TargetMap build(Instant syncTime) {
+    // Sync times are stored with millisecond precision, as in the target protos.
+    syncTime = Instant.ofEpochMilli(syncTime.toEpochMilli());
+    ImmutableMap<TargetKey, TargetIdeInfo> targets =
+        updated.isEmpty() && removed.isEmpty() ? base.map() : buildTargets();
+    Instant mapSyncTime = allSynced ? syncTime : base.syncTime();
+    ImmutableMap<TargetKey, Instant> partialSyncTimes =
+        allSynced ? ImmutableMap.of() : buildPartialSyncTimes(syncTime);
+    if (targets == base.map()
+        && Objects.equals(mapSyncTime, base.syncTime())
+        && partialSyncTimes == base.partialSyncTimes()) {
+      return base;
+    }
+    return new TargetMap(targets, mapSyncTime, partialSyncTimes, buildChanges());
+  }
+
+  /** Records which targets changed, so that data derived from the map can be updated. */
+  private TargetMap.Changes buildChanges() {
+    ImmutableMap.Builder<TargetKey, ImmutableList<TargetKey>> previousDependencies =
+        ImmutableMap.builderWithExpectedSize(updated.size() + removed.size());
+    for (TargetKey key : updated.keySet()) {
+      previousDependencies.put(key, dependencyKeys(base.get(key)));
+    }
+    for (TargetKey key : removed) {
+      previousDependencies.put(key, dependencyKeys(base.get(key)));
+    }
+    return new TargetMap.Changes(base, previousDependencies.buildOrThrow());
+  }
+
+  private static ImmutableList<TargetKey> dependencyKeys(@Nullable TargetIdeInfo target) {
+    if (target == null) {
+      return ImmutableList.of();
+    }
+    return target.getDependencies().stream()
+        .map(Dependency::getTargetKey)
+        .collect(toImmutableList());
+  }
+
+  private ImmutableMap<TargetKey, TargetIdeInfo> buildTargets() {
+    ImmutableMap.Builder<TargetKey, TargetIdeInfo> builder =
+        ImmutableMap.builderWithExpectedSize(size());
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : base.map().entrySet()) {
+      TargetKey key = entry.getKey();
+      if (!removed.contains(key)) {
+        builder.put(key, updated.getOrDefault(key, entry.getValue()));
+      }
+    }
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : updated.entrySet()) {
+      if (!base.contains(entry.getKey())) {
+        builder.put(entry);
+      }
+    }
+    return builder.buildOrThrow();
+  }
+
+  /**
+   * Returns the sync times of unchanged targets built by partial syncs. Added and replaced targets
+   * don't need one, since their {@link TargetIdeInfo} was created by this sync.
+   */
+  private ImmutableMap<TargetKey, Instant> buildPartialSyncTimes(Instant syncTime) {
+    if (synced.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+      return base.partialSyncTimes();
+    }
+    Map<TargetKey, Instant> times = new HashMap<>(base.partialSyncTimes());
+    times.keySet().removeAll(removed);
+    times.keySet().removeAll(updated.keySet());
+    for (TargetKey key : synced) {
+      if (base.contains(key) && !removed.contains(key) && !updated.containsKey(key)) {
+        times.put(key, syncTime);
+      }
+    }
+    return ImmutableMap.copyOf(times);
+  }
+}
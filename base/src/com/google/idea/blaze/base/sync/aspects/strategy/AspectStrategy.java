@@ -30,9 +30,10 @@ import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.common.artifact.BlazeArtifact;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.google.protobuf.TextFormat;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -46,7 +47,16 @@ import javax.annotation.Nullable;
 public abstract class AspectStrategy {
 
   public static final Predicate<String> ASPECT_OUTPUT_FILE_PREDICATE =
-      str -> str.endsWith(".intellij-info.txt");
+      str -> str.endsWith(".intellij-info.txt") || str.endsWith(".intellij-info.json");
+
+  /**
+   * The define which asks the aspect to write target info as JSON rather than as a text format
+   * proto, which is much faster to parse.
+   */
+  @VisibleForTesting static final String JSON_OUTPUT_DEFINE = "_intellij_info_json";
+
+  private static final TextFormat.Parser TEXT_PARSER =
+      TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
 
   /** A Blaze output group created by the aspect. */
   public enum OutputGroup {
@@ -80,6 +90,9 @@ public abstract class AspectStrategy {
   private static final BoolExperiment directDepsTrimmingEnabled =
       new BoolExperiment("sync.allow.requesting.direct.deps", true);
 
+  private static final BoolExperiment jsonAspectOutput =
+      new BoolExperiment("sync.aspect.json.output", false);
+
   /** True if the aspect available to the plugin supports direct deps trimming. */
   private final boolean aspectSupportsDirectDepsTrimming;
 
@@ -112,6 +125,9 @@ public abstract class AspectStrategy {
     builder
         .addBlazeFlags(getAspectFlag().map(List::of).orElse(List.of()))
         .addBlazeFlags("--output_groups=" + Joiner.on(',').join(groups));
+    if (jsonAspectOutput.getValue()) {
+      builder.addBlazeFlags(String.format("--define=%s=true", JSON_OUTPUT_DEFINE));
+    }
   }
 
   /**
@@ -163,15 +179,32 @@ public abstract class AspectStrategy {
         .collect(ImmutableList.toImmutableList());
   }
 
+  /**
+   * Reads a target info file written by the aspect. The file may be either JSON or a text format
+   * proto, depending on whether the aspect was asked for JSON output and whether it supports it.
+   */
   public final IntellijIdeInfo.TargetIdeInfo readAspectFile(BlazeArtifact file) throws IOException {
-    try (InputStream inputStream = file.getInputStream()) {
+    try (BufferedInputStream inputStream = file.getInputStream()) {
       IntellijIdeInfo.TargetIdeInfo.Builder builder = IntellijIdeInfo.TargetIdeInfo.newBuilder();
-      TextFormat.Parser parser = TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
-      parser.merge(new InputStreamReader(inputStream, UTF_8), builder);
+      Reader reader = new InputStreamReader(inputStream, UTF_8);
+      if (isJson(inputStream)) {
+        JsonProtoParser.merge(reader, builder);
+      } else {
+        TEXT_PARSER.merge(reader, builder);
+      }
       return builder.build();
     }
   }
 
+  /** Peeks at the start of the stream to see if it contains JSON. */
+  private static boolean isJson(BufferedInputStream inputStream) throws IOException {
+    // A text format proto always starts with a field name (or is empty).
+    inputStream.mark(1);
+    int first = inputStream.read();
+    inputStream.reset();
+    return first == '{';
+  }
+
   @Nullable
   private String getOutputGroupForLanguage(
       OutputGroup group, LanguageClass language, boolean directDepsOnly) {
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses protos from the JSON written by the aspect with starlark's {@code json.encode}.
+ *
+ * <p>This is much cheaper than parsing the equivalent text format proto, since it uses a streaming
+ * JSON tokenizer rather than the regex based tokenizer used by {@link
+ * com.google.protobuf.TextFormat}.
+ *
+ * <p>The JSON is expected to have the same structure as a struct passed to {@code
+ * proto.encode_text}: object keys are proto field names, repeated fields are arrays, and enums are
+ * given by number or name. As when parsing the text format, unknown fields are ignored, as are
+ * nulls.
+ */
+final class JsonProtoParser {
+
+  private JsonProtoParser() {}
+
+  static void merge(Reader reader, Message.Builder builder) throws IOException {
+    JsonReader json = new JsonReader(reader);
+    mergeMessage(json, builder);
+  }
+
+  private static void mergeMessage(JsonReader json, Message.Builder builder) throws IOException {
+    Descriptor descriptor = builder.getDescriptorForType();
+    json.beginObject();
+    while (json.hasNext()) {
+      FieldDescriptor field = descriptor.findFieldByName(json.nextName());
+      if (field == null || json.peek() == JsonToken.NULL) {
+        json.skipValue();
+        continue;
+      }
+      if (field.isRepeated()) {
+        json.beginArray();
+        while (json.hasNext()) {
+          if (json.peek() == JsonToken.NULL) {
+            json.skipValue();
+            continue;
+          }
+          builder.addRepeatedField(field, readValue(json, builder, field));
+        }
+        json.endArray();
+      } else {
+        builder.setField(field, readValue(json, builder, field));
+      }
+    }
+    json.endObject();
+  }
+
+  private static Object readValue(JsonReader json, Message.Builder parent, FieldDescriptor field)
+      throws IOException {
+    switch (field.getJavaType()) {
+      case MESSAGE:
+        Message.Builder child = parent.newBuilderForField(field);
+        mergeMessage(json, child);
+        return child.build();
+      case STRING:
+        return json.nextString();
+      case BOOLEAN:
+        return json.nextBoolean();
+      case INT:
+        return json.nextInt();
+      case LONG:
+        return json.nextLong();
+      case FLOAT:
+        return (float) json.nextDouble();
+      case DOUBLE:
+        return json.nextDouble();
+      case BYTE_STRING:
+        return ByteString.copyFromUtf8(json.nextString());
+      case ENUM:
+        EnumValueDescriptor value;
+        String name;
+        if (json.peek() == JsonToken.NUMBER) {
+          int number = json.nextInt();
+          name = Integer.toString(number);
+          value = field.getEnumType().findValueByNumber(number);
+        } else {
+          name = json.nextString();
+          value = field.getEnumType().findValueByName(name);
+        }
+        if (value == null) {
+          throw new IOException(
+              String.format("Unknown value %s for enum field %s", name, field.getFullName()));
+        }
+        return value;
+    }
+    throw new IOException("Unsupported field type for " + field.getFullName());
+  }
+}
@@ -154,7 +154,10 @@ public class BlazeBuildTargetSharder {
 
         return new ShardedTargetsResult(
             shardSingleTargets(
-                expandedTargets.singleTargets, parallelStrategy, getTargetShardSize(viewSet)),
+                project,
+                expandedTargets.singleTargets,
+                parallelStrategy,
+                getTargetShardSize(viewSet)),
             expandedTargets.buildResult);
       default:
         throw new IllegalStateException("Unhandled sharding approach: " + approach);
@@ -232,9 +235,9 @@ public class BlazeBuildTargetSharder {
    */
   @VisibleForTesting
   static ShardedTargetList shardSingleTargets(
-      List<TargetExpression> targets, SyncStrategy syncStrategy, int shardSize) {
+      Project project, List<TargetExpression> targets, SyncStrategy syncStrategy, int shardSize) {
     return BuildBatchingService.batchTargets(
-        canonicalizeSingleTargets(targets), syncStrategy, shardSize);
+        project, canonicalizeSingleTargets(targets), syncStrategy, shardSize);
   }
 
   /**
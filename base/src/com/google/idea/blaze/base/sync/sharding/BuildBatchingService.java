@@ -20,6 +20,7 @@ import com.google.idea.blaze.base.bazel.BuildSystem.SyncStrategy;
 import com.google.idea.blaze.base.logging.utils.ShardStats.ShardingApproach;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.project.Project;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
@@ -60,9 +61,9 @@ public interface BuildBatchingService {
    * else falling back to returning a single batch.
    */
   static ShardedTargetList batchTargets(
-      Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
+      Project project, Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
     return Arrays.stream(EP_NAME.getExtensions())
-        .map(s -> s.getShardedTargetList(targets, syncStrategy, suggestedShardSize))
+        .map(s -> s.getShardedTargetList(project, targets, syncStrategy, suggestedShardSize))
         .filter(Objects::nonNull)
         .findFirst()
         .orElse(
@@ -80,7 +81,7 @@ public interface BuildBatchingService {
    */
   @Nullable
   default ShardedTargetList getShardedTargetList(
-      Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
+      Project project, Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
     ImmutableList<ImmutableList<Label>> targetBatches =
         calculateTargetBatches(targets, syncStrategy, suggestedShardSize);
     return targetBatches == null
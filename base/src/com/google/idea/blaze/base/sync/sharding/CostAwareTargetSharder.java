@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.bazel.BuildSystem.SyncStrategy;
+import com.google.idea.blaze.base.logging.utils.ShardStats.ShardingApproach;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.project.Project;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nullable;
+
+/**
+ * A target batcher which uses the build times recorded in previous syncs by {@link
+ * TargetBuildCostStore} to balance the predicted build time of each shard, rather than just the
+ * number of targets.
+ *
+ * <p>The number of shards and the maximum number of targets per shard are the same as for {@link
+ * LexicographicTargetSharder}. Targets are then assigned most expensive first, each to the shard
+ * with the lowest predicted cost so far.
+ *
+ * <p>If there is no build history for the project, no batching is done, and the next batching
+ * service is used instead.
+ */
+public class CostAwareTargetSharder implements BuildBatchingService {
+
+  @VisibleForTesting
+  static final BoolExperiment enabled = new BoolExperiment("blaze.cost.aware.sharder", false);
+
+  /** The targets in each shard, and the predicted cost of each shard. */
+  @VisibleForTesting
+  static class Packing {
+    final ImmutableList<ImmutableList<Label>> shards;
+    final ImmutableList<Duration> predictedDurations;
+
+    Packing(
+        ImmutableList<ImmutableList<Label>> shards, ImmutableList<Duration> predictedDurations) {
+      this.shards = shards;
+      this.predictedDurations = predictedDurations;
+    }
+  }
+
+  @Nullable
+  @Override
+  public ImmutableList<ImmutableList<Label>> calculateTargetBatches(
+      Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
+    // Batching needs the build history for the project, see getShardedTargetList.
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public ShardedTargetList getShardedTargetList(
+      Project project, Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
+    if (!enabled.getValue() || targets.isEmpty()) {
+      return null;
+    }
+    TargetBuildCosts costs = TargetBuildCostStore.getInstance(project).getCosts();
+    if (costs.isEmpty()) {
+      return null;
+    }
+    int shardSize =
+        Math.max(
+            1,
+            LexicographicTargetSharder.getShardSize(
+                targets.size(), syncStrategy, suggestedShardSize));
+    int shardCount = (targets.size() + shardSize - 1) / shardSize;
+    Packing packing = pack(targets, costs::estimateMillis, shardCount, shardSize);
+    return new ShardedTargetList(
+        packing.shards, getShardingApproach(), suggestedShardSize, packing.predictedDurations);
+  }
+
+  /**
+   * Splits targets into {@code shardCount} shards of at most {@code maxShardSize} targets, balancing
+   * the total cost of each shard.
+   */
+  @VisibleForTesting
+  static Packing pack(
+      Set<Label> targets, ToDoubleFunction<Label> costMillis, int shardCount, int maxShardSize) {
+    List<List<Label>> shards = new ArrayList<>(shardCount);
+    double[] loads = new double[shardCount];
+    PriorityQueue<Integer> byLoad =
+        new PriorityQueue<>(
+            Comparator.<Integer>comparingDouble(i -> loads[i]).thenComparingInt(i -> i));
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<>());
+      byLoad.add(i);
+    }
+
+    ImmutableList<Label> byCost =
+        ImmutableList.sortedCopyOf(
+            Comparator.<Label>comparingDouble(costMillis).reversed().thenComparing(Label::toString),
+            targets);
+    for (Label target : byCost) {
+      // Full shards are not returned to the queue.
+      int shard = byLoad.remove();
+      shards.get(shard).add(target);
+      loads[shard] += costMillis.applyAsDouble(target);
+      if (shards.get(shard).size() < maxShardSize) {
+        byLoad.add(shard);
+      }
+    }
+
+    // Keep the targets in each shard in a stable order, and drop any shards left empty.
+    ImmutableList.Builder<ImmutableList<Label>> result = ImmutableList.builder();
+    ImmutableList.Builder<Duration> predicted = ImmutableList.builder();
+    for (int i = 0; i < shardCount; i++) {
+      if (!shards.get(i).isEmpty()) {
+        result.add(
+            shards.get(i).stream()
+                .sorted(Comparator.comparing(Label::toString))
+                .collect(toImmutableList()));
+        predicted.add(Duration.ofMillis(Math.round(loads[i])));
+      }
+    }
+    return new Packing(result.build(), predicted.build());
+  }
+
+  @Override
+  public ShardingApproach getShardingApproach() {
+    return ShardingApproach.COST_AWARE_TARGET_SHARDER;
+  }
+}
@@ -70,6 +70,14 @@ public class LexicographicTargetSharder implements BuildBatchingService {
   public ImmutableList<ImmutableList<Label>> calculateTargetBatches(
       Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
     List<Label> sorted = ImmutableList.sortedCopyOf(Comparator.comparing(Label::toString), targets);
+    return Lists.partition(sorted, getShardSize(targets.size(), syncStrategy, suggestedShardSize))
+        .stream()
+        .map(ImmutableList::copyOf)
+        .collect(toImmutableList());
+  }
+
+  /** Returns the number of targets to put in each shard. */
+  static int getShardSize(int numTargets, SyncStrategy syncStrategy, int suggestedShardSize) {
     // When LexicographicTargetSharder is used for remote build, we may decide optimized shard size
     // for users even they have provided shard_size in project view. The size is decided according
     // to three aspects:
@@ -83,18 +91,15 @@ public class LexicographicTargetSharder implements BuildBatchingService {
 
     // TODO(b/218800878) Perhaps we should treat PARALLEL and DECIDE_AUTOMATICALLY differently here?
     if (syncStrategy != SyncStrategy.SERIAL) {
-      suggestedShardSize =
-          computeParallelShardSize(
-              targets.size(),
-              parallelThreshold.getValue(),
-              remoteConcurrentSyncs.getValue(),
-              minimumRemoteShardSize.getValue(),
-              maximumRemoteShardSize.getValue(),
-              suggestedShardSize);
+      return computeParallelShardSize(
+          numTargets,
+          parallelThreshold.getValue(),
+          remoteConcurrentSyncs.getValue(),
+          minimumRemoteShardSize.getValue(),
+          maximumRemoteShardSize.getValue(),
+          suggestedShardSize);
     }
-    return Lists.partition(sorted, suggestedShardSize).stream()
-        .map(ImmutableList::copyOf)
-        .collect(toImmutableList());
+    return suggestedShardSize;
   }
 
   /**
@@ -18,13 +18,16 @@ package com.google.idea.blaze.base.sync.sharding;
 import com.google.errorprone.annotations.concurrent.GuardedBy;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.StateUpdate;
+import com.google.idea.blaze.common.PrintOutput;
 import com.intellij.openapi.util.text.StringUtil;
+import java.time.Duration;
 
 /**
  * Tracks the state of a sharded build.
  *
  * <p>Keep track of the number of completed & in progress builds, and send a StateOutput to the
- * context whenever it changes.
+ * context whenever it changes. The build time of each shard is also logged, so that slow shards can
+ * be identified.
  */
 public final class ShardedBuildProgressTracker {
 
@@ -45,9 +48,14 @@ public final class ShardedBuildProgressTracker {
     sendUpdate(context);
   }
 
-  public synchronized void onBuildCompleted(BlazeContext context) {
+  public synchronized void onBuildCompleted(
+      BlazeContext context, String shardName, Duration buildTime) {
     buildsCompleted++;
     buildsInProgress--;
+    context.output(
+        PrintOutput.log(
+            String.format(
+                "%s finished in %s", shardName, StringUtil.formatDuration(buildTime.toMillis()))));
     sendUpdate(context);
   }
 
@@ -18,8 +18,8 @@ package com.google.idea.blaze.base.sync.sharding;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Streams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -34,11 +34,22 @@ import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.scope.output.StatusOutput;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.aspects.BuildResult;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.concurrency.AppExecutorUtil;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /** Partitioned list of blaze targets. */
 public class ShardedTargetList {
@@ -47,21 +58,89 @@ public class ShardedTargetList {
   public static final IntExperiment remoteConcurrentSyncs =
       new IntExperiment("number.concurrent.remote.syncs.2", 10);
 
+  /**
+   * Whether to start building the next shard of a non-parallel build while the previous shard's
+   * outputs are still being processed.
+   */
+  public static final BoolExperiment pipelinedShardBuilds =
+      new BoolExperiment("blaze.sync.pipelined.shard.builds", false);
+
+  /**
+   * The outputs of a single shard's blaze invocation. Processing them (e.g. parsing the build event
+   * output) is separate from the invocation, so that the next shard can be built meanwhile.
+   */
+  public interface ShardOutputs {
+    /** The result of the blaze invocation. */
+    BuildResult buildResult();
+
+    /** Processes the outputs of the invocation, returning the final result of the shard. */
+    BuildResult process();
+
+    /** Releases the outputs without processing them, e.g. if the build is cancelled. */
+    default void discard() {}
+
+    /** Returns outputs which are processed by the given supplier. */
+    static ShardOutputs of(BuildResult buildResult, Supplier<BuildResult> process) {
+      return of(buildResult, process, () -> {});
+    }
+
+    /**
+     * Returns outputs which are processed by the given supplier, or released by {@code discard} if
+     * they're never processed.
+     */
+    static ShardOutputs of(
+        BuildResult buildResult, Supplier<BuildResult> process, Runnable discard) {
+      return new ShardOutputs() {
+        @Override
+        public BuildResult buildResult() {
+          return buildResult;
+        }
+
+        @Override
+        public BuildResult process() {
+          return process.get();
+        }
+
+        @Override
+        public void discard() {
+          discard.run();
+        }
+      };
+    }
+
+    /** Returns outputs which need no further processing. */
+    static ShardOutputs processed(BuildResult result) {
+      return of(result, () -> result);
+    }
+  }
+
   @VisibleForTesting
   final ImmutableList<? extends ImmutableList<? extends TargetExpression>> shardedTargets;
 
-  final ShardStats shardStats;
+  private final ShardingApproach shardingApproach;
+  private final int suggestedSize;
+  private final ImmutableList<Duration> predictedShardDurations;
+
+  /** The time taken to build each shard, set as each shard completes. */
+  private final AtomicReferenceArray<Duration> actualShardDurations;
 
   public ShardedTargetList(
       ImmutableList<? extends ImmutableList<? extends TargetExpression>> shardedTargets,
       ShardingApproach shardingApproach,
       int suggestedSize) {
+    this(shardedTargets, shardingApproach, suggestedSize, ImmutableList.of());
+  }
+
+  public ShardedTargetList(
+      ImmutableList<? extends ImmutableList<? extends TargetExpression>> shardedTargets,
+      ShardingApproach shardingApproach,
+      int suggestedSize,
+      ImmutableList<Duration> predictedShardDurations) {
     this.shardedTargets = shardedTargets;
-    this.shardStats =
-        ShardStats.create(
-            suggestedSize,
-            shardedTargets.stream().map(List::size).collect(toImmutableList()),
-            shardingApproach);
+    this.shardingApproach = shardingApproach;
+    this.suggestedSize = suggestedSize;
+    this.predictedShardDurations = predictedShardDurations;
+    this.actualShardDurations = new AtomicReferenceArray<>(shardedTargets.size());
   }
 
   public boolean isEmpty() {
@@ -77,7 +156,54 @@ public class ShardedTargetList {
   }
 
   public ShardStats shardStats() {
-    return shardStats;
+    return ShardStats.create(
+        suggestedSize,
+        shardedTargets.stream().map(List::size).collect(toImmutableList()),
+        shardingApproach,
+        predictedShardDurations,
+        getActualShardDurations());
+  }
+
+  /** Returns the time taken to build each shard, or an empty list if any have not been built. */
+  private ImmutableList<Duration> getActualShardDurations() {
+    ImmutableList.Builder<Duration> durations = ImmutableList.builder();
+    for (int i = 0; i < actualShardDurations.length(); i++) {
+      Duration duration = actualShardDurations.get(i);
+      if (duration == null) {
+        return ImmutableList.of();
+      }
+      durations.add(duration);
+    }
+    return durations.build();
+  }
+
+  /** Builds a shard, recording the time taken by the blaze invocation. */
+  private ShardOutputs buildShard(
+      int shardIndex, Function<List<? extends TargetExpression>, ShardOutputs> invocation) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ShardOutputs outputs = invocation.apply(shardedTargets.get(shardIndex));
+    actualShardDurations.set(shardIndex, stopwatch.elapsed());
+    return outputs;
+  }
+
+  private BuildResult runShard(
+      int shardIndex, Function<List<? extends TargetExpression>, ShardOutputs> invocation) {
+    return buildShard(shardIndex, invocation).process();
+  }
+
+  /**
+   * Records the shard build times, so that later syncs can balance the shards better. Only done if
+   * {@link CostAwareTargetSharder} is enabled, since nothing else uses them.
+   */
+  private void recordShardDurations(Project project, BuildResult result) {
+    ImmutableList<Duration> durations = getActualShardDurations();
+    if (!CostAwareTargetSharder.enabled.getValue()
+        || shardedTargets.size() < 2
+        || durations.isEmpty()
+        || result.status == BuildResult.Status.FATAL_ERROR) {
+      return;
+    }
+    TargetBuildCostStore.getInstance(project).recordShardDurations(shardedTargets, durations);
   }
 
   /**
@@ -89,28 +215,42 @@ public class ShardedTargetList {
       Project project,
       BlazeContext context,
       Function<Integer, String> progressMessage,
-      Function<List<? extends TargetExpression>, BuildResult> invocation,
+      Function<List<? extends TargetExpression>, ShardOutputs> invocation,
       BuildInvoker binary,
       boolean invokeParallel) {
     if (isEmpty()) {
       return BuildResult.SUCCESS;
     }
     if (shardedTargets.size() == 1) {
-      return invocation.apply(shardedTargets.get(0));
+      return runShard(0, invocation);
     }
+    BuildResult result;
     if (binary.supportsParallelism() && invokeParallel) {
-      return runInParallel(project, context, invocation);
+      result = runInParallel(project, context, invocation);
+    } else if (pipelinedShardBuilds.getValue()) {
+      result = runPipelined(project, context, progressMessage, invocation);
+    } else {
+      result = runSerially(project, context, progressMessage, invocation);
     }
+    recordShardDurations(project, result);
+    return result;
+  }
+
+  private BuildResult runSerially(
+      Project project,
+      BlazeContext context,
+      Function<Integer, String> progressMessage,
+      Function<List<? extends TargetExpression>, ShardOutputs> invocation) {
     int progress = 0;
     BuildResult output = null;
     for (int i = 0; i < shardedTargets.size(); i++, progress++) {
       context.output(new StatusOutput(progressMessage.apply(i + 1)));
-      BuildResult result = invocation.apply(shardedTargets.get(i));
+      BuildResult result = runShard(i, invocation);
       if (result.outOfMemory() && progress > 0) {
         // re-try now that blaze server has restarted
         progress = 0;
         IssueOutput.warn(retryOnOomMessage(project, i)).submit(context);
-        result = invocation.apply(shardedTargets.get(i));
+        result = runShard(i, invocation);
       }
       output = output == null ? result : BuildResult.combine(output, result);
       if (output.status == BuildResult.Status.FATAL_ERROR) {
@@ -120,25 +260,121 @@ public class ShardedTargetList {
     return output;
   }
 
-  @SuppressWarnings("Interruption")
   private BuildResult runInParallel(
       Project project,
       BlazeContext context,
-      Function<List<? extends TargetExpression>, BuildResult> invocation) {
+      Function<List<? extends TargetExpression>, ShardOutputs> invocation) {
+    return runConcurrently(
+        project,
+        context,
+        "RemoteBlazeExecutor",
+        remoteConcurrentSyncs.getValue(),
+        i -> runShard(i, invocation));
+  }
+
+  /**
+   * Builds the shards one at a time, as {@link #runSerially} does, but processes the outputs of each
+   * shard in the background while the next shard builds.
+   *
+   * <p>Only the output processing overlaps with the builds: blaze invocations sharing a server
+   * would only queue on its server lock, and a shard must not be started on a server which may
+   * have run out of memory before the previous shard has finished.
+   */
+  private BuildResult runPipelined(
+      Project project,
+      BlazeContext context,
+      Function<Integer, String> progressMessage,
+      Function<List<? extends TargetExpression>, ShardOutputs> invocation) {
+    // Outputs are processed one shard at a time, in shard order.
+    ListeningExecutorService processingExecutor =
+        MoreExecutors.listeningDecorator(
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("PipelinedShardOutputs", 1));
+    List<ListenableFuture<BuildResult>> processed = new ArrayList<>();
+    List<ShardOutputs> unprocessed = Collections.synchronizedList(new ArrayList<>());
+    try {
+      int progress = 0;
+      for (int i = 0; i < shardedTargets.size(); i++, progress++) {
+        if (context.isCancelled() || anyFatalError(processed)) {
+          break;
+        }
+        context.output(new StatusOutput(progressMessage.apply(i + 1)));
+        ShardOutputs outputs = buildShard(i, invocation);
+        if (outputs.buildResult().outOfMemory() && progress > 0) {
+          // re-try now that blaze server has restarted. The outputs of the failed attempt are still
+          // processed, as in serial mode, but not included in the result.
+          Future<?> unused = submitProcessing(processingExecutor, outputs, unprocessed);
+          progress = 0;
+          IssueOutput.warn(retryOnOomMessage(project, i)).submit(context);
+          outputs = buildShard(i, invocation);
+        }
+        processed.add(submitProcessing(processingExecutor, outputs, unprocessed));
+        if (outputs.buildResult().status == BuildResult.Status.FATAL_ERROR) {
+          break;
+        }
+      }
+      return waitForResults(project, context, Futures.allAsList(processed));
+    } finally {
+      // Processing tasks cancelled before they started never run, so release their outputs here.
+      synchronized (unprocessed) {
+        unprocessed.forEach(ShardOutputs::discard);
+        unprocessed.clear();
+      }
+    }
+  }
+
+  /**
+   * Submits the outputs to be processed, keeping them in {@code unprocessed} until processing
+   * starts. Outputs removed from {@code unprocessed} before then have been discarded instead.
+   */
+  private static ListenableFuture<BuildResult> submitProcessing(
+      ListeningExecutorService executor, ShardOutputs outputs, List<ShardOutputs> unprocessed) {
+    unprocessed.add(outputs);
+    return executor.submit(
+        () -> unprocessed.remove(outputs) ? outputs.process() : BuildResult.FATAL_ERROR);
+  }
+
+  /** Whether the outputs of any shard have already failed to process, or had a fatal error. */
+  private static boolean anyFatalError(List<ListenableFuture<BuildResult>> results) {
+    for (ListenableFuture<BuildResult> result : results) {
+      if (!result.isDone()) {
+        continue;
+      }
+      try {
+        if (Futures.getDone(result).status == BuildResult.Status.FATAL_ERROR) {
+          return true;
+        }
+      } catch (ExecutionException | CancellationException e) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private BuildResult runConcurrently(
+      Project project,
+      BlazeContext context,
+      String executorName,
+      int maxConcurrentShards,
+      IntFunction<BuildResult> runShard) {
     // new executor for each sync, so we get an up-to-date experiment value. This is fine, because
     // it's just a view of the single application pool executor. Doesn't need to be shutdown for the
-    // same reason
+    // same reason. Shards are started in order.
     ListeningExecutorService executor =
         MoreExecutors.listeningDecorator(
             AppExecutorUtil.createBoundedApplicationPoolExecutor(
-                "RemoteBlazeExecutor", remoteConcurrentSyncs.getValue()));
+                executorName, maxConcurrentShards));
 
     ListenableFuture<List<BuildResult>> future =
         Futures.allAsList(
-            Streams.mapWithIndex(
-                    shardedTargets.stream(), (s, i) -> executor.submit(() -> invocation.apply(s)))
+            IntStream.range(0, shardedTargets.size())
+                .mapToObj(i -> executor.submit(() -> runShard.apply(i)))
                 .collect(toImmutableList()));
+    return waitForResults(project, context, future);
+  }
 
+  @SuppressWarnings("Interruption")
+  private static BuildResult waitForResults(
+      Project project, BlazeContext context, ListenableFuture<List<BuildResult>> future) {
     context.addCancellationHandler(() -> future.cancel(true));
 
     String buildSystem = Blaze.buildSystemName(project);
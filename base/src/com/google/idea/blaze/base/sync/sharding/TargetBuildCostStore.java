@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.util.SerializationUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Records how long each target has taken to build in previous syncs, for use by {@link
+ * CostAwareTargetSharder}.
+ *
+ * <p>Blaze does not report per-target build times, so the time taken by each shard is shared
+ * between its targets in proportion to their previously estimated costs. Over several syncs with
+ * differently composed shards, this converges on the relative cost of each target. Estimates are
+ * smoothed with an exponential moving average so that a single slow build does not dominate.
+ *
+ * <p>The estimates are persisted in the project data directory. Estimates for targets which are no
+ * longer part of the project are dropped each time they are saved.
+ */
+public class TargetBuildCostStore {
+
+  private static final Logger logger = Logger.getInstance(TargetBuildCostStore.class);
+
+  private static final String FILE_NAME = "target_build_costs.dat";
+
+  /** The weight given to the latest observation of a target's cost. */
+  private static final double SMOOTHING = 0.5;
+
+  private final Project project;
+
+  /** The estimated build time in milliseconds of each target, keyed by label string. */
+  @GuardedBy("this")
+  @Nullable
+  private HashMap<String, Long> costs;
+
+  public TargetBuildCostStore(Project project) {
+    this.project = project;
+  }
+
+  public static TargetBuildCostStore getInstance(Project project) {
+    return project.getService(TargetBuildCostStore.class);
+  }
+
+  /** Returns the current cost estimates. */
+  synchronized TargetBuildCosts getCosts() {
+    return new TargetBuildCosts(loadCosts());
+  }
+
+  /**
+   * Records the time taken to build each of the given shards, and persists the updated estimates.
+   */
+  synchronized void recordShardDurations(
+      List<? extends List<? extends TargetExpression>> shards, List<Duration> durations) {
+    HashMap<String, Long> costs = loadCosts();
+    TargetBuildCosts previous = new TargetBuildCosts(costs);
+    for (int i = 0; i < shards.size(); i++) {
+      recordShardDuration(costs, previous, shards.get(i), durations.get(i));
+    }
+    costs.keySet().retainAll(currentTargets(shards));
+    File file = getCostFile();
+    if (file == null) {
+      return;
+    }
+    try {
+      SerializationUtil.saveToDisk(file, costs);
+    } catch (IOException e) {
+      logger.warn("Failed to save target build costs", e);
+    }
+  }
+
+  @VisibleForTesting
+  static void recordShardDuration(
+      Map<String, Long> costs,
+      TargetBuildCosts previous,
+      List<? extends TargetExpression> shard,
+      Duration duration) {
+    double predicted = 0;
+    for (TargetExpression target : shard) {
+      if (target instanceof Label) {
+        predicted += previous.estimateMillis((Label) target);
+      }
+    }
+    if (predicted <= 0) {
+      return;
+    }
+    for (TargetExpression target : shard) {
+      if (!(target instanceof Label)) {
+        continue;
+      }
+      Label label = (Label) target;
+      double observed = duration.toMillis() * previous.estimateMillis(label) / predicted;
+      Long old = costs.get(label.toString());
+      double updated = old == null ? observed : old * (1 - SMOOTHING) + observed * SMOOTHING;
+      // Never record a cost of zero, so that the target still takes a share of future shard times.
+      costs.put(label.toString(), Math.max(1, Math.round(updated)));
+    }
+  }
+
+  /**
+   * Returns the labels of the targets currently in the project: those just built, and those in the
+   * target map of the last sync. A partial sync builds only some of the project's targets, so the
+   * shards alone are not enough.
+   */
+  private Set<String> currentTargets(List<? extends List<? extends TargetExpression>> shards) {
+    Set<String> targets = new HashSet<>();
+    for (List<? extends TargetExpression> shard : shards) {
+      for (TargetExpression target : shard) {
+        targets.add(target.toString());
+      }
+    }
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData != null && !projectData.isQuerySync()) {
+      for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
+        targets.add(target.getKey().getLabel().toString());
+      }
+    }
+    return targets;
+  }
+
+  @GuardedBy("this")
+  @SuppressWarnings("unchecked")
+  private HashMap<String, Long> loadCosts() {
+    if (costs != null) {
+      return costs;
+    }
+    costs = new HashMap<>();
+    File file = getCostFile();
+    if (file == null || !file.exists()) {
+      return costs;
+    }
+    try {
+      List<ClassLoader> classLoaders = Lists.newArrayList();
+      classLoaders.add(getClass().getClassLoader());
+      classLoaders.add(Thread.currentThread().getContextClassLoader());
+      Object loaded = SerializationUtil.loadFromDisk(file, classLoaders);
+      if (loaded instanceof HashMap) {
+        costs = (HashMap<String, Long>) loaded;
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to load target build costs: " + e.getMessage());
+    }
+    return costs;
+  }
+
+  @Nullable
+  private File getCostFile() {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    if (importSettings == null) {
+      return null;
+    }
+    return new File(BlazeDataStorage.getProjectDataDir(importSettings), FILE_NAME);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.model.primitives.Label;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of the estimated build cost of each target, from {@link TargetBuildCostStore}.
+ *
+ * <p>Targets without an estimate of their own are assumed to cost the average of the other targets
+ * in their package, or failing that, the average of all targets.
+ */
+final class TargetBuildCosts {
+
+  private final ImmutableMap<Label, Long> costs;
+  private final ImmutableMap<String, Double> packageAverages;
+  private final double overallAverage;
+
+  TargetBuildCosts(Map<String, Long> costsByLabel) {
+    ImmutableMap.Builder<Label, Long> costs =
+        ImmutableMap.builderWithExpectedSize(costsByLabel.size());
+    Map<String, double[]> packageTotals = new HashMap<>();
+    double total = 0;
+    for (Map.Entry<String, Long> entry : costsByLabel.entrySet()) {
+      Label label = Label.createIfValid(entry.getKey());
+      if (label == null) {
+        continue;
+      }
+      costs.put(label, entry.getValue());
+      double[] packageTotal =
+          packageTotals.computeIfAbsent(packageKey(label), k -> new double[2]);
+      packageTotal[0] += entry.getValue();
+      packageTotal[1]++;
+      total += entry.getValue();
+    }
+    this.costs = costs.buildOrThrow();
+    ImmutableMap.Builder<String, Double> packageAverages =
+        ImmutableMap.builderWithExpectedSize(packageTotals.size());
+    packageTotals.forEach((pkg, t) -> packageAverages.put(pkg, t[0] / t[1]));
+    this.packageAverages = packageAverages.buildOrThrow();
+    this.overallAverage = this.costs.isEmpty() ? 1 : total / this.costs.size();
+  }
+
+  boolean isEmpty() {
+    return costs.isEmpty();
+  }
+
+  /** Returns the estimated build time of a target in milliseconds. */
+  double estimateMillis(Label label) {
+    Long cost = costs.get(label);
+    if (cost != null) {
+      return cost;
+    }
+    return packageAverages.getOrDefault(packageKey(label), overallAverage);
+  }
+
+  /** Returns the label of the package containing a target, e.g. {@code @repo//foo/bar}. */
+  private static String packageKey(Label label) {
+    String labelString = label.toString();
+    return labelString.substring(0, Math.max(0, labelString.lastIndexOf(':')));
+  }
+}
@@ -15,8 +15,12 @@
  */
 package com.google.idea.blaze.base.targetmaps;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.idea.blaze.base.ideinfo.Dependency;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -24,30 +28,186 @@ import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.SyncCache;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
 
 /** Handy class to create an reverse dep map of all targets */
 public class ReverseDependencyMap {
-  public static ImmutableMultimap<TargetKey, TargetKey> get(Project project) {
-    ImmutableMultimap<TargetKey, TargetKey> map =
+
+  /**
+   * The reverse dependencies calculated for the most recent target map. These are kept so that
+   * after a sync which changes only a few targets, the map can be updated rather than recalculated.
+   */
+  private static final Key<Snapshot> PREVIOUS_SNAPSHOT =
+      Key.create("ReverseDependencyMap.previousSnapshot");
+
+  /**
+   * If more than this fraction of targets have changed since the previous snapshot, the map is
+   * recalculated from scratch instead.
+   */
+  private static final int MAX_CHANGED_TARGETS_FRACTION = 4;
+
+  /** The reverse dependencies of the targets in a {@link TargetMap}. */
+  public static final class ReverseDependencies {
+    private static final ReverseDependencies EMPTY =
+        new ReverseDependencies(new TargetMap(ImmutableMap.of()), new ConcurrentHashMap<>());
+
+    private final TargetMap targetMap;
+    private final Map<TargetKey, ImmutableList<TargetKey>> allRdeps;
+
+    private ReverseDependencies(
+        TargetMap targetMap, Map<TargetKey, ImmutableList<TargetKey>> allRdeps) {
+      this.targetMap = targetMap;
+      this.allRdeps = allRdeps;
+    }
+
+    /** Returns the targets which directly depend on the given target. */
+    public ImmutableList<TargetKey> get(TargetKey key) {
+      if (!targetMap.contains(key)) {
+        return ImmutableList.of();
+      }
+      return allRdeps.getOrDefault(key, ImmutableList.of());
+    }
+
+    @VisibleForTesting
+    ImmutableListMultimap<TargetKey, TargetKey> toMultimap() {
+      ImmutableListMultimap.Builder<TargetKey, TargetKey> rdeps = ImmutableListMultimap.builder();
+      allRdeps.forEach(
+          (key, values) -> {
+            if (targetMap.contains(key)) {
+              rdeps.putAll(key, values);
+            }
+          });
+      return rdeps.build();
+    }
+  }
+
+  public static ReverseDependencies get(Project project) {
+    ReverseDependencies map =
         SyncCache.getInstance(project)
             .get(ReverseDependencyMap.class, ReverseDependencyMap::createRdepsMap);
-    return map != null ? map : ImmutableMultimap.of();
+    return map != null ? map : ReverseDependencies.EMPTY;
   }
 
   @VisibleForTesting
-  static ImmutableMultimap<TargetKey, TargetKey> createRdepsMap(
-      Project project, BlazeProjectData projectData) {
+  static ReverseDependencies createRdepsMap(Project project, BlazeProjectData projectData) {
     TargetMap targetMap = projectData.getTargetMap();
-    ImmutableMultimap.Builder<TargetKey, TargetKey> builder = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : targetMap.targets()) {
-      TargetKey key = target.getKey();
-      for (Dependency dep : target.getDependencies()) {
-        TargetKey depKey = dep.getTargetKey();
-        if (targetMap.contains(depKey)) {
-          builder.put(depKey, key);
+    synchronized (PREVIOUS_SNAPSHOT) {
+      Snapshot previous = project.getUserData(PREVIOUS_SNAPSHOT);
+      // The previous snapshot is updated in place, so drop it until the update is complete.
+      project.putUserData(PREVIOUS_SNAPSHOT, null);
+      Snapshot snapshot =
+          previous != null ? previous.update(targetMap) : Snapshot.create(targetMap);
+      project.putUserData(PREVIOUS_SNAPSHOT, snapshot);
+      return snapshot.reverseDependencies(targetMap);
+    }
+  }
+
+  /** Builds the map in the background after sync, rather than on first use. */
+  static class CacheWarmer implements SyncCache.Warmer {
+    @Override
+    public void warmUp(Project project) {
+      get(project);
+    }
+  }
+
+  /**
+   * The reverse dependencies for a particular {@link TargetMap}. Only the map's {@link
+   * TargetMap.Version} is kept, not the map itself.
+   */
+  @VisibleForTesting
+  static class Snapshot {
+    private final TargetMap.Version version;
+
+    /**
+     * All reverse dependencies, including those of targets not in the target map, which may be
+     * added later. Updated in place by {@link #update}; each value is replaced rather than
+     * modified, so that readers of an earlier {@link ReverseDependencies} never see a list change.
+     */
+    private final ConcurrentMap<TargetKey, ImmutableList<TargetKey>> allRdeps;
+
+    private Snapshot(
+        TargetMap.Version version, ConcurrentMap<TargetKey, ImmutableList<TargetKey>> allRdeps) {
+      this.version = version;
+      this.allRdeps = allRdeps;
+    }
+
+    static Snapshot create(TargetMap targetMap) {
+      Map<TargetKey, List<TargetKey>> rdeps = new HashMap<>();
+      for (TargetIdeInfo target : targetMap.targets()) {
+        for (Dependency dep : target.getDependencies()) {
+          rdeps.computeIfAbsent(dep.getTargetKey(), k -> new ArrayList<>()).add(target.getKey());
         }
       }
+      ConcurrentMap<TargetKey, ImmutableList<TargetKey>> allRdeps =
+          new ConcurrentHashMap<>(rdeps.size());
+      rdeps.forEach((key, values) -> allRdeps.put(key, ImmutableList.copyOf(values)));
+      return new Snapshot(targetMap.version(), allRdeps);
     }
-    return builder.build();
+
+    /** Returns the reverse dependencies of the targets in the snapshot's target map. */
+    ReverseDependencies reverseDependencies(TargetMap targetMap) {
+      return new ReverseDependencies(targetMap, allRdeps);
+    }
+
+    /**
+     * Returns a snapshot for a new target map. If the sync which produced the map updated this
+     * snapshot's map, only the reverse dependencies of the dependencies of the targets it reports
+     * as changed are updated, in place. Otherwise, they are recalculated.
+     */
+    Snapshot update(TargetMap newTargetMap) {
+      if (newTargetMap.version() == version) {
+        return this;
+      }
+      TargetMap.Changes changes = newTargetMap.getChangesSince(version);
+      if (changes == null
+          || changes.previousDependencies().size()
+              > newTargetMap.size() / MAX_CHANGED_TARGETS_FRACTION) {
+        return create(newTargetMap);
+      }
+      for (Map.Entry<TargetKey, ImmutableList<TargetKey>> entry :
+          changes.previousDependencies().entrySet()) {
+        TargetKey key = entry.getKey();
+        TargetIdeInfo target = newTargetMap.get(key);
+        ImmutableList<TargetKey> deps =
+            target != null
+                ? target.getDependencies().stream()
+                    .map(Dependency::getTargetKey)
+                    .collect(toImmutableList())
+                : ImmutableList.of();
+        if (deps.equals(entry.getValue())) {
+          continue;
+        }
+        for (TargetKey dep : entry.getValue()) {
+          allRdeps.computeIfPresent(dep, (unused, rdeps) -> without(rdeps, key));
+        }
+        for (TargetKey dep : deps) {
+          allRdeps.merge(dep, ImmutableList.of(key), ReverseDependencyMap::concat);
+        }
+      }
+      return new Snapshot(newTargetMap.version(), allRdeps);
+    }
+  }
+
+  /** Returns {@code rdeps} without {@code key}, or null if that leaves it empty. */
+  @Nullable
+  private static ImmutableList<TargetKey> without(ImmutableList<TargetKey> rdeps, TargetKey key) {
+    ImmutableList<TargetKey> remaining =
+        rdeps.stream().filter(rdep -> !rdep.equals(key)).collect(toImmutableList());
+    return remaining.isEmpty() ? null : remaining;
+  }
+
+  private static ImmutableList<TargetKey> concat(
+      ImmutableList<TargetKey> first, ImmutableList<TargetKey> second) {
+    return ImmutableList.<TargetKey>builderWithExpectedSize(first.size() + second.size())
+        .addAll(first)
+        .addAll(second)
+        .build();
   }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index over a {@link TargetMap} for answering reachability queries.
+ *
+ * <p>Each target is assigned an integer id, and the dependency graph is stored as flat int arrays.
+ * The set of targets reachable from a given target is computed on first use as a {@link BitSet}
+ * and memoized, so repeated queries from the same target (as run configuration producers and
+ * resource resolution tend to make) are a single bit lookup.
+ *
+ * <p>Only a bounded number of reachable sets are kept, since storing one for every target would
+ * take memory quadratic in the size of the target map.
+ */
+final class TransitiveClosureIndex {
+
+  private static final int MAX_CACHED_CLOSURES = 256;
+
+  private final Map<TargetKey, Integer> ids;
+
+  /** The dependencies of the target with id {@code i} are {@code deps[offsets[i]..offsets[i+1]]}. */
+  private final int[] offsets;
+
+  private final int[] deps;
+
+  private final LoadingCache<Integer, BitSet> closures =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_CLOSURES)
+          .build(CacheLoader.from(this::computeClosure));
+
+  TransitiveClosureIndex(TargetMap targetMap) {
+    ids = new HashMap<>();
+    targetMap.map().keySet().forEach(key -> ids.putIfAbsent(key, ids.size()));
+    int[][] adjacency = new int[ids.size()][];
+    int edgeCount = 0;
+    for (TargetIdeInfo target : targetMap.targets()) {
+      int[] targetDeps =
+          target.getDependencies().stream()
+              .map(Dependency::getTargetKey)
+              .map(TargetKey::getLabel)
+              .map(TargetKey::forPlainTarget)
+              .mapToInt(this::idOrAssign)
+              .distinct()
+              .toArray();
+      adjacency[ids.get(target.getKey())] = targetDeps;
+      edgeCount += targetDeps.length;
+    }
+
+    offsets = new int[ids.size() + 1];
+    deps = new int[edgeCount];
+    for (int i = 0; i < ids.size(); i++) {
+      // Dependencies which are not themselves in the target map have no outgoing edges.
+      int[] targetDeps = i < adjacency.length ? adjacency[i] : new int[0];
+      System.arraycopy(targetDeps, 0, deps, offsets[i], targetDeps.length);
+      offsets[i + 1] = offsets[i] + targetDeps.length;
+    }
+  }
+
+  private int idOrAssign(TargetKey key) {
+    return ids.computeIfAbsent(key, k -> ids.size());
+  }
+
+  /**
+   * Returns true if {@code dependent} transitively depends on {@code dependency}. A target is only
+   * considered to depend on itself if it is part of a dependency cycle.
+   */
+  boolean hasTransitiveDependency(TargetKey dependent, TargetKey dependency) {
+    Integer from = ids.get(dependent);
+    Integer to = ids.get(dependency);
+    if (from == null || to == null) {
+      return false;
+    }
+    return closures.getUnchecked(from).get(to);
+  }
+
+  /** Returns the subset of {@code possibleDependencies} that {@code dependent} depends on. */
+  ImmutableSet<TargetKey> filterTransitiveDependencies(
+      TargetKey dependent, Collection<TargetKey> possibleDependencies) {
+    Integer from = ids.get(dependent);
+    if (from == null) {
+      return ImmutableSet.of();
+    }
+    BitSet closure = closures.getUnchecked(from);
+    ImmutableSet.Builder<TargetKey> result = ImmutableSet.builder();
+    for (TargetKey key : possibleDependencies) {
+      Integer id = ids.get(key);
+      if (id != null && closure.get(id)) {
+        result.add(key);
+      }
+    }
+    return result.build();
+  }
+
+  private BitSet computeClosure(int from) {
+    BitSet reached = new BitSet(ids.size());
+    int[] queue = new int[16];
+    int head = 0;
+    int tail = 0;
+    int next = from;
+    while (true) {
+      for (int i = offsets[next]; i < offsets[next + 1]; i++) {
+        int dep = deps[i];
+        if (!reached.get(dep)) {
+          reached.set(dep);
+          if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, queue.length * 2);
+          }
+          queue[tail++] = dep;
+        }
+      }
+      if (head == tail) {
+        return reached;
+      }
+      next = queue[head++];
+    }
+  }
+}
@@ -24,6 +24,7 @@ import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.project.Project;
 import java.util.Collection;
@@ -33,6 +34,7 @@ import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /** Handy class to find all transitive dependencies of a given target */
 public class TransitiveDependencyMap {
@@ -53,14 +55,8 @@ public class TransitiveDependencyMap {
   public boolean hasTransitiveDependency(
       TargetKey possibleDependent, TargetKey possibleDependency) {
 
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
-      return false;
-    }
-
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .anyMatch(possibleDependency::equals);
+    TransitiveClosureIndex index = getClosureIndex();
+    return index != null && index.hasTransitiveDependency(possibleDependent, possibleDependency);
   }
 
   /**
@@ -72,17 +68,31 @@ public class TransitiveDependencyMap {
    */
   public ImmutableSet<TargetKey> filterPossibleTransitiveDeps(
       TargetKey possibleDependent, Collection<TargetKey> possibleDependencies) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TransitiveClosureIndex index = getClosureIndex();
+    if (index == null) {
       return ImmutableSet.of();
     }
-    ImmutableSet<TargetKey> possibleDepsSet = ImmutableSet.copyOf(possibleDependencies);
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .filter(possibleDepsSet::contains)
-        .distinct()
-        .limit(possibleDepsSet.size())
-        .collect(ImmutableSet.toImmutableSet());
+    return index.filterTransitiveDependencies(possibleDependent, possibleDependencies);
+  }
+
+  /**
+   * Returns the reachability index for the current target map, building it if necessary. The index
+   * is discarded on each sync.
+   */
+  @Nullable
+  private TransitiveClosureIndex getClosureIndex() {
+    return SyncCache.getInstance(project)
+        .get(
+            TransitiveClosureIndex.class,
+            (unused, projectData) -> new TransitiveClosureIndex(projectData.getTargetMap()));
+  }
+
+  /** Builds the reachability index in the background after sync, rather than on first use. */
+  static class CacheWarmer implements SyncCache.Warmer {
+    @Override
+    public void warmUp(Project project) {
+      getInstance(project).getClosureIndex();
+    }
   }
 
   public ImmutableCollection<TargetKey> getTransitiveDependencies(TargetKey targetKey) {
@@ -171,6 +171,19 @@ public class GlobReferenceTest extends BuildFileIntegrationTestCase {
     assertThat(references).isEmpty();
   }
 
+  @Test
+  public void testResultsUpdatedWhenFilesAdded() {
+    PsiFile foo = workspace.createPsiFile(new WorkspacePath("java/com/google/Foo.java"));
+    BuildFile file =
+        createBuildFile(new WorkspacePath("java/com/google/BUILD"), "glob(['**/*.java'])");
+
+    GlobExpression glob = PsiUtils.findFirstChildOfClassRecursive(file, GlobExpression.class);
+    assertThat(multiResolve(glob)).containsExactly(foo);
+
+    PsiFile bar = workspace.createPsiFile(new WorkspacePath("java/com/google/sub/Bar.java"));
+    assertThat(multiResolve(glob)).containsExactly(foo, bar);
+  }
+
   private List<PsiElement> multiResolve(GlobExpression glob) {
     ResolveResult[] result = glob.getReference().multiResolve(false);
     return Arrays.stream(result)
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LineProcessingOutputStream}. */
+@RunWith(JUnit4.class)
+public final class LineProcessingOutputStreamTest {
+
+  private final List<String> lines = new ArrayList<>();
+  private final LineProcessingOutputStream stream =
+      LineProcessingOutputStream.of(
+          line -> {
+            lines.add(line);
+            return true;
+          });
+
+  @Test
+  public void splitsOnAllLineBreaks() {
+    write("one\ntwo\r\nthree\rfour");
+    assertThat(lines).containsExactly("one", "two", "three").inOrder();
+  }
+
+  @Test
+  public void joinsLinesSplitAcrossWrites() {
+    write("fi");
+    write("rst\nsec");
+    write("ond\n");
+    assertThat(lines).containsExactly("first", "second").inOrder();
+  }
+
+  @Test
+  public void crlfSplitAcrossWritesIsOneLineBreak() {
+    write("one\r");
+    write("\ntwo\n");
+    assertThat(lines).containsExactly("one", "two").inOrder();
+  }
+
+  @Test
+  public void emptyLinesArePreserved() {
+    write("one\n\n\r\n\rtwo\n");
+    assertThat(lines).containsExactly("one", "", "", "", "two").inOrder();
+  }
+
+  @Test
+  public void multibyteCharacterSplitAcrossWrites() {
+    byte[] bytes = "caf\u00e9\n".getBytes(UTF_8);
+    stream.write(bytes, 0, 4);
+    stream.write(bytes, 4, bytes.length - 4);
+    assertThat(lines).containsExactly("caf\u00e9");
+  }
+
+  @Test
+  public void longLine() {
+    char[] chars = new char[100_000];
+    Arrays.fill(chars, 'x');
+    String longLine = new String(chars);
+    for (int i = 0; i < longLine.length(); i += 1000) {
+      write(longLine.substring(i, i + 1000));
+    }
+    write("\nshort\n");
+    assertThat(lines).containsExactly(longLine, "short").inOrder();
+  }
+
+  @Test
+  public void nothingProcessedAfterClose() throws Exception {
+    write("one\n");
+    stream.close();
+    write("two\n");
+    assertThat(lines).containsExactly("one");
+  }
+
+  private void write(String text) {
+    byte[] bytes = text.getBytes(UTF_8);
+    stream.write(bytes, 0, bytes.length);
+  }
+}
@@ -32,12 +32,14 @@ import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Bui
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetCompletedId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetConfiguredId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestResultId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestSummaryId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Configuration;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.NamedSetOfFiles;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.OutputGroup;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetComplete;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetConfigured;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestResult;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestSummary;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules.RuleTypes;
@@ -56,6 +58,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Iterator;
@@ -645,6 +648,71 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
         .containsExactly(new File("/usr/local/tmp/_cache/second_result.xml"));
   }
 
+  @Test
+  public void parseTestResults_withListener_notifiesEachTargetOnTestSummary() throws Exception {
+    ImmutableList<BuildEvent.Builder> events =
+        ImmutableList.of(
+            testResultEvent(
+                "//java/com/google:Test1",
+                BuildEventStreamProtos.TestStatus.PASSED,
+                ImmutableList.of("/usr/local/tmp/_cache/shard1_of_2.xml")),
+            testResultEvent(
+                "//java/com/google:Test2",
+                BuildEventStreamProtos.TestStatus.FAILED,
+                ImmutableList.of("/usr/local/tmp/_cache/test2.xml")),
+            testResultEvent(
+                "//java/com/google:Test1",
+                BuildEventStreamProtos.TestStatus.PASSED,
+                ImmutableList.of("/usr/local/tmp/_cache/shard2_of_2.xml")),
+            testSummaryEvent("//java/com/google:Test1"),
+            testResultEvent(
+                "//java/com/google:Test3",
+                BuildEventStreamProtos.TestStatus.INCOMPLETE,
+                ImmutableList.of("/usr/local/tmp/_cache/test3.xml")),
+            testSummaryEvent("//java/com/google:Test2"));
+
+    List<String> notified = new ArrayList<>();
+    BlazeTestResults results =
+        BuildEventProtocolOutputReader.parseTestResults(
+            BuildEventStreamProvider.fromInputStream(asInputStream(events)),
+            (label, targetResults) -> notified.add(label + " " + targetResults.size()));
+
+    // Test3 has no summary, so it's only reported once the whole stream has been read.
+    assertThat(notified)
+        .containsExactly(
+            "//java/com/google:Test1 2", "//java/com/google:Test2 1", "//java/com/google:Test3 1")
+        .inOrder();
+    assertThat(results.perTargetResults).hasSize(4);
+  }
+
+  @Test
+  public void parseBepArtifacts_withListener_notifiesTransitiveOutputsOnTargetCompletion()
+      throws Exception {
+    ImmutableList<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-id", "k8-opt"),
+            setOfFiles(ImmutableList.of("/usr/out/dep.jar"), "dep-set"),
+            setOfFiles(
+                ImmutableList.of("/usr/out/lib.jar"), "lib-set", ImmutableList.of("dep-set")),
+            targetComplete(
+                "//some:target",
+                "config-id",
+                ImmutableList.of(outputGroup("jars", ImmutableList.of("lib-set")))));
+
+    List<String> notified = new ArrayList<>();
+    ParsedBepOutput.parseBepArtifacts(
+        BuildEventStreamProvider.fromInputStream(asInputStream(events)),
+        null,
+        (target, outputGroup, outputs) ->
+            LocalFileArtifact.getLocalFiles(outputs)
+                .forEach(f -> notified.add(target + " " + outputGroup + " " + f.getPath())));
+
+    assertThat(notified)
+        .containsExactly(
+            "//some:target jars /usr/out/lib.jar", "//some:target jars /usr/out/dep.jar")
+        .inOrder();
+  }
+
   private static ImmutableList<File> getOutputXmlFiles(BlazeTestResult result) {
     return LocalFileArtifact.getLocalFiles(result.getOutputXmlFiles());
   }
@@ -688,6 +756,13 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
                     filePaths.stream().map(this::toFileEvent).collect(toImmutableList())));
   }
 
+  private static BuildEvent.Builder testSummaryEvent(String label) {
+    return BuildEvent.newBuilder()
+        .setId(
+            BuildEventId.newBuilder().setTestSummary(TestSummaryId.newBuilder().setLabel(label)))
+        .setTestSummary(TestSummary.getDefaultInstance());
+  }
+
   private BuildEvent.Builder targetComplete(
       String label, String configId, List<OutputGroup> outputGroups) {
     return BuildEvent.newBuilder()
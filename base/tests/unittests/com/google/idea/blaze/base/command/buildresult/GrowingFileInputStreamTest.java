@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.buildresult;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GrowingFileInputStream}. */
+@RunWith(JUnit4.class)
+public class GrowingFileInputStreamTest {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void read_fileCompleteBeforeReading_readsWholeFile() throws Exception {
+    File file = tempFolder.newFile();
+    append(file, "complete");
+    WriterFuture writer = new WriterFuture();
+    writer.finish();
+
+    try (InputStream in = new GrowingFileInputStream(file, writer)) {
+      assertThat(new String(in.readAllBytes(), UTF_8)).isEqualTo("complete");
+    }
+  }
+
+  @Test
+  public void read_dataAppendedWhileReading_readsAllData() throws Exception {
+    File file = tempFolder.newFile();
+    append(file, "first ");
+    WriterFuture writer = new WriterFuture();
+    Future<String> read = readAllAsync(file, writer);
+
+    writer.awaitReaderWaiting();
+    append(file, "second ");
+    writer.awaitReaderWaiting();
+    append(file, "third");
+    writer.finish();
+
+    assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("first second third");
+  }
+
+  @Test
+  public void read_dataAppendedJustBeforeBuildFinishes_readsTrailingData() throws Exception {
+    File file = tempFolder.newFile();
+    WriterFuture writer = new WriterFuture();
+    Future<String> read = readAllAsync(file, writer);
+
+    // The reader is already waiting at the end of the file when the last data is written and the
+    // build finishes, so the data must be read after completion is noticed.
+    writer.awaitReaderWaiting();
+    append(file, "trailing data");
+    writer.finish();
+
+    assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("trailing data");
+  }
+
+  @Test
+  public void read_buildFailed_readsDataWrittenBeforeFailure() throws Exception {
+    File file = tempFolder.newFile();
+    WriterFuture writer = new WriterFuture();
+    Future<String> read = readAllAsync(file, writer);
+
+    writer.awaitReaderWaiting();
+    append(file, "partial");
+    writer.fail(new IOException("build failed"));
+
+    assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("partial");
+  }
+
+  @Test
+  public void read_fileCreatedWhileWaiting_readsFile() throws Exception {
+    File file = new File(tempFolder.getRoot(), "created_later");
+    WriterFuture writer = new WriterFuture();
+    Future<String> read = readAllAsync(file, writer);
+
+    writer.awaitReaderWaiting();
+    append(file, "late");
+    writer.finish();
+
+    assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("late");
+  }
+
+  @Test
+  public void read_fileNeverCreated_returnsEndOfStreamOnceFinished() throws Exception {
+    File file = new File(tempFolder.getRoot(), "never_created");
+    WriterFuture writer = new WriterFuture();
+    Future<String> read = readAllAsync(file, writer);
+
+    writer.awaitReaderWaiting();
+    writer.finish();
+
+    assertThat(read.get(10, TimeUnit.SECONDS)).isEmpty();
+  }
+
+  private Future<String> readAllAsync(File file, Future<?> writer) {
+    return executor.submit(
+        () -> {
+          try (InputStream in = new GrowingFileInputStream(file, writer)) {
+            return new String(in.readAllBytes(), UTF_8);
+          }
+        });
+  }
+
+  private static void append(File file, String data) throws IOException {
+    Files.writeString(
+        file.toPath(), data, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * A future representing the writer, which allows tests to wait until the reader has reached the
+   * end of the file and is waiting for more data.
+   */
+  private static class WriterFuture extends AbstractFuture<Void> {
+    private volatile CountDownLatch readerWaiting = new CountDownLatch(1);
+
+    @Override
+    public Void get(long timeout, TimeUnit unit)
+        throws InterruptedException, TimeoutException, ExecutionException {
+      readerWaiting.countDown();
+      return super.get(timeout, unit);
+    }
+
+    void awaitReaderWaiting() throws InterruptedException {
+      assertThat(readerWaiting.await(10, TimeUnit.SECONDS)).isTrue();
+      readerWaiting = new CountDownLatch(1);
+    }
+
+    void finish() {
+      set(null);
+    }
+
+    void fail(Throwable t) {
+      setException(t);
+    }
+  }
+}
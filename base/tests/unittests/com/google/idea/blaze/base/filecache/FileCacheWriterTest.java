@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.idea.blaze.base.command.buildresult.LocalFileArtifact;
+import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.google.idea.testing.IntellijRule;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link FileCacheWriter} */
+@RunWith(JUnit4.class)
+public class FileCacheWriterTest {
+  @Rule public final IntellijRule intellij = new IntellijRule();
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    intellij.registerApplicationService(ExperimentService.class, new MockExperimentService());
+  }
+
+  @Test
+  public void testLocalArtifactReplacesExistingFile() throws Exception {
+    Path source = tempFolder.newFile("source.jar").toPath();
+    Files.write(source, "contents".getBytes(UTF_8));
+    Path destination = tempFolder.newFile("cached.jar").toPath();
+    Files.write(destination, "stale".getBytes(UTF_8));
+    LocalFileArtifact artifact = mock(LocalFileArtifact.class);
+    when(artifact.getFile()).thenReturn(source.toFile());
+
+    FileCacheWriter writer = new FileCacheWriter();
+    writer.write(artifact, destination);
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo("contents".getBytes(UTF_8));
+    assertThat(writer.getBytesCopied() + writer.getBytesLinked()).isEqualTo(8);
+  }
+
+  @Test
+  public void testRemoteArtifactIsCopied() throws Exception {
+    Path destination = tempFolder.getRoot().toPath().resolve("cached.jar");
+    RemoteOutputArtifact artifact = mock(RemoteOutputArtifact.class);
+    when(artifact.getInputStream()).thenReturn(new ByteArrayInputStream("remote".getBytes(UTF_8)));
+
+    FileCacheWriter writer = new FileCacheWriter();
+    writer.write(artifact, destination);
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo("remote".getBytes(UTF_8));
+    assertThat(writer.getBytesCopied()).isEqualTo(6);
+    assertThat(writer.getBytesLinked()).isEqualTo(0);
+  }
+}
@@ -499,6 +499,32 @@ public class BlazeIssueParserTest extends BlazeTestCase {
     assertThat(issue.getKind()).isEqualTo(Kind.ERROR);
   }
 
+  @Test
+  public void testLiteralPrefix() {
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("^ERROR: (/.*?BUILD):([0-9]+)"))
+        .isEqualTo("ERROR: ");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("no such target '(.*)': target"))
+        .isEqualTo("no such target '");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("^File \"([^:]*\\.py)\""))
+        .isEqualTo("File \"");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("Traceback \\(most recent"))
+        .isEqualTo("Traceback (most recent");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("ab*c")).isEqualTo("a");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("ab{2}c")).isEqualTo("a");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("abc\\d")).isEqualTo("abc");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("abc|def")).isEmpty();
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("(abc|def)|ghi")).isEmpty();
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("ab(c|d)")).isEqualTo("ab");
+    assertThat(BlazeIssueParser.SingleLineParser.literalPrefix("^([^:]+):([0-9]+)")).isEmpty();
+  }
+
+  @Test
+  public void testLinesWithoutLiteralPrefixAreSkipped() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(ImmutableList.of(new TestParser()));
+    assertThat(blazeIssueParser.parseIssue("NOT TEST message")).isNull();
+    assertThat(blazeIssueParser.parseIssue("TEST message")).isNotNull();
+  }
+
   /** Simple Parser for testing */
   private static class TestParser extends BlazeIssueParser.SingleLineParser {
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SectionedProjectDataFile}. */
+@RunWith(JUnit4.class)
+public class SectionedProjectDataFileTest extends BlazeTestCase {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> kindProvider =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    kindProvider.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    TargetMapBuilder builder = TargetMapBuilder.builder();
+    // Enough targets to need several sections.
+    for (int i = 0; i < 12000; i++) {
+      builder.addTarget(
+          TargetIdeInfo.builder()
+              .setBuildFile(ArtifactLocation.builder().setRelativePath("p" + i + "/BUILD").build())
+              .setLabel("//p" + i + ":t")
+              .setKind("proto_library")
+              .addDependency("//p" + (i + 1) + ":t"));
+    }
+    TargetMap targetMap = builder.build();
+    ProjectData.BlazeProjectData projectData =
+        ProjectData.BlazeProjectData.newBuilder()
+            .setBlazeInfo(
+                ProjectData.BlazeInfo.newBuilder().putBlazeInfo("output_base", "/output_base"))
+            .build();
+    File file = tempFolder.newFile("cache.dat.gz");
+
+    SectionedProjectDataFile.write(
+        file, projectData, targetMap, MoreExecutors.newDirectExecutorService());
+    SectionedProjectDataFile.Contents contents =
+        SectionedProjectDataFile.read(file, MoreExecutors.newDirectExecutorService());
+
+    assertThat(SectionedProjectDataFile.isSectionedFile(file)).isTrue();
+    assertThat(contents.projectData).isEqualTo(projectData);
+    assertThat(contents.targetMap.map()).isEqualTo(targetMap.map());
+  }
+
+  @Test
+  public void testRewriteReplacesFile() throws IOException {
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(ArtifactLocation.builder().setRelativePath("p/BUILD").build())
+                    .setLabel("//p:t")
+                    .setKind("proto_library"))
+            .build();
+    File file = tempFolder.newFile("cache.dat.gz");
+
+    SectionedProjectDataFile.write(
+        file,
+        ProjectData.BlazeProjectData.getDefaultInstance(),
+        new TargetMap(ImmutableMap.of()),
+        MoreExecutors.newDirectExecutorService());
+    SectionedProjectDataFile.read(file, MoreExecutors.newDirectExecutorService());
+    SectionedProjectDataFile.write(
+        file,
+        ProjectData.BlazeProjectData.getDefaultInstance(),
+        targetMap,
+        MoreExecutors.newDirectExecutorService());
+    SectionedProjectDataFile.Contents contents =
+        SectionedProjectDataFile.read(file, MoreExecutors.newDirectExecutorService());
+
+    assertThat(contents.targetMap.map()).isEqualTo(targetMap.map());
+    // The temporary file the data was written to has been moved over the original.
+    assertThat(tempFolder.getRoot().list()).asList().containsExactly("cache.dat.gz");
+  }
+
+  @Test
+  public void testLegacyFileIsNotSectioned() throws IOException {
+    File file = tempFolder.newFile("cache.dat.gz");
+    try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+      ProjectData.BlazeProjectData.getDefaultInstance().writeTo(out);
+    }
+    assertThat(SectionedProjectDataFile.isSectionedFile(file)).isFalse();
+    assertThrows(
+        IOException.class,
+        () -> SectionedProjectDataFile.read(file, MoreExecutors.newDirectExecutorService()));
+  }
+}
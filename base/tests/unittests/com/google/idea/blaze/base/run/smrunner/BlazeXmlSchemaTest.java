@@ -212,6 +212,24 @@ public class BlazeXmlSchemaTest {
     assertThat(BlazeXmlSchema.getErrorContent(testCase.errors.get(0))).isNull();
   }
 
+  @Test
+  public void testUnknownElementsAreSkipped() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.google.ConfigTest' tests='1'>",
+            "    <properties><property name='testcase' value='ignored'/></properties>",
+            "    <testcase name='testCase1' status='run' time='1'>",
+            "      <properties><testcase name='notATestCase'/></properties>",
+            "    </testcase>",
+            "  </testsuite>",
+            "</testsuites>");
+
+    TestSuite testSuite = Iterables.getOnlyElement(parsed.testSuites);
+    assertThat(Iterables.getOnlyElement(testSuite.testCases).name).isEqualTo("testCase1");
+  }
+
   private static TestSuite parseXml(String... lines) {
     InputStream stream =
         new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
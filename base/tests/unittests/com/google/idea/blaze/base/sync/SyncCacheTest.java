@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SyncCache}. */
+@RunWith(JUnit4.class)
+public class SyncCacheTest extends BlazeTestCase {
+
+  private final AtomicInteger computeCount = new AtomicInteger();
+  private SyncCache syncCache;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    projectServices.register(
+        BlazeProjectDataManager.class,
+        new MockBlazeProjectDataManager(
+            MockBlazeProjectDataBuilder.builder(new WorkspaceRoot(new File("/"))).build()));
+    syncCache = new SyncCache(project);
+  }
+
+  @Test
+  public void valueIsOnlyComputedOnce() {
+    assertThat(syncCache.get("key", (p, pd) -> "value" + computeCount.incrementAndGet()))
+        .isEqualTo("value1");
+    assertThat(syncCache.get("key", (p, pd) -> "value" + computeCount.incrementAndGet()))
+        .isEqualTo("value1");
+    assertThat(computeCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void nullValueIsCached() {
+    assertThat(syncCache.<String>get("key", (p, pd) -> countAndReturn(null))).isNull();
+    assertThat(syncCache.<String>get("key", (p, pd) -> countAndReturn(null))).isNull();
+    assertThat(computeCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void keysAreComputedSeparately() {
+    assertThat(syncCache.get("one", (p, pd) -> countAndReturn("1"))).isEqualTo("1");
+    assertThat(syncCache.get("two", (p, pd) -> countAndReturn("2"))).isEqualTo("2");
+    assertThat(computeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void failedComputationIsRetried() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            syncCache.get(
+                "key",
+                (p, pd) -> {
+                  throw new IllegalStateException();
+                }));
+
+    assertThat(syncCache.get("key", (p, pd) -> countAndReturn("value"))).isEqualTo("value");
+  }
+
+  @Test
+  public void clear_valuesAreRecomputed() {
+    syncCache.get("key", (p, pd) -> countAndReturn("value"));
+    syncCache.clear();
+    syncCache.get("key", (p, pd) -> countAndReturn("value"));
+
+    assertThat(computeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void stats_countHitsPerKey() {
+    syncCache.get("one", (p, pd) -> countAndReturn("1"));
+    syncCache.get("one", (p, pd) -> countAndReturn("1"));
+    syncCache.get("one", (p, pd) -> countAndReturn("1"));
+    syncCache.get("two", (p, pd) -> countAndReturn("2"));
+
+    assertThat(syncCache.getStats().keySet()).containsExactly("one", "two");
+    assertThat(syncCache.getStats().get("one").hits()).isEqualTo(2);
+    assertThat(syncCache.getStats().get("two").hits()).isEqualTo(0);
+  }
+
+  private <T> T countAndReturn(T value) {
+    computeCount.incrementAndGet();
+    return value;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.time.Instant;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TargetMapUpdate}. */
+@RunWith(JUnit4.class)
+public class TargetMapUpdateTest extends BlazeTestCase {
+
+  private static final Instant OLD_SYNC = Instant.ofEpochMilli(1000);
+  private static final Instant NEW_SYNC = Instant.ofEpochMilli(2000);
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> kindProvider =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    kindProvider.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testUnchangedMapIsReused() {
+    TargetMap oldMap = TargetMapBuilder.builder().addTarget(target("//a:a")).build();
+    assertThat(new TargetMapUpdate(oldMap).build(NEW_SYNC)).isSameInstanceAs(oldMap);
+  }
+
+  @Test
+  public void testUnchangedIncrementalSyncReusesTargets() {
+    TargetMap oldMap =
+        TargetMapBuilder.builder().addTarget(target("//a:a")).addTarget(target("//b:b")).build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.markAllSynced();
+
+    TargetMap newMap = update.build(NEW_SYNC);
+    assertThat(newMap.map()).isSameInstanceAs(oldMap.map());
+    assertThat(newMap.get(key("//a:a"))).isSameInstanceAs(oldMap.get(key("//a:a")));
+    assertThat(newMap.get(key("//b:b"))).isSameInstanceAs(oldMap.get(key("//b:b")));
+    assertThat(newMap.getSyncTime(key("//a:a"))).isEqualTo(NEW_SYNC);
+    assertThat(newMap.getSyncTime(key("//b:b"))).isEqualTo(NEW_SYNC);
+    assertThat(newMap.toTargetInfo(newMap.get(key("//a:a"))).syncTime).isEqualTo(NEW_SYNC);
+  }
+
+  @Test
+  public void testPartialSyncUpdatesSyncTimeOfBuiltTargetsOnly() {
+    TargetMap oldMap =
+        TargetMapBuilder.builder().addTarget(target("//a:a")).addTarget(target("//b:b")).build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.markSynced(key("//a:a"));
+
+    TargetMap newMap = update.build(NEW_SYNC);
+    assertThat(newMap.map()).isSameInstanceAs(oldMap.map());
+    assertThat(newMap.getSyncTime(key("//a:a"))).isEqualTo(NEW_SYNC);
+    assertThat(newMap.getSyncTime(key("//b:b"))).isEqualTo(OLD_SYNC);
+  }
+
+  @Test
+  public void testSyncTimeIsSerialized() {
+    TargetMap oldMap =
+        TargetMapBuilder.builder().addTarget(target("//a:a")).addTarget(target("//b:b")).build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.markSynced(key("//a:a"));
+
+    TargetMap deserialized = TargetMap.fromProto(update.build(NEW_SYNC).toProto());
+    assertThat(deserialized.getSyncTime(key("//a:a"))).isEqualTo(NEW_SYNC);
+    assertThat(deserialized.getSyncTime(key("//b:b"))).isEqualTo(OLD_SYNC);
+  }
+
+  @Test
+  public void testAddRemoveAndSync() {
+    TargetMap oldMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//a:a"))
+            .addTarget(target("//b:b"))
+            .addTarget(target("//c:c"))
+            .build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.remove(key("//b:b"));
+    update.put(key("//d:d"), target("//d:d").setSyncTime(NEW_SYNC).build());
+    update.markSynced(key("//a:a"));
+
+    assertThat(update.size()).isEqualTo(3);
+    assertThat(update.get(key("//b:b"))).isNull();
+    assertThat(update.putIfAbsent(key("//c:c"), target("//c:c").build()))
+        .isSameInstanceAs(oldMap.get(key("//c:c")));
+
+    TargetMap newMap = update.build(NEW_SYNC);
+    assertThat(newMap.map().keySet()).containsExactly(key("//a:a"), key("//c:c"), key("//d:d"));
+    assertThat(newMap.get(key("//a:a"))).isSameInstanceAs(oldMap.get(key("//a:a")));
+    assertThat(newMap.getSyncTime(key("//a:a"))).isEqualTo(NEW_SYNC);
+    assertThat(newMap.get(key("//c:c"))).isSameInstanceAs(oldMap.get(key("//c:c")));
+    assertThat(newMap.getSyncTime(key("//c:c"))).isEqualTo(OLD_SYNC);
+    assertThat(newMap.getSyncTime(key("//d:d"))).isEqualTo(NEW_SYNC);
+    assertThat(newMap.getSyncTime(key("//b:b"))).isNull();
+  }
+
+  @Test
+  public void testRemovedTargetCanBeReAdded() {
+    TargetMap oldMap = TargetMapBuilder.builder().addTarget(target("//a:a")).build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.remove(key("//a:a"));
+    TargetIdeInfo readded = target("//a:a").build();
+    update.put(key("//a:a"), readded);
+
+    assertThat(update.build(NEW_SYNC).get(key("//a:a"))).isSameInstanceAs(readded);
+  }
+
+  @Test
+  public void testChangedTargetsAreRecorded() {
+    TargetMap oldMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//a:a").addDependency("//b:b"))
+            .addTarget(target("//b:b"))
+            .addTarget(target("//c:c").addDependency("//b:b"))
+            .build();
+    TargetMapUpdate update = new TargetMapUpdate(oldMap);
+    update.remove(key("//a:a"));
+    update.put(key("//a:a"), target("//a:a").build());
+    update.remove(key("//c:c"));
+    update.put(key("//d:d"), target("//d:d").build());
+    update.markAllSynced();
+
+    TargetMap newMap = update.build(NEW_SYNC);
+    TargetMap.Changes changes = newMap.getChangesSince(oldMap.version());
+    assertThat(changes).isNotNull();
+    assertThat(changes.previousDependencies())
+        .containsExactly(
+            key("//a:a"), ImmutableList.of(key("//b:b")),
+            key("//c:c"), ImmutableList.of(key("//b:b")),
+            key("//d:d"), ImmutableList.of());
+    assertThat(newMap.filter(k -> true).getChangesSince(oldMap.version())).isNull();
+  }
+
+  private static TargetIdeInfo.Builder target(String label) {
+    return TargetIdeInfo.builder().setLabel(label).setKind("proto_library").setSyncTime(OLD_SYNC);
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Joiner;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.protobuf.TextFormat;
+import java.io.StringReader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link JsonProtoParser}. */
+@RunWith(JUnit4.class)
+public class JsonProtoParserTest {
+
+  @Test
+  public void testMatchesTextFormat() throws Exception {
+    String text =
+        Joiner.on('\n')
+            .join(
+                "kind_string: \"java_library\"",
+                "key { label: \"//foo:bar\" aspect_ids: \"aspect1\" }",
+                "build_file_artifact_location { relative_path: \"foo/BUILD\" is_source: true }",
+                "deps { target { label: \"//foo:baz\" } dependency_type: 1 }",
+                "deps { target { label: \"//foo:qux\" } dependency_type: 0 }",
+                "tags: \"manual\"",
+                "tags: \"no-ide\"",
+                "java_ide_info { main_class: \"foo.Main\" }");
+    String json =
+        "{\"kind_string\": \"java_library\","
+            + " \"key\": {\"label\": \"//foo:bar\", \"aspect_ids\": [\"aspect1\"]},"
+            + " \"build_file_artifact_location\": {\"relative_path\": \"foo/BUILD\","
+            + " \"is_source\": true},"
+            + " \"deps\": ["
+            + "{\"target\": {\"label\": \"//foo:baz\"}, \"dependency_type\": 1},"
+            + " {\"target\": {\"label\": \"//foo:qux\"}, \"dependency_type\": 0}],"
+            + " \"tags\": [\"manual\", \"no-ide\"],"
+            + " \"java_ide_info\": {\"main_class\": \"foo.Main\"}}";
+
+    TargetIdeInfo.Builder fromText = TargetIdeInfo.newBuilder();
+    TextFormat.merge(text, fromText);
+    TargetIdeInfo.Builder fromJson = TargetIdeInfo.newBuilder();
+    JsonProtoParser.merge(new StringReader(json), fromJson);
+
+    assertThat(fromJson.build()).isEqualTo(fromText.build());
+  }
+
+  @Test
+  public void testIgnoresUnknownFieldsAndNulls() throws Exception {
+    String json =
+        "{\"kind_string\": \"java_library\", \"no_such_field\": {\"a\": [1, 2]},"
+            + " \"test_info\": null, \"tags\": [\"a\", null]}";
+
+    TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
+    JsonProtoParser.merge(new StringReader(json), builder);
+
+    assertThat(builder.build())
+        .isEqualTo(TargetIdeInfo.newBuilder().setKindString("java_library").addTags("a").build());
+  }
+}
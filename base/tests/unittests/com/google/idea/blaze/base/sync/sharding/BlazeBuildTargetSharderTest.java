@@ -140,7 +140,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             target("-//java/com/google:six"));
     ShardedTargetList shards =
         BlazeBuildTargetSharder.shardSingleTargets(
-            targets, SyncStrategy.SERIAL, /* shardSize= */ 3);
+            getProject(), targets, SyncStrategy.SERIAL, /* shardSize= */ 3);
 
     assertThat(shards.shardedTargets).hasSize(1);
     assertThat(shards.shardedTargets.get(0)).containsExactly(target("//java/com/google:two"));
@@ -157,7 +157,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             target("-//java/com/foo/..."));
     ShardedTargetList shards =
         BlazeBuildTargetSharder.shardSingleTargets(
-            targets, SyncStrategy.SERIAL, /* shardSize= */ 2);
+            getProject(), targets, SyncStrategy.SERIAL, /* shardSize= */ 2);
     assertThat(shards.shardedTargets).hasSize(1);
     assertThat(shards.shardedTargets.get(0))
         .containsExactly(target("//java/com/bar:target"), target("//java/com/baz:target"))
@@ -175,7 +175,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             target("//java/com/google:two"));
     ShardedTargetList shards =
         BlazeBuildTargetSharder.shardSingleTargets(
-            targets, SyncStrategy.SERIAL, /* shardSize= */ 3);
+            getProject(), targets, SyncStrategy.SERIAL, /* shardSize= */ 3);
     assertThat(shards.shardedTargets).hasSize(1);
     assertThat(shards.shardedTargets.get(0))
         .containsExactly(target("//java/com/google:one"), target("//java/com/google:two"));
@@ -273,7 +273,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
         expandAndShardTargets(SyncStrategy.SERIAL, ProjectView.builder().build(), targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
     assertThat(result.buildResult.exitCode).isEqualTo(0);
-    assertThat(result.shardedTargets.shardStats.shardingApproach())
+    assertThat(result.shardedTargets.shardStats().shardingApproach())
         .isEqualTo(ShardingApproach.PARTITION_WITHOUT_EXPANDING);
   }
 
@@ -287,7 +287,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
         expandAndShardTargets(SyncStrategy.PARALLEL, ProjectView.builder().build(), targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
     assertThat(result.buildResult.exitCode).isEqualTo(0);
-    assertThat(result.shardedTargets.shardStats.shardingApproach())
+    assertThat(result.shardedTargets.shardStats().shardingApproach())
         .isEqualTo(ShardingApproach.BUILD_TARGET_BATCHING_SERVICE);
   }
 
@@ -307,7 +307,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
     assertThat(result.buildResult.exitCode).isEqualTo(0);
-    ShardStats shardStats = result.shardedTargets.shardStats;
+    ShardStats shardStats = result.shardedTargets.shardStats();
     assertThat(shardStats.shardingApproach())
         .isEqualTo(ShardingApproach.LEXICOGRAPHIC_TARGET_SHARDER);
   }
@@ -329,7 +329,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
     assertThat(result.buildResult.exitCode).isEqualTo(BuildResult.FATAL_ERROR.exitCode);
-    assertThat(result.shardedTargets.shardStats.shardingApproach())
+    assertThat(result.shardedTargets.shardStats().shardingApproach())
         .isEqualTo(ShardingApproach.ERROR);
   }
 
@@ -350,7 +350,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
             targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
     assertThat(result.buildResult.exitCode).isEqualTo(0);
-    assertThat(result.shardedTargets.shardStats.shardingApproach())
+    assertThat(result.shardedTargets.shardStats().shardingApproach())
         .isEqualTo(ShardingApproach.ERROR);
   }
 
@@ -377,7 +377,7 @@ public class BlazeBuildTargetSharderTest extends BlazeTestCase {
                 .build(),
             targets, fakeWildCardTargetExpanderBlazeCommandRunner);
 
-    ShardStats shardStats = result.shardedTargets.shardStats;
+    ShardStats shardStats = result.shardedTargets.shardStats();
     assertThat(shardStats.suggestedTargetSizePerShard()).isEqualTo(500);
     assertThat(shardStats.actualTargetSizePerShard()).containsExactly(2);
     assertThat(result.shardedTargets.shardedTargets)
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.sharding.CostAwareTargetSharder.Packing;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CostAwareTargetSharder} and {@link TargetBuildCostStore}. */
+@RunWith(JUnit4.class)
+public class CostAwareTargetSharderTest {
+
+  private static final Label SLOW = Label.create("//java/com/google:slow");
+  private static final Label MEDIUM = Label.create("//java/com/google:medium");
+  private static final Label FAST_ONE = Label.create("//java/com/google/fast:one");
+  private static final Label FAST_TWO = Label.create("//java/com/google/fast:two");
+  private static final Label FAST_THREE = Label.create("//java/com/google/fast:three");
+
+  private static final ImmutableMap<Label, Double> COSTS =
+      ImmutableMap.of(
+          SLOW, 100.0, MEDIUM, 60.0, FAST_ONE, 30.0, FAST_TWO, 20.0, FAST_THREE, 10.0);
+
+  @Test
+  public void pack_balancesShardCosts() {
+    Packing packing = CostAwareTargetSharder.pack(COSTS.keySet(), COSTS::get, 2, 5);
+
+    assertThat(packing.shards)
+        .containsExactly(
+            ImmutableList.of(FAST_THREE, SLOW), ImmutableList.of(FAST_ONE, FAST_TWO, MEDIUM));
+    assertThat(packing.predictedDurations)
+        .containsExactly(Duration.ofMillis(110), Duration.ofMillis(110));
+  }
+
+  @Test
+  public void pack_respectsMaximumShardSize() {
+    Packing packing = CostAwareTargetSharder.pack(COSTS.keySet(), COSTS::get, 3, 2);
+
+    assertThat(packing.shards).hasSize(3);
+    assertThat(packing.shards.stream().mapToInt(ImmutableList::size).max().getAsInt())
+        .isAtMost(2);
+    assertThat(packing.shards.stream().mapToInt(ImmutableList::size).sum()).isEqualTo(5);
+  }
+
+  @Test
+  public void pack_dropsEmptyShards() {
+    Packing packing = CostAwareTargetSharder.pack(ImmutableSet.of(SLOW), COSTS::get, 3, 2);
+
+    assertThat(packing.shards).containsExactly(ImmutableList.of(SLOW));
+    assertThat(packing.predictedDurations).containsExactly(Duration.ofMillis(100));
+  }
+
+  @Test
+  public void estimate_fallsBackToPackageThenOverallAverage() {
+    TargetBuildCosts costs =
+        new TargetBuildCosts(
+            ImmutableMap.of(
+                FAST_ONE.toString(), 30L, FAST_TWO.toString(), 10L, SLOW.toString(), 200L));
+
+    assertThat(costs.estimateMillis(SLOW)).isEqualTo(200.0);
+    assertThat(costs.estimateMillis(FAST_THREE)).isEqualTo(20.0);
+    assertThat(costs.estimateMillis(Label.create("//other:target"))).isEqualTo(80.0);
+  }
+
+  @Test
+  public void recordShardDuration_sharesTimeByPreviousEstimates() {
+    Map<String, Long> costs = new HashMap<>();
+    costs.put(FAST_ONE.toString(), 30L);
+    costs.put(FAST_TWO.toString(), 10L);
+    TargetBuildCosts previous = new TargetBuildCosts(costs);
+
+    TargetBuildCostStore.recordShardDuration(
+        costs, previous, ImmutableList.of(FAST_ONE, FAST_TWO, FAST_THREE), Duration.ofMillis(600));
+
+    // The shard was predicted to take 30 + 10 + 20 ms, so each target took 10x its estimate.
+    assertThat(costs)
+        .containsExactly(
+            FAST_ONE.toString(), 165L, FAST_TWO.toString(), 55L, FAST_THREE.toString(), 200L);
+  }
+}
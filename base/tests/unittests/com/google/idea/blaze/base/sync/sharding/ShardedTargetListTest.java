@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.bazel.FakeBuildInvoker;
+import com.google.idea.blaze.base.logging.utils.ShardStats.ShardingApproach;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.aspects.BuildResult;
+import com.google.idea.blaze.base.sync.sharding.ShardedTargetList.ShardOutputs;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.project.Project;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Function;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ShardedTargetList}. */
+@RunWith(JUnit4.class)
+public class ShardedTargetListTest extends BlazeTestCase {
+
+  private static final BuildResult OUT_OF_MEMORY = BuildResult.fromExitCode(33);
+
+  private static final ImmutableList<Label> SHARD_ONE = ImmutableList.of(Label.create("//a:one"));
+  private static final ImmutableList<Label> SHARD_TWO = ImmutableList.of(Label.create("//a:two"));
+  private static final ImmutableList<Label> SHARD_THREE =
+      ImmutableList.of(Label.create("//a:three"));
+
+  private final MockExperimentService experimentService = new MockExperimentService();
+  private RecordingCostStore costStore;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    applicationServices.register(ExperimentService.class, experimentService);
+    projectServices.register(
+        BlazeImportSettingsManager.class, new BlazeImportSettingsManager(getProject()));
+    costStore = new RecordingCostStore(getProject());
+    projectServices.register(TargetBuildCostStore.class, costStore);
+    experimentService.setExperiment(ShardedTargetList.pipelinedShardBuilds, true);
+  }
+
+  @Test
+  public void pipelined_shardsBuiltAndProcessedInOrder() {
+    FakeShardInvocation invocation =
+        new FakeShardInvocation(BuildResult.SUCCESS, BuildResult.SUCCESS, BuildResult.SUCCESS);
+
+    BuildResult result = run(invocation);
+
+    assertThat(result).isEqualTo(BuildResult.SUCCESS);
+    assertThat(invocation.built).containsExactly(SHARD_ONE, SHARD_TWO, SHARD_THREE).inOrder();
+    assertThat(invocation.processed).containsExactly(SHARD_ONE, SHARD_TWO, SHARD_THREE).inOrder();
+  }
+
+  @Test
+  public void pipelined_fatalError_laterShardsNotBuilt() {
+    FakeShardInvocation invocation =
+        new FakeShardInvocation(BuildResult.SUCCESS, BuildResult.FATAL_ERROR, BuildResult.SUCCESS);
+
+    BuildResult result = run(invocation);
+
+    assertThat(result.status).isEqualTo(BuildResult.Status.FATAL_ERROR);
+    assertThat(invocation.built).containsExactly(SHARD_ONE, SHARD_TWO).inOrder();
+    assertThat(invocation.processed).containsExactly(SHARD_ONE, SHARD_TWO).inOrder();
+  }
+
+  @Test
+  public void pipelined_outOfMemoryAfterFirstShard_shardRetried() {
+    FakeShardInvocation invocation =
+        new FakeShardInvocation(
+            BuildResult.SUCCESS, OUT_OF_MEMORY, BuildResult.SUCCESS, BuildResult.SUCCESS);
+
+    BuildResult result = run(invocation);
+
+    assertThat(result).isEqualTo(BuildResult.SUCCESS);
+    assertThat(invocation.built)
+        .containsExactly(SHARD_ONE, SHARD_TWO, SHARD_TWO, SHARD_THREE)
+        .inOrder();
+  }
+
+  @Test
+  public void pipelined_outOfMemoryOnFirstShard_notRetried() {
+    FakeShardInvocation invocation =
+        new FakeShardInvocation(OUT_OF_MEMORY, BuildResult.SUCCESS, BuildResult.SUCCESS);
+
+    BuildResult result = run(invocation);
+
+    assertThat(result.outOfMemory()).isTrue();
+    assertThat(invocation.built).containsExactly(SHARD_ONE);
+  }
+
+  @Test
+  public void costAwareShardingDisabled_shardDurationsNotRecorded() {
+    experimentService.setExperiment(CostAwareTargetSharder.enabled, false);
+
+    run(new FakeShardInvocation(BuildResult.SUCCESS, BuildResult.SUCCESS, BuildResult.SUCCESS));
+
+    assertThat(costStore.recordedShards).isEmpty();
+  }
+
+  @Test
+  public void costAwareShardingEnabled_shardDurationsRecorded() {
+    experimentService.setExperiment(CostAwareTargetSharder.enabled, true);
+
+    run(new FakeShardInvocation(BuildResult.SUCCESS, BuildResult.SUCCESS, BuildResult.SUCCESS));
+
+    assertThat(costStore.recordedShards).containsExactly(SHARD_ONE, SHARD_TWO, SHARD_THREE);
+  }
+
+  private BuildResult run(FakeShardInvocation invocation) {
+    ShardedTargetList shardedTargets =
+        new ShardedTargetList(
+            ImmutableList.of(SHARD_ONE, SHARD_TWO, SHARD_THREE),
+            ShardingApproach.LEXICOGRAPHIC_TARGET_SHARDER,
+            1);
+    return shardedTargets.runShardedCommand(
+        getProject(),
+        BlazeContext.create(),
+        i -> "Building shard " + i,
+        invocation,
+        FakeBuildInvoker.builder().build(),
+        /* invokeParallel= */ false);
+  }
+
+  /** Records the shards whose durations are recorded, rather than persisting them. */
+  private static class RecordingCostStore extends TargetBuildCostStore {
+    final List<List<? extends TargetExpression>> recordedShards = new ArrayList<>();
+
+    RecordingCostStore(Project project) {
+      super(project);
+    }
+
+    @Override
+    synchronized void recordShardDurations(
+        List<? extends List<? extends TargetExpression>> shards, List<Duration> durations) {
+      recordedShards.addAll(shards);
+    }
+  }
+
+  /** Returns the given build results in turn, recording the shards built and processed. */
+  private static class FakeShardInvocation
+      implements Function<List<? extends TargetExpression>, ShardOutputs> {
+    private final Queue<BuildResult> buildResults;
+    final List<List<? extends TargetExpression>> built = new ArrayList<>();
+    final List<List<? extends TargetExpression>> processed =
+        Collections.synchronizedList(new ArrayList<>());
+
+    FakeShardInvocation(BuildResult... buildResults) {
+      this.buildResults = new ArrayDeque<>(Arrays.asList(buildResults));
+    }
+
+    @Override
+    public ShardOutputs apply(List<? extends TargetExpression> targets) {
+      built.add(targets);
+      BuildResult result = buildResults.remove();
+      return ShardOutputs.of(
+          result,
+          () -> {
+            processed.add(targets);
+            return result;
+          });
+    }
+  }
+}
@@ -17,6 +17,8 @@ package com.google.idea.blaze.base.targetmaps;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
@@ -68,9 +70,7 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(targetMap);
     assertThat(reverseDependencies)
         .containsEntry(
             TargetKey.forPlainTarget(Label.create("//l:l2")),
@@ -101,9 +101,7 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(targetMap);
     assertThat(reverseDependencies)
         .containsEntry(
             TargetKey.forPlainTarget(Label.create("//l:l2")),
@@ -138,9 +136,7 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(targetMap);
     assertThat(reverseDependencies)
         .containsEntry(
             TargetKey.forPlainTarget(Label.create("//l:l3")),
@@ -187,9 +183,7 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(targetMap);
     assertThat(reverseDependencies)
         .containsEntry(
             TargetKey.forPlainTarget(Label.create("//l:l3")),
@@ -208,6 +202,121 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
             TargetKey.forPlainTarget(Label.create("//l:l5")));
   }
 
+  @Test
+  public void testIncrementalUpdate() {
+    TargetMapBuilder before = TargetMapBuilder.builder();
+    for (int i = 0; i < 20; i++) {
+      before.addTarget(chainTarget(i, i + 1));
+    }
+    TargetMapBuilder after = TargetMapBuilder.builder();
+    after.addTarget(chainTarget(0, 5));
+    for (int i = 1; i < 20; i++) {
+      if (i != 10) {
+        after.addTarget(chainTarget(i, i + 1));
+      }
+    }
+    after.addTarget(chainTarget(20, 3));
+    TargetMap afterMap = after.build();
+
+    createRdepsMap(before.build());
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(afterMap);
+
+    assertThat(reverseDependencies).containsExactlyEntriesIn(recalculatedRdeps(afterMap));
+    assertThat(reverseDependencies).containsEntry(chainKey(20), chainKey(19));
+    assertThat(reverseDependencies).containsEntry(chainKey(5), chainKey(0));
+    assertThat(reverseDependencies).containsEntry(chainKey(5), chainKey(4));
+    assertThat(reverseDependencies).containsEntry(chainKey(3), chainKey(20));
+    assertThat(reverseDependencies).doesNotContainKey(chainKey(1));
+    assertThat(reverseDependencies).doesNotContainKey(chainKey(10));
+  }
+
+  @Test
+  public void testIncrementalUpdateWithChangesReportedBySync() {
+    TargetMapBuilder before = TargetMapBuilder.builder();
+    for (int i = 0; i < 20; i++) {
+      before.addTarget(chainTarget(i, i + 1));
+    }
+    TargetMap beforeMap = before.build();
+    TargetMapBuilder after = TargetMapBuilder.builder();
+    after.addTarget(chainTarget(0, 5));
+    for (int i = 1; i < 20; i++) {
+      if (i != 10) {
+        after.addTarget(chainTarget(i, i + 1));
+      }
+    }
+    after.addTarget(chainTarget(20, 3));
+    TargetMap afterMap =
+        new TargetMap(
+            after.build().map(),
+            null,
+            ImmutableMap.of(),
+            new TargetMap.Changes(
+                beforeMap,
+                ImmutableMap.of(
+                    chainKey(0), ImmutableList.of(chainKey(1)),
+                    chainKey(10), ImmutableList.of(chainKey(11)),
+                    chainKey(20), ImmutableList.of())));
+
+    createRdepsMap(beforeMap);
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies = createRdepsMap(afterMap);
+
+    assertThat(reverseDependencies).containsExactlyEntriesIn(recalculatedRdeps(afterMap));
+    assertThat(reverseDependencies).containsEntry(chainKey(20), chainKey(19));
+    assertThat(reverseDependencies).containsEntry(chainKey(5), chainKey(0));
+    assertThat(reverseDependencies).containsEntry(chainKey(3), chainKey(20));
+    assertThat(reverseDependencies).doesNotContainKey(chainKey(1));
+    assertThat(reverseDependencies).doesNotContainKey(chainKey(10));
+  }
+
+  @Test
+  public void testChangedTargetsWithSameDependenciesKeepRdeps() {
+    TargetMapBuilder before = TargetMapBuilder.builder();
+    for (int i = 0; i < 20; i++) {
+      before.addTarget(chainTarget(i, i + 1));
+    }
+    TargetMap beforeMap = before.build();
+    TargetMapBuilder after = TargetMapBuilder.builder();
+    for (int i = 0; i < 20; i++) {
+      after.addTarget(chainTarget(i, i + 1));
+    }
+    TargetMap afterMap =
+        new TargetMap(
+            after.build().map(),
+            null,
+            ImmutableMap.of(),
+            new TargetMap.Changes(
+                beforeMap, ImmutableMap.of(chainKey(5), ImmutableList.of(chainKey(6)))));
+
+    ImmutableMultimap<TargetKey, TargetKey> beforeRdeps = createRdepsMap(beforeMap);
+    ImmutableMultimap<TargetKey, TargetKey> afterRdeps = createRdepsMap(afterMap);
+
+    assertThat(afterRdeps).isEqualTo(beforeRdeps);
+  }
+
+  private ImmutableMultimap<TargetKey, TargetKey> createRdepsMap(TargetMap targetMap) {
+    return ReverseDependencyMap.createRdepsMap(
+            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build())
+        .toMultimap();
+  }
+
+  private static ImmutableMultimap<TargetKey, TargetKey> recalculatedRdeps(TargetMap targetMap) {
+    return ReverseDependencyMap.Snapshot.create(targetMap)
+        .reverseDependencies(targetMap)
+        .toMultimap();
+  }
+
+  private static TargetIdeInfo.Builder chainTarget(int index, int dependency) {
+    return TargetIdeInfo.builder()
+        .setBuildFile(sourceRoot("test/BUILD"))
+        .setLabel("//l:l" + index)
+        .setKind("proto_library")
+        .addDependency("//l:l" + dependency);
+  }
+
+  private static TargetKey chainKey(int index) {
+    return TargetKey.forPlainTarget(Label.create("//l:l" + index));
+  }
+
   private static ArtifactLocation sourceRoot(String relativePath) {
     return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
   }
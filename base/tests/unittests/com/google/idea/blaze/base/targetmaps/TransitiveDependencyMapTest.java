@@ -30,6 +30,7 @@ import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.qsync.settings.QuerySyncSettings;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
 import java.io.File;
@@ -62,6 +63,7 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         BlazeProjectDataManager.class,
         new MockBlazeProjectDataManager(
             MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build()));
+    projectServices.register(SyncCache.class, new SyncCache(project));
     projectServices.register(TransitiveDependencyMap.class, new TransitiveDependencyMap(project));
     transitiveDependencyMap = TransitiveDependencyMap.getInstance(project);
   }
@@ -156,6 +158,37 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     assertThat(transitiveDependencyMap.getTransitiveDependencies(bogus)).isEmpty();
   }
 
+  @Test
+  public void testFilterPossibleTransitiveDeps() {
+    TargetKey diamondA = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:a"));
+    TargetKey diamondBB = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:bb"));
+    TargetKey diamondCC = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:cc"));
+    TargetKey chainD = TargetKey.forPlainTarget(Label.create("//com/google/example/chain:d"));
+    TargetKey bogus = TargetKey.forPlainTarget(Label.create("//com/google/fake:target"));
+
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                diamondBB, ImmutableSet.of(diamondA, diamondBB, diamondCC, chainD, bogus)))
+        .containsExactly(diamondCC);
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                bogus, ImmutableSet.of(diamondA, diamondCC)))
+        .isEmpty();
+  }
+
+  @Test
+  public void testHasDependencyWithCycle() {
+    TargetKey cycleA = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:a"));
+    TargetKey cycleB = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:b"));
+    TargetKey cycleC = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:c"));
+
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleA, cycleA)).isTrue();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleB, cycleA)).isTrue();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleA, cycleC)).isTrue();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleC, cycleA)).isFalse();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleC, cycleC)).isFalse();
+  }
+
   private static TargetMap buildTargetMap() {
     Label simpleA = Label.create("//com/google/example/simple:a");
     Label simpleB = Label.create("//com/google/example/simple:b");
@@ -170,6 +203,9 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     Label diamondC = Label.create("//com/google/example/diamond:c");
     Label diamondCC = Label.create("//com/google/example/diamond:cc");
     Label diamondCCC = Label.create("//com/google/example/diamond:ccc");
+    Label cycleA = Label.create("//com/google/example/cycle:a");
+    Label cycleB = Label.create("//com/google/example/cycle:b");
+    Label cycleC = Label.create("//com/google/example/cycle:c");
     return TargetMapBuilder.builder()
         .addTarget(mockTargetIdeInfoBuilder().setLabel(simpleA).addDependency(simpleB))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(simpleB))
@@ -199,6 +235,13 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondC))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondCC))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondCCC))
+        .addTarget(mockTargetIdeInfoBuilder().setLabel(cycleA).addDependency(cycleB))
+        .addTarget(
+            mockTargetIdeInfoBuilder()
+                .setLabel(cycleB)
+                .addDependency(cycleA)
+                .addDependency(cycleC))
+        .addTarget(mockTargetIdeInfoBuilder().setLabel(cycleC))
         .build();
   }
 
@@ -95,7 +95,7 @@ public class FakeBlazeCommandRunner implements BlazeCommandRunner {
       BuildResultHelper buildResultHelper,
       BlazeContext context)
       throws BuildException {
-    SyncQueryStatsScope.fromContext(context).ifPresent(stats -> stats.setBazelExitCode(0));
+    SyncQueryStatsScope.fromContext(context).ifPresent(stats -> stats.recordBazelExitCode(0));
     return InputStream.nullInputStream();
   }
 
@@ -19,10 +19,17 @@ package com.google.idea.blaze.cpp;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.errorprone.annotations.Keep;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.ideinfo.CIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -43,6 +50,7 @@ import com.intellij.openapi.application.TransactionGuard;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -56,6 +64,7 @@ import com.intellij.util.containers.MultiMap;
 import com.jetbrains.cidr.lang.CLanguageKind;
 import com.jetbrains.cidr.lang.OCLanguageKind;
 import com.jetbrains.cidr.lang.toolchains.CidrCompilerSwitches;
+import com.jetbrains.cidr.lang.toolchains.CidrCompilerSwitches.Format;
 import com.jetbrains.cidr.lang.toolchains.CidrSwitchBuilder;
 import com.jetbrains.cidr.lang.toolchains.CidrToolEnvironment;
 import com.jetbrains.cidr.lang.workspace.OCCompilerSettings;
@@ -78,14 +87,19 @@ import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerKind;
 import com.jetbrains.cidr.lang.workspace.compiler.TempFilesPool;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Main entry point for C/CPP configuration data. */
 public final class BlazeCWorkspace implements ProjectComponent {
@@ -101,6 +115,24 @@ public final class BlazeCWorkspace implements ProjectComponent {
 
   private final Project project;
 
+  // The cache gains an entry for every distinct set of compiler switches it's asked about, so it's
+  // replaced once it holds too many switch sets that the latest sync no longer uses.
+  private static final int MAX_CACHED_SWITCH_SETS_FACTOR = 2;
+
+  // Reused across syncs so that compiler info isn't recalculated for configurations whose compiler
+  // and switches are unchanged. Replaced whenever the toolchains change, or when most of its
+  // entries are for switch sets which are no longer used.
+  @GuardedBy("this")
+  private CompilerInfoCache compilerInfoCache = new CompilerInfoCache();
+
+  @GuardedBy("this")
+  private ImmutableSet<CompilerFingerprint> compilerInfoCacheToolchains = ImmutableSet.of();
+
+  // Hashes of the switch sets the current compiler info cache has been used with. Only used to
+  // decide when to replace the cache, so hash collisions are harmless.
+  @GuardedBy("this")
+  private Set<Integer> compilerInfoCacheSwitchSets = new HashSet<>();
+
   @Keep // Instantiated as an IntelliJ project component.
   private BlazeCWorkspace(Project project) {
     this.configurationResolver = new BlazeConfigurationResolver(project);
@@ -157,7 +189,11 @@ public final class BlazeCWorkspace implements ProjectComponent {
                       calculateConfigurations(
                           blazeProjectData, workspaceRoot, newResult, indicator);
                   ImmutableList<String> issues =
-                      commit(SERIALIZATION_VERSION, model, workspaceRoot);
+                      commit(
+                          SERIALIZATION_VERSION,
+                          model,
+                          workspaceRoot,
+                          getCompilerInfoCache(newResult, model));
                   logger.info(
                       String.format(
                           "Update configurations took %dms", s.elapsed(TimeUnit.MILLISECONDS)));
@@ -239,134 +275,181 @@ public final class BlazeCWorkspace implements ProjectComponent {
             blazeProjectData.getWorkspacePathResolver(),
             blazeProjectData.getTargetMap());
 
-    int progress = 0;
+    IncludeDirectoryCache includeDirectories =
+        new IncludeDirectoryCache(
+            executionRootPathResolver::resolveToIncludeDirectories,
+            configResolveData::isValidHeaderRoot);
 
+    // The compiler options of each configuration are independent, so they're calculated in
+    // parallel. Configurations are then added to the workspace model in order on this thread.
+    AtomicInteger progress = new AtomicInteger();
+    List<ListenableFuture<ConfigurationCompilerOpts>> futures =
+        new ArrayList<>(configurations.size());
     for (BlazeResolveConfiguration resolveConfiguration : configurations) {
-      indicator.setText2(resolveConfiguration.getDisplayName());
-      indicator.setFraction(((double) progress) / configurations.size());
-      BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
-      Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
-      Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
-      for (TargetKey targetKey : resolveConfiguration.getTargets()) {
-        TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
-        if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
-          continue;
-        }
+      futures.add(
+          submit(
+              () -> {
+                indicator.setText2(resolveConfiguration.getDisplayName());
+                ConfigurationCompilerOpts opts =
+                    calculateConfigurationCompilerOpts(
+                        blazeProjectData, resolveConfiguration, includeDirectories);
+                indicator.setFraction(
+                    ((double) progress.incrementAndGet()) / configurations.size());
+                return opts;
+              }));
+    }
+    List<ConfigurationCompilerOpts> allCompilerOpts;
+    try {
+      allCompilerOpts = Futures.allAsList(futures).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException("Could not calculate C resolve configurations", e);
+    }
 
-        // defines and include directories are the same for all sources in a given target, so lets
-        // collect them once and reuse for each source file's options
-        final var compilerSwitchesBuilder = selectSwitchBuilder(compilerSettings);
-
-        // this parses user defined copts filed, later -I include paths are resolved using the
-        // ExecutionRootPathResolver
-        // TODO: this can either be dropped or we might need to add support for other include types
-        UnfilteredCompilerOptions coptsExtractor = UnfilteredCompilerOptions.builder()
-            .registerSingleOrSplitOption("-I")
-            .build(targetIdeInfo.getcIdeInfo().getLocalCopts());
-
-        // forward user defined switches either directly or filter them first
-        final var plainLocalCopts = coptsExtractor.getUninterpretedOptions();
-        if (Registry.is("bazel.cpp.sync.workspace.filter.out.incompatible.flags")) {
-          compilerSwitchesBuilder.withSwitches(filterIncompatibleFlags(plainLocalCopts));
-        } else {
-          compilerSwitchesBuilder.withSwitches(plainLocalCopts);
-        }
+    ImmutableSet.Builder<Integer> switchSets = ImmutableSet.builder();
+    for (ConfigurationCompilerOpts compilerOpts : allCompilerOpts) {
+      String id = compilerOpts.resolveConfiguration.getDisplayName();
+      compilerOpts.configLanguages.values().forEach(opts -> switchSets.add(hash(opts.switches)));
+      compilerOpts.configSourceFiles.values().forEach(opts -> switchSets.add(hash(opts.switches)));
 
-        // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
-        targetIdeInfo.getcIdeInfo().getTransitiveDefines()
-            .forEach(compilerSwitchesBuilder::withMacro);
-
-        Function<ExecutionRootPath, Stream<File>> resolver =
-            executionRootPath ->
-                executionRootPathResolver.resolveToIncludeDirectories(executionRootPath).stream();
-
-        // localIncludes are sourced from -I options in a target's "copts" attribute. They can be
-        // arbitrarily declared and may not exist in configResolveData.
-        coptsExtractor.getExtractedOptionValues("-I").stream()
-            .map(ExecutionRootPath::new)
-            .flatMap(resolver)
-            .map(File::getAbsolutePath)
-            .forEach(compilerSwitchesBuilder::withIncludePath);
-
-        // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
-        targetIdeInfo.getcIdeInfo().getTransitiveIncludeDirectories().stream()
-            .flatMap(resolver)
-            .filter(configResolveData::isValidHeaderRoot)
-            .map(File::getAbsolutePath)
-            .forEach(compilerSwitchesBuilder::withIncludePath);
-
-        // transitiveQuoteIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.quote_include_directories
-        final var quoteIncludePaths = targetIdeInfo.getcIdeInfo()
-            .getTransitiveQuoteIncludeDirectories()
-            .stream()
-            .flatMap(resolver)
-            .filter(configResolveData::isValidHeaderRoot)
-            .map(File::getAbsolutePath)
-            .collect(ImmutableList.toImmutableList());
-        quoteIncludePaths.forEach(compilerSwitchesBuilder::withQuoteIncludePath);
-
-        // transitiveSystemIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.system_include_directories
-        // Note: We would ideally use -isystem here, but it interacts badly with the switches
-        // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
-        targetIdeInfo.getcIdeInfo().getTransitiveSystemIncludeDirectories().stream()
-            .flatMap(resolver)
-            .filter(configResolveData::isValidHeaderRoot)
-            .map(File::getAbsolutePath)
-            .forEach(compilerSwitchesBuilder::withSystemIncludePath);
-
-        final var cCompilerSwitches =
-            buildSwitchBuilder(compilerSettings, compilerSwitchesBuilder, CLanguageKind.C);
-        final var cppCompilerSwitches =
-            buildSwitchBuilder(compilerSettings, compilerSwitchesBuilder, CLanguageKind.CPP);
-
-        for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
-          OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
-
-          final PerFileCompilerOpts perFileCompilerOpts;
-          if (kind == CLanguageKind.C) {
-            perFileCompilerOpts = new PerFileCompilerOpts(kind, cCompilerSwitches);
-          } else {
-            perFileCompilerOpts = new PerFileCompilerOpts(CLanguageKind.CPP, cppCompilerSwitches);
-          }
-          configSourceFiles.put(vf, perFileCompilerOpts);
-
-          if (!configLanguages.containsKey(kind)) {
-            addConfigLanguageSwitches(
-                configLanguages, compilerSettings,
-                // If a file isn't found in configSourceFiles (newly created files), CLion uses the
-                // configLanguages switches. We want some basic header search roots (genfiles),
-                // which are part of every target's iquote directories. See:
-                // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
-                quoteIncludePaths, kind);
-          }
-        }
+      OCResolveConfiguration.ModifiableModel modelConfig = addConfiguration(
+          workspaceModifiable,
+          id,
+          id,
+          blazeProjectData.getBlazeInfo().getExecutionRoot(),
+          compilerOpts.configLanguages,
+          compilerOpts.configSourceFiles);
+
+      environmentMap.put(
+          modelConfig,
+          CppEnvironmentProvider.createEnvironment(
+              compilerOpts.resolveConfiguration.getCompilerSettings()));
+    }
+
+    return new WorkspaceModel(workspaceModifiable, environmentMap, switchSets.build());
+  }
+
+  private static int hash(CidrCompilerSwitches switches) {
+    return switches.getList(Format.RAW).hashCode();
+  }
+
+  private ConfigurationCompilerOpts calculateConfigurationCompilerOpts(
+      BlazeProjectData blazeProjectData,
+      BlazeResolveConfiguration resolveConfiguration,
+      IncludeDirectoryCache includeDirectories) {
+    BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
+    Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
+    Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
+    // Most targets in a configuration have the same copts, defines and include directories, so
+    // their compiler switches are only built once and shared.
+    Map<TargetCompilerInputs, TargetCompilerSwitches> switchesByInputs = new HashMap<>();
+    for (TargetKey targetKey : resolveConfiguration.getTargets()) {
+      TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
+      if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
+        continue;
       }
+      CIdeInfo cIdeInfo = targetIdeInfo.getcIdeInfo();
+      TargetCompilerSwitches targetSwitches =
+          switchesByInputs.computeIfAbsent(
+              new TargetCompilerInputs(cIdeInfo),
+              inputs ->
+                  buildTargetCompilerSwitches(compilerSettings, cIdeInfo, includeDirectories));
+
+      for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
+        OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
+
+        final PerFileCompilerOpts perFileCompilerOpts;
+        if (kind == CLanguageKind.C) {
+          perFileCompilerOpts = new PerFileCompilerOpts(kind, targetSwitches.cSwitches);
+        } else {
+          perFileCompilerOpts =
+              new PerFileCompilerOpts(CLanguageKind.CPP, targetSwitches.cppSwitches);
+        }
+        configSourceFiles.put(vf, perFileCompilerOpts);
 
-      for (OCLanguageKind language : supportedLanguages) {
-        if (!configLanguages.containsKey(language)) {
+        if (!configLanguages.containsKey(kind)) {
           addConfigLanguageSwitches(
-              configLanguages, compilerSettings, ImmutableList.of(), language);
+              configLanguages, compilerSettings,
+              // If a file isn't found in configSourceFiles (newly created files), CLion uses the
+              // configLanguages switches. We want some basic header search roots (genfiles),
+              // which are part of every target's iquote directories. See:
+              // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
+              targetSwitches.quoteIncludePaths, kind);
         }
       }
+    }
 
-      String id = resolveConfiguration.getDisplayName();
-
-      OCResolveConfiguration.ModifiableModel modelConfig = addConfiguration(
-          workspaceModifiable,
-          id,
-          id,
-          blazeProjectData.getBlazeInfo().getExecutionRoot(),
-          configLanguages,
-          configSourceFiles);
+    for (OCLanguageKind language : supportedLanguages) {
+      if (!configLanguages.containsKey(language)) {
+        addConfigLanguageSwitches(
+            configLanguages, compilerSettings, ImmutableList.of(), language);
+      }
+    }
 
-      environmentMap.put(modelConfig, CppEnvironmentProvider.createEnvironment(compilerSettings));
+    return new ConfigurationCompilerOpts(resolveConfiguration, configLanguages, configSourceFiles);
+  }
 
-      progress++;
+  private static TargetCompilerSwitches buildTargetCompilerSwitches(
+      BlazeCompilerSettings compilerSettings,
+      CIdeInfo cIdeInfo,
+      IncludeDirectoryCache includeDirectories) {
+    // defines and include directories are the same for all sources in a given target, so lets
+    // collect them once and reuse for each source file's options
+    final var compilerSwitchesBuilder = selectSwitchBuilder(compilerSettings);
+
+    // this parses user defined copts filed, later -I include paths are resolved using the
+    // ExecutionRootPathResolver
+    // TODO: this can either be dropped or we might need to add support for other include types
+    UnfilteredCompilerOptions coptsExtractor = UnfilteredCompilerOptions.builder()
+        .registerSingleOrSplitOption("-I")
+        .build(cIdeInfo.getLocalCopts());
+
+    // forward user defined switches either directly or filter them first
+    final var plainLocalCopts = coptsExtractor.getUninterpretedOptions();
+    if (Registry.is("bazel.cpp.sync.workspace.filter.out.incompatible.flags")) {
+      compilerSwitchesBuilder.withSwitches(filterIncompatibleFlags(plainLocalCopts));
+    } else {
+      compilerSwitchesBuilder.withSwitches(plainLocalCopts);
     }
 
-    return new WorkspaceModel(workspaceModifiable, environmentMap);
+    // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
+    cIdeInfo.getTransitiveDefines().forEach(compilerSwitchesBuilder::withMacro);
+
+    // localIncludes are sourced from -I options in a target's "copts" attribute. They can be
+    // arbitrarily declared and may not exist in configResolveData.
+    includeDirectories
+        .resolve(
+            coptsExtractor.getExtractedOptionValues("-I").stream()
+                .map(ExecutionRootPath::new)
+                .collect(toImmutableList()))
+        .forEach(compilerSwitchesBuilder::withIncludePath);
+
+    // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
+    includeDirectories
+        .resolveHeaderRoots(cIdeInfo.getTransitiveIncludeDirectories())
+        .forEach(compilerSwitchesBuilder::withIncludePath);
+
+    // transitiveQuoteIncludeDirectories are sourced from
+    // CcSkylarkApiProvider.quote_include_directories
+    final var quoteIncludePaths =
+        includeDirectories.resolveHeaderRoots(cIdeInfo.getTransitiveQuoteIncludeDirectories());
+    quoteIncludePaths.forEach(compilerSwitchesBuilder::withQuoteIncludePath);
+
+    // transitiveSystemIncludeDirectories are sourced from
+    // CcSkylarkApiProvider.system_include_directories
+    // Note: We would ideally use -isystem here, but it interacts badly with the switches
+    // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
+    includeDirectories
+        .resolveHeaderRoots(cIdeInfo.getTransitiveSystemIncludeDirectories())
+        .forEach(compilerSwitchesBuilder::withSystemIncludePath);
+
+    return new TargetCompilerSwitches(
+        buildSwitchBuilder(compilerSettings, compilerSwitchesBuilder, CLanguageKind.C),
+        buildSwitchBuilder(compilerSettings, compilerSwitchesBuilder, CLanguageKind.CPP),
+        quoteIncludePaths);
   }
 
   private static OCResolveConfiguration.ModifiableModel addConfiguration(
@@ -428,16 +511,100 @@ public final class BlazeCWorkspace implements ProjectComponent {
     }
   }
 
+  /** Group compiler options for a resolve configuration, before it's added to the workspace. */
+  private static class ConfigurationCompilerOpts {
+    final BlazeResolveConfiguration resolveConfiguration;
+    final Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages;
+    final Map<VirtualFile, PerFileCompilerOpts> configSourceFiles;
+
+    private ConfigurationCompilerOpts(
+        BlazeResolveConfiguration resolveConfiguration,
+        Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages,
+        Map<VirtualFile, PerFileCompilerOpts> configSourceFiles) {
+      this.resolveConfiguration = resolveConfiguration;
+      this.configLanguages = configLanguages;
+      this.configSourceFiles = configSourceFiles;
+    }
+  }
+
+  /** The parts of a target's C++ info which its compiler switches are built from. */
+  private static class TargetCompilerInputs {
+    final ImmutableList<String> localCopts;
+    final ImmutableList<String> transitiveDefines;
+    final ImmutableList<ExecutionRootPath> transitiveIncludeDirectories;
+    final ImmutableList<ExecutionRootPath> transitiveQuoteIncludeDirectories;
+    final ImmutableList<ExecutionRootPath> transitiveSystemIncludeDirectories;
+    // The include directory lists can be very long, so only hash them once.
+    final int hashCode;
+
+    private TargetCompilerInputs(CIdeInfo cIdeInfo) {
+      this.localCopts = cIdeInfo.getLocalCopts();
+      this.transitiveDefines = cIdeInfo.getTransitiveDefines();
+      this.transitiveIncludeDirectories = cIdeInfo.getTransitiveIncludeDirectories();
+      this.transitiveQuoteIncludeDirectories = cIdeInfo.getTransitiveQuoteIncludeDirectories();
+      this.transitiveSystemIncludeDirectories = cIdeInfo.getTransitiveSystemIncludeDirectories();
+      this.hashCode =
+          Objects.hash(
+              localCopts,
+              transitiveDefines,
+              transitiveIncludeDirectories,
+              transitiveQuoteIncludeDirectories,
+              transitiveSystemIncludeDirectories);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TargetCompilerInputs)) {
+        return false;
+      }
+      TargetCompilerInputs that = (TargetCompilerInputs) o;
+      return hashCode == that.hashCode
+          && localCopts.equals(that.localCopts)
+          && transitiveDefines.equals(that.transitiveDefines)
+          && transitiveIncludeDirectories.equals(that.transitiveIncludeDirectories)
+          && transitiveQuoteIncludeDirectories.equals(that.transitiveQuoteIncludeDirectories)
+          && transitiveSystemIncludeDirectories.equals(that.transitiveSystemIncludeDirectories);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /** Compiler switches shared by all the targets with the same {@link TargetCompilerInputs}. */
+  private static class TargetCompilerSwitches {
+    final CidrCompilerSwitches cSwitches;
+    final CidrCompilerSwitches cppSwitches;
+    final ImmutableList<String> quoteIncludePaths;
+
+    private TargetCompilerSwitches(
+        CidrCompilerSwitches cSwitches,
+        CidrCompilerSwitches cppSwitches,
+        ImmutableList<String> quoteIncludePaths) {
+      this.cSwitches = cSwitches;
+      this.cppSwitches = cppSwitches;
+      this.quoteIncludePaths = quoteIncludePaths;
+    }
+  }
+
   private static class WorkspaceModel {
 
     final OCWorkspaceImpl.ModifiableModel model;
     final Map<OCResolveConfiguration.ModifiableModel, CidrToolEnvironment> environments;
+    // Hashes of the distinct compiler switch sets used by the configurations.
+    final ImmutableSet<Integer> switchSets;
 
     private WorkspaceModel(
         OCWorkspace.ModifiableModel model,
-        Map<OCResolveConfiguration.ModifiableModel, CidrToolEnvironment> environments) {
+        Map<OCResolveConfiguration.ModifiableModel, CidrToolEnvironment> environments,
+        ImmutableSet<Integer> switchSets) {
       this.model = model;
       this.environments = environments;
+      this.switchSets = switchSets;
     }
   }
 
@@ -520,11 +687,45 @@ public final class BlazeCWorkspace implements ProjectComponent {
         .submit(context);
   }
 
+  /**
+   * Returns the compiler info cache to use for the given configurations, discarding the cached
+   * compiler info if any of the toolchains have changed since it was calculated, or if most of it
+   * is for switch sets which the configurations no longer use.
+   */
+  private synchronized CompilerInfoCache getCompilerInfoCache(
+      BlazeConfigurationResolverResult configResolveData, WorkspaceModel workspaceModel) {
+    ImmutableSet<CompilerFingerprint> toolchains =
+        CompilerFingerprint.of(
+            configResolveData.getAllConfigurations().stream()
+                .map(BlazeResolveConfiguration::getCompilerSettings)
+                .collect(toImmutableList()));
+    if (!toolchains.equals(compilerInfoCacheToolchains)) {
+      logger.info("C/C++ toolchains changed -- discarding cached compiler info");
+      compilerInfoCache = new CompilerInfoCache();
+      compilerInfoCacheToolchains = toolchains;
+      compilerInfoCacheSwitchSets = new HashSet<>();
+    }
+    compilerInfoCacheSwitchSets.addAll(workspaceModel.switchSets);
+    if (compilerInfoCacheSwitchSets.size()
+        > MAX_CACHED_SWITCH_SETS_FACTOR * workspaceModel.switchSets.size()) {
+      logger.info(
+          String.format(
+              "%d of %d cached compiler switch sets unused -- discarding cached compiler info",
+              compilerInfoCacheSwitchSets.size() - workspaceModel.switchSets.size(),
+              compilerInfoCacheSwitchSets.size()));
+      compilerInfoCache = new CompilerInfoCache();
+      compilerInfoCacheSwitchSets = new HashSet<>(workspaceModel.switchSets);
+    }
+    return compilerInfoCache;
+  }
+
   private ImmutableList<String> commit(
       int serialVersion,
       WorkspaceModel workspaceModel,
-      WorkspaceRoot workspaceRoot) {
-    final var issues = collectCompilerSettingsInParallel(workspaceModel, workspaceRoot);
+      WorkspaceRoot workspaceRoot,
+      CompilerInfoCache compilerInfoCache) {
+    final var issues =
+        collectCompilerSettingsInParallel(workspaceModel, workspaceRoot, compilerInfoCache);
 
     workspaceModel.model.setClientVersion(serialVersion);
     workspaceModel.model.preCommit();
@@ -539,8 +740,8 @@ public final class BlazeCWorkspace implements ProjectComponent {
 
   private ImmutableList<String> collectCompilerSettingsInParallel(
       WorkspaceModel workspaceModel,
-      WorkspaceRoot workspaceRoot) {
-    CompilerInfoCache compilerInfoCache = new CompilerInfoCache();
+      WorkspaceRoot workspaceRoot,
+      CompilerInfoCache compilerInfoCache) {
     TempFilesPool tempFilesPool = new CachedTempFilesPool();
     Session<Integer> session = compilerInfoCache.createSession(new EmptyProgressIndicator());
     ImmutableList.Builder<String> issues = ImmutableList.builder();
@@ -570,4 +771,8 @@ public final class BlazeCWorkspace implements ProjectComponent {
     tempFilesPool.clean();
     return issues.build();
   }
+
+  private static <T> ListenableFuture<T> submit(Callable<T> callable) {
+    return BlazeExecutor.getInstance().submit(callable);
+  }
 }
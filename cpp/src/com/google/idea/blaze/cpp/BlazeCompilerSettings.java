@@ -103,4 +103,8 @@ public final class BlazeCompilerSettings {
   public String getCompilerEnvironment(String variable) {
     return compilerEnvironment.get(variable);
   }
+
+  ImmutableMap<String, String> getCompilerEnvironment() {
+    return compilerEnvironment;
+  }
 }
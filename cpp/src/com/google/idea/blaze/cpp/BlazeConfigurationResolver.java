@@ -148,7 +148,7 @@ final class BlazeConfigurationResolver {
       TargetIdeInfo target,
       Project project,
       WorkspacePathResolver workspacePathResolver) {
-    if (target.toTargetInfo().getLabel().isExternal()) {
+    if (target.getKey().getLabel().isExternal()) {
       WorkspaceRoot externalWorkspace = WorkspaceHelper.getExternalWorkspace(project,
           target.getKey().getLabel().externalWorkspaceName());
 
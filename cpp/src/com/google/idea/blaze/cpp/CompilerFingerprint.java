@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.jetbrains.cidr.lang.CLanguageKind;
+import java.io.File;
+import java.util.Collection;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Identifies a compiler toolchain well enough to tell whether compiler info calculated for it is
+ * still valid.
+ *
+ * <p>Compiler binaries are identified by their path, size and modification time rather than a
+ * digest of their contents, which would mean reading the (often very large) binaries on every
+ * sync.
+ */
+final class CompilerFingerprint {
+
+  private final String compilerVersion;
+  @Nullable private final BinaryState cCompiler;
+  @Nullable private final BinaryState cppCompiler;
+  private final ImmutableList<String> cCompilerSwitches;
+  private final ImmutableList<String> cppCompilerSwitches;
+  private final ImmutableMap<String, String> compilerEnvironment;
+
+  private CompilerFingerprint(BlazeCompilerSettings settings) {
+    this.compilerVersion = settings.getCompilerVersion();
+    this.cCompiler = BinaryState.of(settings.getCompilerExecutable(CLanguageKind.C));
+    this.cppCompiler = BinaryState.of(settings.getCompilerExecutable(CLanguageKind.CPP));
+    this.cCompilerSwitches = settings.getCompilerSwitches(CLanguageKind.C, null);
+    this.cppCompilerSwitches = settings.getCompilerSwitches(CLanguageKind.CPP, null);
+    this.compilerEnvironment = settings.getCompilerEnvironment();
+  }
+
+  /** Returns the fingerprints of all the toolchains used by the given compiler settings. */
+  static ImmutableSet<CompilerFingerprint> of(Collection<BlazeCompilerSettings> settings) {
+    return settings.stream().map(CompilerFingerprint::new).collect(toImmutableSet());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CompilerFingerprint)) {
+      return false;
+    }
+    CompilerFingerprint that = (CompilerFingerprint) o;
+    return compilerVersion.equals(that.compilerVersion)
+        && Objects.equals(cCompiler, that.cCompiler)
+        && Objects.equals(cppCompiler, that.cppCompiler)
+        && cCompilerSwitches.equals(that.cCompilerSwitches)
+        && cppCompilerSwitches.equals(that.cppCompilerSwitches)
+        && compilerEnvironment.equals(that.compilerEnvironment);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        compilerVersion,
+        cCompiler,
+        cppCompiler,
+        cCompilerSwitches,
+        cppCompilerSwitches,
+        compilerEnvironment);
+  }
+
+  /** The path, size and modification time of a compiler binary. */
+  private static final class BinaryState {
+    private final String path;
+    private final long length;
+    private final long lastModified;
+
+    private BinaryState(String path, long length, long lastModified) {
+      this.path = path;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    @Nullable
+    static BinaryState of(@Nullable File binary) {
+      if (binary == null) {
+        return null;
+      }
+      return new BinaryState(binary.getAbsolutePath(), binary.length(), binary.lastModified());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof BinaryState)) {
+        return false;
+      }
+      BinaryState that = (BinaryState) o;
+      return path.equals(that.path) && length == that.length && lastModified == that.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, length, lastModified);
+    }
+  }
+}
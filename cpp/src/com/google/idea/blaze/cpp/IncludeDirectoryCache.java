@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Resolves include directories to absolute paths, remembering the result for each {@link
+ * ExecutionRootPath}.
+ *
+ * <p>Most C++ targets share the bulk of their transitive include directories, so without this the
+ * same paths would be resolved and checked against the valid header roots once per target. Lists
+ * of resolved paths are also interned, so that targets with the same include directories share a
+ * single copy.
+ *
+ * <p>Resolution depends on the project data, so an instance should only be used for a single sync.
+ * It is safe to use from multiple threads.
+ */
+final class IncludeDirectoryCache {
+
+  private final Function<ExecutionRootPath, ImmutableList<File>> resolver;
+  private final Predicate<File> isValidHeaderRoot;
+
+  private final Map<ExecutionRootPath, ImmutableList<File>> resolved = new ConcurrentHashMap<>();
+  private final Map<ExecutionRootPath, ImmutableList<String>> directories =
+      new ConcurrentHashMap<>();
+  private final Map<ExecutionRootPath, ImmutableList<String>> headerRoots =
+      new ConcurrentHashMap<>();
+  private final Map<ImmutableList<String>, ImmutableList<String>> internedLists =
+      new ConcurrentHashMap<>();
+
+  IncludeDirectoryCache(
+      Function<ExecutionRootPath, ImmutableList<File>> resolver,
+      Predicate<File> isValidHeaderRoot) {
+    this.resolver = resolver;
+    this.isValidHeaderRoot = isValidHeaderRoot;
+  }
+
+  /** Returns the absolute paths of all the directories the given paths resolve to. */
+  ImmutableList<String> resolve(List<ExecutionRootPath> paths) {
+    return intern(
+        paths.stream()
+            .flatMap(
+                path ->
+                    directories
+                        .computeIfAbsent(path, p -> toAbsolutePaths(resolveFiles(p)))
+                        .stream())
+            .collect(toImmutableList()));
+  }
+
+  /**
+   * Returns the absolute paths of the directories the given paths resolve to, excluding any which
+   * are not valid header roots.
+   */
+  ImmutableList<String> resolveHeaderRoots(List<ExecutionRootPath> paths) {
+    return intern(
+        paths.stream()
+            .flatMap(
+                path ->
+                    headerRoots
+                        .computeIfAbsent(
+                            path,
+                            p ->
+                                toAbsolutePaths(
+                                    resolveFiles(p).stream()
+                                        .filter(isValidHeaderRoot)
+                                        .collect(toImmutableList())))
+                        .stream())
+            .collect(toImmutableList()));
+  }
+
+  private ImmutableList<File> resolveFiles(ExecutionRootPath path) {
+    return resolved.computeIfAbsent(path, resolver);
+  }
+
+  private ImmutableList<String> intern(ImmutableList<String> paths) {
+    return paths.isEmpty() ? paths : internedLists.computeIfAbsent(paths, p -> p);
+  }
+
+  private static ImmutableList<String> toAbsolutePaths(List<File> files) {
+    return files.stream().map(File::getAbsolutePath).collect(toImmutableList());
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.BlazeTestCase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CompilerFingerprint}. */
+@RunWith(JUnit4.class)
+public class CompilerFingerprintTest extends BlazeTestCase {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    registerExtensionPoint(
+        BlazeCompilerFlagsProcessor.EP_NAME, BlazeCompilerFlagsProcessor.Provider.class);
+  }
+
+  @Test
+  public void sameToolchain_sameFingerprint() throws IOException {
+    File compiler = temporaryFolder.newFile("clang");
+
+    assertThat(CompilerFingerprint.of(ImmutableList.of(settings(compiler, "-O2"))))
+        .isEqualTo(CompilerFingerprint.of(ImmutableList.of(settings(compiler, "-O2"))));
+  }
+
+  @Test
+  public void changedSwitches_differentFingerprint() throws IOException {
+    File compiler = temporaryFolder.newFile("clang");
+
+    assertThat(CompilerFingerprint.of(ImmutableList.of(settings(compiler, "-O2"))))
+        .isNotEqualTo(CompilerFingerprint.of(ImmutableList.of(settings(compiler, "-O0"))));
+  }
+
+  @Test
+  public void changedCompilerBinary_differentFingerprint() throws IOException {
+    File compiler = temporaryFolder.newFile("clang");
+    BlazeCompilerSettings settings = settings(compiler, "-O2");
+    ImmutableSet<CompilerFingerprint> before = CompilerFingerprint.of(ImmutableList.of(settings));
+
+    Files.writeString(compiler.toPath(), "a new compiler");
+
+    assertThat(CompilerFingerprint.of(ImmutableList.of(settings))).isNotEqualTo(before);
+  }
+
+  private BlazeCompilerSettings settings(File compiler, String flag) {
+    return new BlazeCompilerSettings(
+        getProject(),
+        compiler,
+        compiler,
+        ImmutableList.of(flag),
+        ImmutableList.of(flag),
+        "clang version 17.0.0",
+        ImmutableMap.of());
+  }
+}
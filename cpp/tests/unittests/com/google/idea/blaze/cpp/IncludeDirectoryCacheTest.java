@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link IncludeDirectoryCache}. */
+@RunWith(JUnit4.class)
+public class IncludeDirectoryCacheTest {
+
+  private static final File ROOT = new File("/root");
+
+  private static final ExecutionRootPath FOO = new ExecutionRootPath("foo");
+  private static final ExecutionRootPath BAR = new ExecutionRootPath("bar");
+  private static final ExecutionRootPath GENFILES = new ExecutionRootPath("genfiles");
+
+  private final Multiset<ExecutionRootPath> resolveCalls = HashMultiset.create();
+
+  private final IncludeDirectoryCache cache =
+      new IncludeDirectoryCache(
+          path -> {
+            resolveCalls.add(path);
+            return ImmutableList.of(path.getFileRootedAt(ROOT));
+          },
+          ImmutableSet.of(new File(ROOT, "foo"), new File(ROOT, "bar"))::contains);
+
+  @Test
+  public void resolve_returnsAllDirectories() {
+    assertThat(cache.resolve(ImmutableList.of(FOO, GENFILES)))
+        .containsExactly(
+            new File(ROOT, "foo").getAbsolutePath(), new File(ROOT, "genfiles").getAbsolutePath())
+        .inOrder();
+  }
+
+  @Test
+  public void resolveHeaderRoots_excludesInvalidHeaderRoots() {
+    assertThat(cache.resolveHeaderRoots(ImmutableList.of(FOO, GENFILES, BAR)))
+        .containsExactly(
+            new File(ROOT, "foo").getAbsolutePath(), new File(ROOT, "bar").getAbsolutePath())
+        .inOrder();
+  }
+
+  @Test
+  public void eachPathIsOnlyResolvedOnce() {
+    cache.resolveHeaderRoots(ImmutableList.of(FOO, BAR));
+    cache.resolveHeaderRoots(ImmutableList.of(BAR, GENFILES));
+    cache.resolve(ImmutableList.of(FOO, GENFILES));
+
+    assertThat(resolveCalls).containsExactly(FOO, BAR, GENFILES);
+  }
+
+  @Test
+  public void identicalListsAreShared() {
+    ImmutableList<String> first = cache.resolveHeaderRoots(ImmutableList.of(FOO, BAR));
+    ImmutableList<String> second = cache.resolveHeaderRoots(ImmutableList.of(FOO, GENFILES, BAR));
+
+    assertThat(second).isSameInstanceAs(first);
+  }
+}
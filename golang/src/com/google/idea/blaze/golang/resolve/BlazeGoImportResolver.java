@@ -242,4 +242,12 @@ class BlazeGoImportResolver implements GoImportResolver {
       return null;
     }
   }
+
+  /** Builds the import path to target map in the background after sync. */
+  static class GoTargetMapWarmer implements SyncCache.Warmer {
+    @Override
+    public void warmUp(Project project) {
+      getGoTargetMap(project);
+    }
+  }
 }
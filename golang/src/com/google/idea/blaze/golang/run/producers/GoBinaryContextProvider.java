@@ -17,7 +17,6 @@ package com.google.idea.blaze.golang.run.producers;
 
 import com.goide.execution.GoRunUtil;
 import com.goide.psi.GoFile;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -29,6 +28,7 @@ import com.google.idea.blaze.base.run.BlazeCommandRunConfiguration;
 import com.google.idea.blaze.base.run.producers.BinaryContextProvider;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap.ReverseDependencies;
 import com.google.idea.blaze.base.targetmaps.SourceToTargetMap;
 import com.intellij.execution.actions.ConfigurationContext;
 import com.intellij.openapi.project.Project;
@@ -98,7 +98,7 @@ class GoBinaryContextProvider implements BinaryContextProvider {
       }
       switch (target.getKind().getRuleType()) {
         case BINARY:
-          return target.toTargetInfo();
+          return targetMap.toTargetInfo(target);
         case LIBRARY:
           libraryKeys.add(target.getKey());
           break;
@@ -107,7 +107,7 @@ class GoBinaryContextProvider implements BinaryContextProvider {
           // ignore these
       }
     }
-    ImmutableMultimap<TargetKey, TargetKey> rdeps = ReverseDependencyMap.get(project);
+    ReverseDependencies rdeps = ReverseDependencyMap.get(project);
     return libraryKeys.stream()
         .map(rdeps::get)
         .flatMap(Collection::stream)
@@ -115,7 +115,7 @@ class GoBinaryContextProvider implements BinaryContextProvider {
         .filter(Objects::nonNull)
         .filter(t -> t.getKind().hasLanguage(LanguageClass.GO))
         .filter(t -> t.getKind().getRuleType() == RuleType.BINARY)
-        .map(TargetIdeInfo::toTargetInfo)
+        .map(targetMap::toTargetInfo)
         .findFirst()
         .orElse(null);
   }
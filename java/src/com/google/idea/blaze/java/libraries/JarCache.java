@@ -33,6 +33,7 @@ import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
 import com.google.idea.blaze.base.filecache.FileCache;
 import com.google.idea.blaze.base.filecache.FileCacheDiffer;
+import com.google.idea.blaze.base.filecache.FileCacheWriter;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
@@ -65,10 +66,8 @@ import com.intellij.util.PathUtil;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -231,14 +230,17 @@ public class JarCache {
           .run();
 
       // update cache files, and remove files if required
-      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(updated));
+      FileCacheWriter writer = new FileCacheWriter();
+      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(updated, writer));
       if (removeMissingFiles) {
         futures.addAll(deleteCacheFiles(removed));
       }
 
       Futures.allAsList(futures).get();
       if (!updated.isEmpty()) {
-        context.output(PrintOutput.log(String.format("Copied %d jars", updated.size())));
+        context.output(
+            PrintOutput.log(
+                String.format("Copied %d jars (%s)", updated.size(), writer.getSummary())));
       }
       if (!removed.isEmpty()) {
         context.output(PrintOutput.log(String.format("Removed %d jars", removed.size())));
@@ -303,7 +305,8 @@ public class JarCache {
   }
 
   /** Copy artifacts that needed to be updated to local cache, repackage it if it's lint jar. */
-  private List<ListenableFuture<?>> copyLocally(Map<String, BlazeArtifact> updated) {
+  private List<ListenableFuture<?>> copyLocally(
+      Map<String, BlazeArtifact> updated, FileCacheWriter writer) {
     List<ListenableFuture<?>> futures = new ArrayList<>();
     updated.forEach(
         (key, artifact) ->
@@ -312,7 +315,7 @@ public class JarCache {
                     () -> {
                       File destination = jarCacheFolderProvider.getCacheFileByKey(key);
                       try {
-                        copyLocally(artifact, destination);
+                        writer.write(artifact, destination.toPath());
                       } catch (IOException e) {
                         logger.warn(
                             String.format(
@@ -324,21 +327,6 @@ public class JarCache {
     return futures;
   }
 
-  private static void copyLocally(BlazeArtifact output, File destination) throws IOException {
-    if (output instanceof LocalFileArtifact) {
-      File source = ((LocalFileArtifact) output).getFile();
-      Files.copy(
-          Paths.get(source.getPath()),
-          Paths.get(destination.getPath()),
-          StandardCopyOption.REPLACE_EXISTING,
-          StandardCopyOption.COPY_ATTRIBUTES);
-      return;
-    }
-    try (InputStream stream = output.getInputStream()) {
-      Files.copy(stream, Paths.get(destination.getPath()), StandardCopyOption.REPLACE_EXISTING);
-    }
-  }
-
   /**
    * Submit repackage tasks without blocking current thread. Log elapsed time when all tasks get
    * completed.
@@ -171,10 +171,11 @@ public class JavaBinaryContextProvider implements BinaryContextProvider {
   private static TargetInfo getTargetInfoAspectSync(
       Project project, PsiClass mainClass, File mainClassFile) {
     TargetIdeInfo targetIdeInfo = getTargetIdeInfo(project, mainClass, mainClassFile);
-    if (targetIdeInfo == null) {
+    FilteredTargetMap map = getTargetMap(project);
+    if (targetIdeInfo == null || map == null) {
       return null;
     }
-    return targetIdeInfo.toTargetInfo();
+    return map.toTargetInfo(targetIdeInfo);
   }
 
   @Nullable
@@ -216,12 +217,16 @@ public class JavaBinaryContextProvider implements BinaryContextProvider {
   /** Returns all java_binary targets reachable from the given source file. */
   private static Collection<TargetIdeInfo> findJavaBinaryTargets(
       Project project, File mainClassFile) {
-    FilteredTargetMap map =
-        SyncCache.getInstance(project)
-            .get(JAVA_BINARY_MAP_KEY, JavaBinaryContextProvider::computeTargetMap);
+    FilteredTargetMap map = getTargetMap(project);
     return map != null ? map.targetsForSourceFile(mainClassFile) : ImmutableList.of();
   }
 
+  @Nullable
+  private static FilteredTargetMap getTargetMap(Project project) {
+    return SyncCache.getInstance(project)
+        .get(JAVA_BINARY_MAP_KEY, JavaBinaryContextProvider::computeTargetMap);
+  }
+
   private static FilteredTargetMap computeTargetMap(Project project, BlazeProjectData projectData) {
     return new FilteredTargetMap(
         project,
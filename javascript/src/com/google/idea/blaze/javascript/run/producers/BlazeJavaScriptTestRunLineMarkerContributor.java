@@ -18,7 +18,6 @@ package com.google.idea.blaze.javascript.run.producers;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -34,6 +33,7 @@ import com.google.idea.blaze.base.run.smrunner.SmRunnerUtils;
 import com.google.idea.blaze.base.sync.BlazeSyncModificationTracker;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap.ReverseDependencies;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.execution.lineMarker.ExecutorAction;
 import com.intellij.execution.lineMarker.RunLineMarkerContributor;
@@ -128,7 +128,7 @@ public class BlazeJavaScriptTestRunLineMarkerContributor extends RunLineMarkerCo
             return Result.create(
                 ImmutableList.of(), BlazeSyncModificationTracker.getInstance(project));
           }
-          ImmutableMultimap<TargetKey, TargetKey> rdeps = ReverseDependencyMap.get(project);
+          ReverseDependencies rdeps = ReverseDependencyMap.get(project);
           TargetMap targetMap = projectData.getTargetMap();
           return Result.create(
               SourceToTargetFinder.findTargetsForSourceFile(
@@ -52,10 +52,11 @@ class KotlinBinaryContextProvider implements BinaryContextProvider {
       return null;
     }
     TargetIdeInfo target = getTargetIdeInfo(context);
-    if (target == null) {
+    FilteredTargetMap map = getTargetMap(context.getProject());
+    if (target == null || map == null) {
       return null;
     }
-    return BinaryRunContext.create(location.getPsiElement(), target.toTargetInfo());
+    return BinaryRunContext.create(location.getPsiElement(), map.toTargetInfo(target));
   }
 
   @Nullable
@@ -112,12 +113,16 @@ class KotlinBinaryContextProvider implements BinaryContextProvider {
   /** Returns all kt_jvm_binary targets reachable from the given source file. */
   private static Collection<TargetIdeInfo> findKotlinBinaryTargets(
       Project project, File mainClassFile) {
-    FilteredTargetMap map =
-        SyncCache.getInstance(project)
-            .get(KOTLIN_BINARY_MAP_KEY, KotlinBinaryContextProvider::computeTargetMap);
+    FilteredTargetMap map = getTargetMap(project);
     return map != null ? map.targetsForSourceFile(mainClassFile) : ImmutableList.of();
   }
 
+  @Nullable
+  private static FilteredTargetMap getTargetMap(Project project) {
+    return SyncCache.getInstance(project)
+        .get(KOTLIN_BINARY_MAP_KEY, KotlinBinaryContextProvider::computeTargetMap);
+  }
+
   private static FilteredTargetMap computeTargetMap(Project project, BlazeProjectData projectData) {
     return new FilteredTargetMap(
         project,
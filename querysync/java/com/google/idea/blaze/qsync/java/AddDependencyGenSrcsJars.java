@@ -77,7 +77,7 @@ public class AddDependencyGenSrcsJars implements ProjectProtoUpdateOperation {
 
         if (projectArtifact != null) {
           srcJarInnerPathFinder
-              .findInnerJarPaths(genSrc.blockingGetFrom(buildCache), EMPTY_PACKAGE_PREFIXES_ONLY)
+              .findInnerJarPaths(genSrc, buildCache, EMPTY_PACKAGE_PREFIXES_ONLY)
               .stream()
               .map(p -> p.path)
               .map(projectArtifact::withInnerJarPath)
@@ -80,7 +80,7 @@ public class AddProjectGenSrcJars implements ProjectProtoUpdateOperation {
                 ProjectProto.ContentEntry.newBuilder().setRoot(added.toProto());
             for (JarPath innerPath :
                 srcJarInnerPathFinder.findInnerJarPaths(
-                    genSrc.blockingGetFrom(buildCache), ALLOW_NON_EMPTY_PACKAGE_PREFIXES)) {
+                    genSrc, buildCache, ALLOW_NON_EMPTY_PACKAGE_PREFIXES)) {
 
               genSrcJarContentEntry.addSources(
                   ProjectProto.SourceFolder.newBuilder()
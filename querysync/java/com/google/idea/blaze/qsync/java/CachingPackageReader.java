@@ -0,0 +1,256 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.idea.blaze.qsync.java.PackageCacheProto.PackageCache;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link PackageReader} that remembers the package of each file it has read, so that only files
+ * that have changed since they were last read need to be read again.
+ *
+ * <p>A file is assumed to be unchanged if its modification time and size are the same as when it
+ * was last read. The cache is persisted to disk, so that it can be reused across IDE restarts.
+ * Checking whether files have changed takes a file system call per file, so it is done in parallel.
+ *
+ * <p>Each call to {@link #readPackages} replaces the cache contents with the files passed to it,
+ * so that files which are no longer part of the project do not accumulate.
+ */
+public class CachingPackageReader implements PackageReader {
+
+  private static final Logger logger = Logger.getLogger(CachingPackageReader.class.getName());
+
+  private static final int VERSION = 1;
+
+  private final ListeningExecutorService executor;
+  private final PackageReader delegate;
+  private final Path cacheFile;
+
+  private volatile Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public CachingPackageReader(PackageReader delegate, Path cacheFile) {
+    this(MoreExecutors.newDirectExecutorService(), delegate, cacheFile);
+  }
+
+  public CachingPackageReader(
+      ListeningExecutorService executor, PackageReader delegate, Path cacheFile) {
+    this.executor = executor;
+    this.delegate = delegate;
+    this.cacheFile = cacheFile;
+    loadState();
+  }
+
+  /** Cache hit and miss counts. */
+  @AutoValue
+  public abstract static class Stats {
+    public abstract int hits();
+
+    public abstract int misses();
+
+    static Stats create(int hits, int misses) {
+      return new AutoValue_CachingPackageReader_Stats(hits, misses);
+    }
+  }
+
+  /** Returns the number of cache hits and misses since this method was last called. */
+  public Stats takeStats() {
+    return Stats.create(hits.getAndSet(0), misses.getAndSet(0));
+  }
+
+  @Override
+  public String readPackage(Path path) throws IOException {
+    FileState state = FileState.of(path);
+    Entry cached = entries.get(path);
+    if (isUpToDate(cached, state)) {
+      hits.incrementAndGet();
+      return cached.packageName();
+    }
+    misses.incrementAndGet();
+    String packageName = delegate.readPackage(path);
+    entries.put(path, Entry.create(state, packageName));
+    return packageName;
+  }
+
+  @Override
+  public List<String> readPackages(List<Path> paths) throws IOException {
+    Map<Path, Entry> previous = entries;
+    Map<Path, Entry> updated = new ConcurrentHashMap<>(paths.size());
+    String[] packages = new String[paths.size()];
+    List<Integer> toRead = new ArrayList<>();
+    List<Path> toReadPaths = new ArrayList<>();
+    List<FileState> toReadStates = new ArrayList<>();
+    List<FileState> states = readFileStates(paths);
+    for (int i = 0; i < paths.size(); i++) {
+      Path path = paths.get(i);
+      FileState state = states.get(i);
+      Entry cached = previous.get(path);
+      if (isUpToDate(cached, state)) {
+        packages[i] = cached.packageName();
+        updated.put(path, cached);
+      } else {
+        toRead.add(i);
+        toReadPaths.add(path);
+        toReadStates.add(state);
+      }
+    }
+
+    if (!toRead.isEmpty()) {
+      // Pass all the changed files to the delegate at once, so that it can read them in parallel.
+      List<String> read = delegate.readPackages(toReadPaths);
+      for (int i = 0; i < toRead.size(); i++) {
+        packages[toRead.get(i)] = read.get(i);
+        updated.put(toReadPaths.get(i), Entry.create(toReadStates.get(i), read.get(i)));
+      }
+    }
+    hits.addAndGet(paths.size() - toRead.size());
+    misses.addAndGet(toRead.size());
+
+    entries = updated;
+    if (!toRead.isEmpty() || updated.size() != previous.size()) {
+      saveState(updated);
+    }
+    return ImmutableList.copyOf(packages);
+  }
+
+  private List<FileState> readFileStates(List<Path> paths) throws IOException {
+    List<ListenableFuture<FileState>> futures = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      futures.add(executor.submit(() -> FileState.of(path)));
+    }
+    try {
+      return Uninterruptibles.getUninterruptibly(Futures.allAsList(futures));
+    } catch (ExecutionException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void saveState(Map<Path, Entry> entries) {
+    PackageCache.Builder proto = PackageCache.newBuilder().setVersion(VERSION);
+    entries.forEach(
+        (path, entry) ->
+            proto.addEntries(
+                PackageCache.Entry.newBuilder()
+                    .setPath(path.toString())
+                    .setModifiedTimeMillis(entry.state().modifiedTimeMillis())
+                    .setSize(entry.state().size())
+                    .setPackageName(entry.packageName())));
+    try {
+      Files.createDirectories(cacheFile.getParent());
+      // Write to a temporary file first, so that a partially written cache is never read.
+      Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+        proto.build().writeTo(out);
+      }
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to write package cache to " + cacheFile, e);
+    }
+  }
+
+  private void loadState() {
+    if (!Files.exists(cacheFile)) {
+      return;
+    }
+    PackageCache proto;
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(cacheFile))) {
+      proto = PackageCache.parseFrom(in);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read package cache from " + cacheFile, e);
+      return;
+    }
+    if (proto.getVersion() != VERSION) {
+      return;
+    }
+    Map<Path, Entry> loaded = new ConcurrentHashMap<>(proto.getEntriesCount());
+    for (PackageCache.Entry entry : proto.getEntriesList()) {
+      loaded.put(
+          cacheFile.getFileSystem().getPath(entry.getPath()),
+          Entry.create(
+              FileState.create(entry.getModifiedTimeMillis(), entry.getSize()),
+              entry.getPackageName()));
+    }
+    entries = loaded;
+  }
+
+  private static boolean isUpToDate(@Nullable Entry cached, FileState state) {
+    return cached != null && !state.equals(FileState.MISSING) && cached.state().equals(state);
+  }
+
+  /** The state of a file that, if unchanged, means its package need not be read again. */
+  @AutoValue
+  abstract static class FileState {
+    /** The state of a file that does not exist, which never matches a cache entry. */
+    private static final FileState MISSING = create(-1, -1);
+
+    abstract long modifiedTimeMillis();
+
+    abstract long size();
+
+    static FileState create(long modifiedTimeMillis, long size) {
+      return new AutoValue_CachingPackageReader_FileState(modifiedTimeMillis, size);
+    }
+
+    static FileState of(Path path) throws IOException {
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        // Let the delegate decide how to handle the missing file.
+        return MISSING;
+      }
+      return create(attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+  }
+
+  @AutoValue
+  abstract static class Entry {
+    abstract FileState state();
+
+    abstract String packageName();
+
+    static Entry create(FileState state, String packageName) {
+      return new AutoValue_CachingPackageReader_Entry(state, packageName);
+    }
+  }
+}
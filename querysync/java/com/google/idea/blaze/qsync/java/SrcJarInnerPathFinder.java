@@ -15,19 +15,29 @@
  */
 package com.google.idea.blaze.qsync.java;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.idea.blaze.common.artifact.BuildArtifactCache;
+import com.google.idea.blaze.exception.BuildException;
+import com.google.idea.blaze.qsync.artifacts.BuildArtifact;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /** Utility for finding inner paths of a source jar corresponding to package roots */
@@ -63,28 +73,82 @@ public class SrcJarInnerPathFinder {
     }
   }
 
+  /** Jars larger than this are streamed rather than read into memory to be inspected. */
+  private static final long MAX_IN_MEMORY_JAR_SIZE = 64L * 1024 * 1024;
+
+  private static final int MAX_CACHED_JARS = 10000;
+
   private final Logger logger = Logger.getLogger(SrcJarInnerPathFinder.class.getSimpleName());
   private final PackageStatementParser packageStatementParser;
 
+  /**
+   * The inner paths found in each jar, keyed by the jar digest (or, for jars in the workspace, its
+   * path, size and modification time) and the {@link AllowPackagePrefixes} value used.
+   */
+  private final Cache<String, ImmutableSet<JarPath>> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_JARS).build();
+
   public SrcJarInnerPathFinder(PackageStatementParser packageStatementParser) {
     this.packageStatementParser = packageStatementParser;
   }
 
   public ImmutableSet<JarPath> findInnerJarPaths(
       File jarFile, AllowPackagePrefixes allowPackagePrefixes) {
-    try (InputStream in = new FileInputStream(jarFile)) {
-      return findInnerJarPaths(in, allowPackagePrefixes);
+    String key =
+        String.format(
+            "%s:%s:%d:%d",
+            allowPackagePrefixes, jarFile, jarFile.length(), jarFile.lastModified());
+    ImmutableSet<JarPath> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    ImmutableSet<JarPath> paths;
+    try {
+      paths = findInnerJarPathsFromZipFile(jarFile, allowPackagePrefixes);
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Failed to examine " + jarFile, ioe);
       // return the jar file root to ensure we don't ignore it.
       return ImmutableSet.of(JarPath.create("", ""));
     }
+    cache.put(key, paths);
+    return paths;
+  }
+
+  /**
+   * Finds the inner paths of a build artifact, fetching it from the cache only if it has not been
+   * examined before.
+   */
+  public ImmutableSet<JarPath> findInnerJarPaths(
+      BuildArtifact artifact,
+      BuildArtifactCache buildCache,
+      AllowPackagePrefixes allowPackagePrefixes)
+      throws BuildException {
+    String key = allowPackagePrefixes + ":" + artifact.digest();
+    ImmutableSet<JarPath> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    ImmutableSet<JarPath> paths =
+        findInnerJarPaths(artifact.blockingGetFrom(buildCache), allowPackagePrefixes);
+    cache.put(key, paths);
+    return paths;
   }
 
   public ImmutableSet<JarPath> findInnerJarPaths(
       ByteSource artifact, AllowPackagePrefixes allowPackagePrefixes) {
-    try (InputStream in = artifact.openBufferedStream()) {
-      return findInnerJarPaths(in, allowPackagePrefixes);
+    try {
+      Optional<Long> size = artifact.sizeIfKnown().toJavaUtil();
+      if (size.isPresent() && size.get() <= MAX_IN_MEMORY_JAR_SIZE) {
+        ByteBuffer jar = ByteBuffer.wrap(artifact.read());
+        try {
+          return findInnerJarPaths(jar, allowPackagePrefixes);
+        } catch (ZipException e) {
+          logger.log(Level.FINE, "Falling back to streaming " + artifact, e);
+        }
+      }
+      try (InputStream in = artifact.openBufferedStream()) {
+        return findInnerJarPaths(in, allowPackagePrefixes);
+      }
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Failed to examine " + artifact, ioe);
       // return the jar file root to ensure we don't ignore it.
@@ -92,26 +156,93 @@ public class SrcJarInnerPathFinder {
     }
   }
 
+  /**
+   * Finds the inner paths of a jar on disk from its central directory, like {@link
+   * #findInnerJarPaths(ByteBuffer, AllowPackagePrefixes)}. The jar is not memory mapped, since a
+   * mapped file can't be deleted or replaced on Windows until the mapping is garbage collected.
+   */
+  private ImmutableSet<JarPath> findInnerJarPathsFromZipFile(
+      File jarFile, AllowPackagePrefixes allowPackagePrefixes) throws IOException {
+    try (ZipFile zip = new ZipFile(jarFile)) {
+      JarPathCollector collector = new JarPathCollector(allowPackagePrefixes);
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry e = entries.nextElement();
+        if (e.isDirectory() || !collector.shouldRead(e.getName())) {
+          continue;
+        }
+        try (InputStream in = zip.getInputStream(e)) {
+          collector.add(e.getName(), packageStatementParser.readPackage(in));
+        }
+      }
+      return collector.build();
+    } catch (ZipException e) {
+      logger.log(Level.FINE, "Falling back to streaming " + jarFile, e);
+    }
+    try (InputStream in = new FileInputStream(jarFile)) {
+      return findInnerJarPaths(in, allowPackagePrefixes);
+    }
+  }
+
+  /**
+   * Finds the inner paths by reading the zip central directory, so that only the start of the
+   * first source file in each top level directory is decompressed.
+   */
+  private ImmutableSet<JarPath> findInnerJarPaths(
+      ByteBuffer jar, AllowPackagePrefixes allowPackagePrefixes) throws IOException {
+    JarPathCollector collector = new JarPathCollector(allowPackagePrefixes);
+    for (ZipCentralDirectory.Entry e : ZipCentralDirectory.readEntries(jar)) {
+      if (e.isDirectory() || !collector.shouldRead(e.getName())) {
+        continue;
+      }
+      try (InputStream in = e.open()) {
+        collector.add(e.getName(), packageStatementParser.readPackage(in));
+      }
+    }
+    return collector.build();
+  }
+
   private ImmutableSet<JarPath> findInnerJarPaths(
       InputStream jarFile, AllowPackagePrefixes allowPackagePrefixes) throws IOException {
-    Set<JarPath> paths = Sets.newHashSet();
+    JarPathCollector collector = new JarPathCollector(allowPackagePrefixes);
     ZipInputStream zis = new ZipInputStream(new BufferedInputStream(jarFile));
 
     ZipEntry e;
-    Set<Path> topLevelPaths = Sets.newHashSet();
     while ((e = zis.getNextEntry()) != null) {
-      if (e.isDirectory()) {
+      if (e.isDirectory() || !collector.shouldRead(e.getName())) {
         continue;
       }
-      Path zipfilePath = Path.of(e.getName());
+      collector.add(e.getName(), packageStatementParser.readPackage(zis));
+      zis.closeEntry();
+    }
+    return collector.build();
+  }
+
+  /**
+   * Works out the inner paths of a jar from the packages of its source files. Only the first source
+   * file in each top level directory of the jar is read.
+   */
+  private class JarPathCollector {
+    private final AllowPackagePrefixes allowPackagePrefixes;
+    private final Set<JarPath> paths = Sets.newHashSet();
+    private final Set<Path> topLevelPaths = Sets.newHashSet();
+
+    JarPathCollector(AllowPackagePrefixes allowPackagePrefixes) {
+      this.allowPackagePrefixes = allowPackagePrefixes;
+    }
+
+    /** Returns true if the package of the given entry should be read and passed to {@link #add}. */
+    boolean shouldRead(String entryName) {
+      Path zipfilePath = Path.of(entryName);
       if (!(zipfilePath.getFileName().toString().endsWith(".java")
           || zipfilePath.getFileName().toString().endsWith(".kt"))) {
-        continue;
+        return false;
       }
-      if (!topLevelPaths.add(zipfilePath.getName(0))) {
-        continue;
-      }
-      String pname = packageStatementParser.readPackage(zis);
+      return topLevelPaths.add(zipfilePath.getName(0));
+    }
+
+    void add(String entryName, String pname) {
+      Path zipfilePath = Path.of(entryName);
       Path packageAsPath = Path.of(pname.replace('.', '/'));
       Path zipPath = zipfilePath.getParent();
       if (zipPath == null) {
@@ -133,12 +264,14 @@ public class SrcJarInnerPathFinder {
               "Java package name " + pname + " does not match srcjar path " + zipfilePath);
         }
       }
-      zis.closeEntry();
     }
-    if (paths.isEmpty()) {
-      // we didn't find any java/kt sources. Add the jar file root to ensure we don't ignore it.
-      paths.add(JarPath.create("", ""));
+
+    ImmutableSet<JarPath> build() {
+      if (paths.isEmpty()) {
+        // we didn't find any java/kt sources. Add the jar file root to ensure we don't ignore it.
+        paths.add(JarPath.create("", ""));
+      }
+      return ImmutableSet.copyOf(paths);
     }
-    return ImmutableSet.copyOf(paths);
   }
 }
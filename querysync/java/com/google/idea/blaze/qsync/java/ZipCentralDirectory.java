@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal reader for zip files held in a {@link ByteBuffer}, typically a memory mapped file.
+ *
+ * <p>Unlike {@link java.util.zip.ZipInputStream}, which must decompress every entry in turn to find
+ * the next one, this reads the entry list from the central directory at the end of the file, and
+ * only touches the data of entries that are actually opened. Opened entries are decompressed
+ * lazily, so reading just the start of an entry only decompresses the first block of it.
+ *
+ * <p>Only what is needed for source jars is supported: zip64 files, encrypted entries and
+ * compression methods other than stored and deflated are rejected with a {@link ZipException}, so
+ * that callers can fall back to {@link java.util.zip.ZipInputStream}.
+ */
+final class ZipCentralDirectory {
+
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int END_SIZE = 22;
+  private static final int CENTRAL_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_SIZE = 46;
+  private static final int LOCAL_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_SIZE = 30;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final int FLAG_ENCRYPTED = 1;
+
+  private ZipCentralDirectory() {}
+
+  /** An entry in the zip file. */
+  static final class Entry {
+    private final ByteBuffer zip;
+    private final String name;
+    private final int method;
+    private final long compressedSize;
+    private final long localHeaderOffset;
+
+    private Entry(
+        ByteBuffer zip, String name, int method, long compressedSize, long localHeaderOffset) {
+      this.zip = zip;
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /** Opens the contents of the entry. The returned stream must be closed. */
+    InputStream open() throws IOException {
+      int local = checkedOffset(zip, localHeaderOffset, LOCAL_SIZE);
+      if (zip.getInt(local) != LOCAL_SIGNATURE) {
+        throw new ZipException("Bad local header for " + name);
+      }
+      int dataStart =
+          local
+              + LOCAL_SIZE
+              + Short.toUnsignedInt(zip.getShort(local + 26))
+              + Short.toUnsignedInt(zip.getShort(local + 28));
+      checkedOffset(zip, dataStart, compressedSize);
+      ByteBuffer data = zip.duplicate();
+      data.position(dataStart);
+      if (method == STORED) {
+        data.limit(dataStart + (int) compressedSize);
+        return new ByteBufferInputStream(data);
+      }
+      // The inflater needs an extra byte of input past the end of the data when there is no
+      // zlib wrapper. There is always at least the central directory following the entry data.
+      data.limit(Math.min(zip.limit(), dataStart + (int) compressedSize + 1));
+      Inflater inflater = new Inflater(/* nowrap= */ true);
+      return new InflaterInputStream(new ByteBufferInputStream(data), inflater) {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+          if (!closed) {
+            closed = true;
+            inflater.end();
+            super.close();
+          }
+        }
+      };
+    }
+  }
+
+  /** Reads the list of entries from the central directory of a zip file. */
+  static ImmutableList<Entry> readEntries(ByteBuffer buffer) throws IOException {
+    ByteBuffer zip = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int end = findEndRecord(zip);
+    int entryCount = Short.toUnsignedInt(zip.getShort(end + 10));
+    long centralSize = Integer.toUnsignedLong(zip.getInt(end + 12));
+    long centralOffset = Integer.toUnsignedLong(zip.getInt(end + 16));
+    if (entryCount == 0xffff || centralOffset == 0xffffffffL) {
+      throw new ZipException("zip64 is not supported");
+    }
+    int pos = checkedOffset(zip, centralOffset, centralSize);
+    ImmutableList.Builder<Entry> entries = ImmutableList.builderWithExpectedSize(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      checkedOffset(zip, pos, CENTRAL_SIZE);
+      if (zip.getInt(pos) != CENTRAL_SIGNATURE) {
+        throw new ZipException("Bad central directory entry at " + pos);
+      }
+      int flags = Short.toUnsignedInt(zip.getShort(pos + 8));
+      int method = Short.toUnsignedInt(zip.getShort(pos + 10));
+      long compressedSize = Integer.toUnsignedLong(zip.getInt(pos + 20));
+      int nameLength = Short.toUnsignedInt(zip.getShort(pos + 28));
+      int extraLength = Short.toUnsignedInt(zip.getShort(pos + 30));
+      int commentLength = Short.toUnsignedInt(zip.getShort(pos + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(zip.getInt(pos + 42));
+      if ((flags & FLAG_ENCRYPTED) != 0 || (method != STORED && method != DEFLATED)) {
+        throw new ZipException("Unsupported zip entry at " + pos);
+      }
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuffer = zip.duplicate();
+      nameBuffer.position(checkedOffset(zip, pos + CENTRAL_SIZE, nameLength));
+      nameBuffer.get(name);
+      entries.add(
+          new Entry(zip, new String(name, UTF_8), method, compressedSize, localHeaderOffset));
+      pos += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+    }
+    return entries.build();
+  }
+
+  private static int findEndRecord(ByteBuffer zip) throws ZipException {
+    int last = zip.limit() - END_SIZE;
+    int first = Math.max(0, last - MAX_COMMENT_SIZE);
+    for (int pos = last; pos >= first; pos--) {
+      if (zip.getInt(pos) == END_SIGNATURE) {
+        return pos;
+      }
+    }
+    throw new ZipException("No end of central directory record found");
+  }
+
+  /** Checks that {@code length} bytes from {@code offset} are within the buffer. */
+  private static int checkedOffset(ByteBuffer zip, long offset, long length)
+      throws ZipException {
+    if (offset < 0 || length < 0 || offset + length > zip.limit()) {
+      throw new ZipException("Truncated zip file");
+    }
+    return (int) offset;
+  }
+
+  /** An input stream which reads the remaining contents of a {@link ByteBuffer}. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -17,7 +17,6 @@ package com.google.idea.blaze.qsync.project;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
-import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static java.util.Arrays.stream;
 
 import com.google.auto.value.AutoValue;
@@ -30,9 +29,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.google.idea.blaze.common.Context;
@@ -43,7 +40,6 @@ import com.google.idea.blaze.common.TargetTree;
 import com.google.idea.blaze.qsync.project.ProjectTarget.SourceType;
 import com.google.idea.blaze.qsync.query.PackageSet;
 import java.nio.file.Path;
-import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -89,8 +85,8 @@ public abstract class BuildGraphData {
    * may be external.
    */
   @Memoized
-  ImmutableMultimap<Label, Label> reverseDeps() {
-    ImmutableMultimap.Builder<Label, Label> map = ImmutableMultimap.builder();
+  IndexedLabelMultimap reverseDeps() {
+    IndexedLabelMultimap.Builder map = IndexedLabelMultimap.builder();
     for (ProjectTarget t : targetMap().values()) {
       for (Label dep : t.deps()) {
         map.put(dep, t.label());
@@ -107,7 +103,7 @@ public abstract class BuildGraphData {
    * themselves).
    */
   public ImmutableSet<Label> getSameLanguageTargetsDependingOn(Set<Label> targets) {
-    ImmutableMultimap<Label, Label> rdeps = reverseDeps();
+    IndexedLabelMultimap rdeps = reverseDeps();
     ImmutableSet.Builder<Label> directRdeps = ImmutableSet.builder();
     directRdeps.addAll(targets);
     for (Label target : targets) {
@@ -207,8 +203,8 @@ public abstract class BuildGraphData {
       BuildGraphData result = autoBuild();
       // these are memoized, but we choose to pay the cost of building it now so that it's done at
       // sync time rather than later on.
-      ImmutableSetMultimap<Label, Label> unused = result.sourceOwners();
-      ImmutableMultimap<Label, Label> unused2 = result.reverseDeps();
+      IndexedLabelMultimap unused = result.sourceOwners();
+      IndexedLabelMultimap unused2 = result.reverseDeps();
       return result;
     }
   }
@@ -271,12 +267,16 @@ public abstract class BuildGraphData {
     return Sets.intersection(builder.build(), projectDeps()).immutableCopy();
   }
 
+  /** A map from source file label to the in-project targets that include it as a source. */
   @Memoized
-  public ImmutableSetMultimap<Label, Label> sourceOwners() {
-    return targetMap().values().stream()
-        .flatMap(
-            t -> t.sourceLabels().values().stream().map(src -> new SimpleEntry<>(src, t.label())))
-        .collect(toImmutableSetMultimap(e -> e.getKey(), e -> e.getValue()));
+  IndexedLabelMultimap sourceOwners() {
+    IndexedLabelMultimap.Builder map = IndexedLabelMultimap.builder();
+    for (ProjectTarget t : targetMap().values()) {
+      for (Label src : t.sourceLabels().values()) {
+        map.put(src, t.label());
+      }
+    }
+    return map.build();
   }
 
   @Nullable
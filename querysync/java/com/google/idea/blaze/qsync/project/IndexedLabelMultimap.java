@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.idea.blaze.common.Label;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A compact, immutable multimap from {@link Label} to sets of {@link Label}s.
+ *
+ * <p>This is used in place of a guava {@code Multimap} for the large label graphs in {@link
+ * BuildGraphData}, which can have hundreds of thousands of entries. Rather than allocating an entry
+ * object per mapping, each distinct label is assigned an integer id (its index in a sorted array),
+ * and the mappings are stored in compressed sparse row form: the values for the key with id {@code
+ * i} are the ids {@code values[offsets[i]] .. values[offsets[i + 1] - 1]}.
+ *
+ * <p>Looking up a key requires a binary search over the labels, so is {@code O(log n)}.
+ */
+final class IndexedLabelMultimap {
+
+  static final IndexedLabelMultimap EMPTY = builder().build();
+
+  private static final Comparator<Label> ORDER = Comparator.comparing(Label::toString);
+
+  /** All distinct labels, both keys and values, sorted by {@link #ORDER}. */
+  private final Label[] labels;
+
+  private final int[] offsets;
+  private final int[] values;
+
+  private IndexedLabelMultimap(Label[] labels, int[] offsets, int[] values) {
+    this.labels = labels;
+    this.offsets = offsets;
+    this.values = values;
+  }
+
+  private int idOf(@Nullable Label label) {
+    if (label == null) {
+      return -1;
+    }
+    return Arrays.binarySearch(labels, label, ORDER);
+  }
+
+  /** Returns the values for a key, or an empty set if there are none. */
+  ImmutableSet<Label> get(@Nullable Label key) {
+    int id = idOf(key);
+    if (id < 0) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Label> result =
+        ImmutableSet.builderWithExpectedSize(offsets[id + 1] - offsets[id]);
+    for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+      result.add(labels[values[i]]);
+    }
+    return result.build();
+  }
+
+  boolean containsKey(@Nullable Label key) {
+    int id = idOf(key);
+    return id >= 0 && offsets[id + 1] > offsets[id];
+  }
+
+  /** The total number of key-value mappings. */
+  int size() {
+    return values.length;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for {@link IndexedLabelMultimap}. Duplicate mappings are ignored. */
+  static final class Builder {
+    private final List<Label> keys = new ArrayList<>();
+    private final List<Label> values = new ArrayList<>();
+
+    private Builder() {}
+
+    @CanIgnoreReturnValue
+    Builder put(Label key, Label value) {
+      keys.add(key);
+      values.add(value);
+      return this;
+    }
+
+    IndexedLabelMultimap build() {
+      Map<Label, Integer> ids = new HashMap<>();
+      keys.forEach(l -> ids.putIfAbsent(l, 0));
+      values.forEach(l -> ids.putIfAbsent(l, 0));
+      Label[] labels = ids.keySet().toArray(new Label[0]);
+      Arrays.sort(labels, ORDER);
+      for (int i = 0; i < labels.length; i++) {
+        ids.put(labels[i], i);
+      }
+
+      // Sort the mappings by key then value, so that those for each key are contiguous and
+      // duplicates are adjacent.
+      long[] mappings = new long[keys.size()];
+      for (int i = 0; i < mappings.length; i++) {
+        mappings[i] = ((long) ids.get(keys.get(i)) << 32) | ids.get(values.get(i));
+      }
+      Arrays.sort(mappings);
+
+      int[] offsets = new int[labels.length + 1];
+      int[] flatValues = new int[mappings.length];
+      int count = 0;
+      for (int i = 0; i < mappings.length; i++) {
+        if (i > 0 && mappings[i] == mappings[i - 1]) {
+          continue;
+        }
+        offsets[(int) (mappings[i] >>> 32) + 1]++;
+        flatValues[count++] = (int) mappings[i];
+      }
+      for (int i = 0; i < labels.length; i++) {
+        offsets[i + 1] += offsets[i];
+      }
+      return new IndexedLabelMultimap(labels, offsets, Arrays.copyOf(flatValues, count));
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.qsync.query;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.util.stream.Collectors.joining;
 
 import com.google.auto.value.AutoValue;
@@ -23,9 +24,11 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Formattable;
 import java.util.Formatter;
+import java.util.List;
 
 /** Represents arguments to a {@code query} invocation. */
 @AutoValue
@@ -87,6 +90,31 @@ public abstract class QuerySpec implements Formattable {
     formatter.format(truncated);
   }
 
+  /**
+   * Splits this query into at most {@code maxShards} queries whose results, when combined, are the
+   * same as the results of this query.
+   *
+   * <p>The include patterns are distributed round-robin across the shards, and every shard retains
+   * all exclude patterns. This is valid since {@code (a + b) - c} is equivalent to {@code (a - c) +
+   * (b - c)}. If there are fewer include patterns than {@code maxShards}, fewer shards are returned.
+   */
+  public ImmutableList<QuerySpec> shard(int maxShards) {
+    int shardCount = Math.min(Math.max(maxShards, 1), includes().size());
+    if (shardCount <= 1) {
+      return ImmutableList.of(this);
+    }
+    List<Builder> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      Builder shard = builder().workspaceRoot(workspaceRoot());
+      shard.excludesBuilder().addAll(excludes());
+      shards.add(shard);
+    }
+    for (int i = 0; i < includes().size(); i++) {
+      shards.get(i % shardCount).includesBuilder().add(includes().get(i));
+    }
+    return shards.stream().map(Builder::build).collect(toImmutableList());
+  }
+
   public static Builder builder() {
     return new AutoValue_QuerySpec.Builder();
   }
@@ -28,12 +28,13 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import com.google.idea.blaze.common.Interners;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.query.Query.SourceFile;
 import java.io.BufferedInputStream;
@@ -42,6 +43,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -113,6 +115,25 @@ public abstract class QuerySummary {
           // From android_instrumentation_test rules
           "test_app");
 
+  // All attributes that are read by the summarization, used to discard others cheaply.
+  private static final ImmutableSet<String> SUMMARIZED_ATTRIBUTES =
+      ImmutableSet.<String>builder()
+          .add(
+              "srcs",
+              "hdrs",
+              "idl_srcs",
+              "resource_files",
+              "manifest",
+              "custom_package",
+              "copts",
+              "tags",
+              "main_class",
+              "imports")
+          .addAll(DEPENDENCY_ATTRIBUTES)
+          .addAll(RULE_SCOPED_ATTRIBUTES.keySet())
+          .addAll(RUNTIME_DEP_ATTRIBUTES)
+          .build();
+
   public abstract Query.Summary proto();
 
   public boolean isCompatibleWithCurrentPluginVersion() {
@@ -132,92 +153,100 @@ public abstract class QuerySummary {
   public static QuerySummary create(InputStream protoInputStream) throws IOException {
     // IMPORTANT: when changing the logic herein, you should also update PROTO_VERSION above.
     // Failure to do so is likely to result in problems during a partial sync.
-    Map<String, Query.SourceFile> sourceFileMap = Maps.newHashMap();
-    Map<String, Query.Rule> ruleMap = Maps.newHashMap();
-    Set<String> packagesWithErrors = Sets.newHashSet();
+    //
+    // Targets are summarized one at a time, straight into the summary builder, so that only a
+    // single build target is held in memory at once. Strings are interned after summarization
+    // so that we don't pay for interning the (large) parts of each target that are discarded.
+    Query.Summary.Builder summary = Query.Summary.newBuilder().setVersion(PROTO_VERSION);
+    Set<String> packagesWithErrors = Sets.newLinkedHashSet();
     Build.Target target;
-    while ((target = intern(Target.parseDelimitedFrom(protoInputStream))) != null) {
+    while ((target = Target.parseDelimitedFrom(protoInputStream)) != null) {
       switch (target.getType()) {
         case SOURCE_FILE:
-          Query.SourceFile sourceFile =
-              Query.SourceFile.newBuilder()
-                  .setLocation(target.getSourceFile().getLocation())
-                  .addAllSubinclude(target.getSourceFile().getSubincludeList())
-                  .build();
-          sourceFileMap.put(target.getSourceFile().getName(), sourceFile);
-          if (target.getSourceFile().getPackageContainsErrors()) {
-            packagesWithErrors.add(target.getSourceFile().getName());
+          Build.SourceFile source = target.getSourceFile();
+          summary.putSourceFiles(
+              Interners.STRING.intern(source.getName()),
+              intern(
+                  Query.SourceFile.newBuilder()
+                      .setLocation(source.getLocation())
+                      .addAllSubinclude(source.getSubincludeList())
+                      .build()));
+          if (source.getPackageContainsErrors()) {
+            packagesWithErrors.add(Interners.STRING.intern(source.getName()));
           }
           break;
         case RULE:
           // TODO We don't need all rules types in the proto since many are not user later on.
           //   We could filter the rules here, or even create rule-specific proto messages to
           //   reduce the size of the output proto.
-          Query.Rule.Builder rule =
-              Query.Rule.newBuilder().setRuleClass(target.getRule().getRuleClass());
-          for (Build.Attribute a : target.getRule().getAttributeList()) {
-            if (a.getName().equals("srcs")) {
-              rule.addAllSources(a.getStringListValueList());
-            } else if (a.getName().equals("hdrs")) {
-              rule.addAllHdrs(a.getStringListValueList());
-            } else if (attributeIsTrackedDependency(a.getName(), target)) {
-              if (a.hasStringValue()) {
-                rule.addDeps(a.getStringValue());
-              } else {
-                rule.addAllDeps(a.getStringListValueList());
-              }
-            } else if (RUNTIME_DEP_ATTRIBUTES.contains(a.getName())) {
-              if (a.hasStringValue()) {
-                rule.addRuntimeDeps(a.getStringValue());
-              } else {
-                rule.addAllRuntimeDeps(a.getStringListValueList());
-              }
-            } else if (a.getName().equals("idl_srcs")) {
-              rule.addAllIdlSources(a.getStringListValueList());
-            } else if (a.getName().equals("resource_files")) {
-              rule.addAllResourceFiles(a.getStringListValueList());
-            } else if (a.getName().equals("manifest")) {
-              rule.setManifest(a.getStringValue());
-            } else if (a.getName().equals("custom_package")) {
-              rule.setCustomPackage(a.getStringValue());
-            } else if (a.getName().equals("copts")) {
-              rule.addAllCopts(a.getStringListValueList());
-            } else if (a.getName().equals("tags")) {
-              rule.addAllTags(a.getStringListValueList());
-            } else if (a.getName().equals("main_class")) {
-              rule.setMainClass(a.getStringValue());
-            }
-
-            if (a.getName().equals("test_app")) {
-              rule.setTestApp(a.getStringValue());
-            } else if (a.getName().equals("instruments")) {
-              rule.setInstruments(a.getStringValue());
-            } else if (a.getName().equals("imports")) {
-              rule.addAllImports(a.getStringListValueList());
-            }
-          }
-          ruleMap.put(Label.of(target.getRule().getName()).toString(), rule.build());
+          summary.putRules(
+              Interners.STRING.intern(Label.of(target.getRule().getName()).toString()),
+              intern(summarizeRule(target.getRule())));
           break;
         default:
           break;
       }
     }
-    return create(
-        Query.Summary.newBuilder()
-            .setVersion(PROTO_VERSION)
-            .putAllSourceFiles(sourceFileMap)
-            .putAllRules(ruleMap)
-            .addAllPackagesWithErrors(packagesWithErrors)
-            .build());
+    return create(summary.addAllPackagesWithErrors(packagesWithErrors).build());
+  }
+
+  private static Query.Rule summarizeRule(Build.Rule buildRule) {
+    Query.Rule.Builder rule = Query.Rule.newBuilder().setRuleClass(buildRule.getRuleClass());
+    for (Build.Attribute a : buildRule.getAttributeList()) {
+      if (!SUMMARIZED_ATTRIBUTES.contains(a.getName())) {
+        // Most attributes are not needed; skip them without further inspection.
+        continue;
+      }
+      if (a.getName().equals("srcs")) {
+        rule.addAllSources(a.getStringListValueList());
+      } else if (a.getName().equals("hdrs")) {
+        rule.addAllHdrs(a.getStringListValueList());
+      } else if (attributeIsTrackedDependency(a.getName(), buildRule)) {
+        if (a.hasStringValue()) {
+          rule.addDeps(a.getStringValue());
+        } else {
+          rule.addAllDeps(a.getStringListValueList());
+        }
+      } else if (RUNTIME_DEP_ATTRIBUTES.contains(a.getName())) {
+        if (a.hasStringValue()) {
+          rule.addRuntimeDeps(a.getStringValue());
+        } else {
+          rule.addAllRuntimeDeps(a.getStringListValueList());
+        }
+      } else if (a.getName().equals("idl_srcs")) {
+        rule.addAllIdlSources(a.getStringListValueList());
+      } else if (a.getName().equals("resource_files")) {
+        rule.addAllResourceFiles(a.getStringListValueList());
+      } else if (a.getName().equals("manifest")) {
+        rule.setManifest(a.getStringValue());
+      } else if (a.getName().equals("custom_package")) {
+        rule.setCustomPackage(a.getStringValue());
+      } else if (a.getName().equals("copts")) {
+        rule.addAllCopts(a.getStringListValueList());
+      } else if (a.getName().equals("tags")) {
+        rule.addAllTags(a.getStringListValueList());
+      } else if (a.getName().equals("main_class")) {
+        rule.setMainClass(a.getStringValue());
+      }
+
+      if (a.getName().equals("test_app")) {
+        rule.setTestApp(a.getStringValue());
+      } else if (a.getName().equals("instruments")) {
+        rule.setInstruments(a.getStringValue());
+      } else if (a.getName().equals("imports")) {
+        rule.addAllImports(a.getStringListValueList());
+      }
+    }
+    return rule.build();
   }
 
-  private static boolean attributeIsTrackedDependency(String attributeName, Build.Target target) {
+  private static boolean attributeIsTrackedDependency(String attributeName, Build.Rule rule) {
     if (DEPENDENCY_ATTRIBUTES.contains(attributeName)) {
       return true;
     }
     if (RULE_SCOPED_ATTRIBUTES.containsKey(attributeName)) {
       return requireNonNull(RULE_SCOPED_ATTRIBUTES.get(attributeName))
-          .contains(target.getRule().getRuleClass());
+          .contains(rule.getRuleClass());
     }
     return false;
   }
@@ -226,6 +255,27 @@ public abstract class QuerySummary {
     return create(new BufferedInputStream(new FileInputStream(protoFile)));
   }
 
+  /**
+   * Combines several summaries into one. This is used when the output of several independent
+   * {@code query} invocations (e.g. from a sharded query) needs to be treated as a single result.
+   *
+   * <p>If the same rule or source file appears in more than one summary, the one from the last
+   * summary is used.
+   */
+  public static QuerySummary merge(Collection<QuerySummary> summaries) {
+    if (summaries.size() == 1) {
+      return Iterables.getOnlyElement(summaries);
+    }
+    Query.Summary.Builder merged = Query.Summary.newBuilder().setVersion(PROTO_VERSION);
+    Set<String> packagesWithErrors = Sets.newLinkedHashSet();
+    for (QuerySummary summary : summaries) {
+      merged.putAllSourceFiles(summary.proto().getSourceFilesMap());
+      merged.putAllRules(summary.proto().getRulesMap());
+      packagesWithErrors.addAll(summary.proto().getPackagesWithErrorsList());
+    }
+    return create(merged.addAllPackagesWithErrors(packagesWithErrors).build());
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.qsync.java.CachingPackageReader.Stats;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CachingPackageReaderTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private final List<Path> filesRead = new ArrayList<>();
+
+  private final PackageReader recordingReader =
+      new PackageReader() {
+        private final PackageStatementParser parser = new PackageStatementParser();
+
+        @Override
+        public synchronized String readPackage(Path path) throws IOException {
+          filesRead.add(path);
+          return parser.readPackage(path);
+        }
+      };
+
+  private Path writeSource(String name, String packageName, long modifiedTime)
+      throws IOException {
+    Path path = tmpDir.getRoot().toPath().resolve(name);
+    Files.write(path, ("package " + packageName + ";\n\nclass A {}\n").getBytes(UTF_8));
+    Files.setLastModifiedTime(path, FileTime.fromMillis(modifiedTime));
+    return path;
+  }
+
+  private Path cacheFile() {
+    return tmpDir.getRoot().toPath().resolve("cache/package_cache");
+  }
+
+  @Test
+  public void unchangedFiles_notReadAgain() throws IOException {
+    Path a = writeSource("A.java", "com.a", 1000);
+    Path b = writeSource("B.java", "com.b", 1000);
+    CachingPackageReader reader = new CachingPackageReader(recordingReader, cacheFile());
+
+    assertThat(reader.readPackages(ImmutableList.of(a, b))).containsExactly("com.a", "com.b");
+    assertThat(reader.readPackages(ImmutableList.of(a, b))).containsExactly("com.a", "com.b");
+
+    assertThat(filesRead).containsExactly(a, b);
+    Stats stats = reader.takeStats();
+    assertThat(stats.hits()).isEqualTo(2);
+    assertThat(stats.misses()).isEqualTo(2);
+  }
+
+  @Test
+  public void modifiedFile_readAgain() throws IOException {
+    Path a = writeSource("A.java", "com.a", 1000);
+    Path b = writeSource("B.java", "com.b", 1000);
+    CachingPackageReader reader = new CachingPackageReader(recordingReader, cacheFile());
+    reader.readPackages(ImmutableList.of(a, b));
+    filesRead.clear();
+    reader.takeStats();
+
+    writeSource("B.java", "com.other", 2000);
+
+    assertThat(reader.readPackages(ImmutableList.of(a, b))).containsExactly("com.a", "com.other");
+    assertThat(filesRead).containsExactly(b);
+    Stats stats = reader.takeStats();
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.misses()).isEqualTo(1);
+  }
+
+  @Test
+  public void unchangedFiles_checkedOnExecutor_notReadAgain() throws IOException {
+    Path a = writeSource("A.java", "com.a", 1000);
+    Path b = writeSource("B.java", "com.b", 1000);
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    try {
+      CachingPackageReader reader =
+          new CachingPackageReader(executor, recordingReader, cacheFile());
+      reader.readPackages(ImmutableList.of(a, b));
+      filesRead.clear();
+
+      assertThat(reader.readPackages(ImmutableList.of(a, b)))
+          .containsExactly("com.a", "com.b")
+          .inOrder();
+      assertThat(filesRead).isEmpty();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void cache_persistedAcrossInstances() throws IOException {
+    Path a = writeSource("A.java", "com.a", 1000);
+    new CachingPackageReader(recordingReader, cacheFile()).readPackages(ImmutableList.of(a));
+    filesRead.clear();
+
+    CachingPackageReader reader = new CachingPackageReader(recordingReader, cacheFile());
+
+    assertThat(reader.readPackages(ImmutableList.of(a))).containsExactly("com.a");
+    assertThat(filesRead).isEmpty();
+    assertThat(reader.takeStats().hits()).isEqualTo(1);
+  }
+
+  @Test
+  public void corruptCacheFile_ignored() throws IOException {
+    Path a = writeSource("A.java", "com.a", 1000);
+    Files.createDirectories(cacheFile().getParent());
+    Files.write(cacheFile(), "not a cache".getBytes(UTF_8));
+
+    CachingPackageReader reader = new CachingPackageReader(recordingReader, cacheFile());
+
+    assertThat(reader.readPackages(ImmutableList.of(a))).containsExactly("com.a");
+    assertThat(filesRead).containsExactly(a);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.AllowPackagePrefixes.ALLOW_NON_EMPTY_PACKAGE_PREFIXES;
+import static com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.AllowPackagePrefixes.EMPTY_PACKAGE_PREFIXES_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.idea.blaze.common.Label;
+import com.google.idea.blaze.common.artifact.BuildArtifactCache;
+import com.google.idea.blaze.qsync.artifacts.BuildArtifact;
+import com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.JarPath;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public class SrcJarInnerPathFinderTest {
+
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Mock public BuildArtifactCache cache;
+
+  private final SrcJarInnerPathFinder finder =
+      new SrcJarInnerPathFinder(new PackageStatementParser());
+
+  private static byte[] createJar(boolean stored) throws IOException {
+    ByteArrayOutputStream jar = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(jar)) {
+      zos.putNextEntry(new ZipEntry("java/"));
+      putEntry(zos, "java/com/org/Class.java", "package com.org;\npublic class Class {}", stored);
+      putEntry(zos, "java/com/org/Other.java", "package com.org;\nclass Other {}", stored);
+      putEntry(zos, "gen/Prefixed.kt", "package com.gen\nclass Prefixed", stored);
+      putEntry(zos, "README", "not a source file", stored);
+      zos.setComment("a comment to skip over");
+    }
+    return jar.toByteArray();
+  }
+
+  private static void putEntry(ZipOutputStream zos, String name, String content, boolean stored)
+      throws IOException {
+    byte[] bytes = content.getBytes(UTF_8);
+    ZipEntry entry = new ZipEntry(name);
+    if (stored) {
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(bytes.length);
+      entry.setCrc(crc.getValue());
+    }
+    zos.putNextEntry(entry);
+    zos.write(bytes);
+  }
+
+  private File writeJar(byte[] contents) throws IOException {
+    File jar = tmpDir.newFile("sources.srcjar");
+    Files.write(jar.toPath(), contents);
+    return jar;
+  }
+
+  private static ImmutableSet<String> describe(ImmutableSet<JarPath> paths) {
+    return paths.stream().map(p -> p.path + ":" + p.packagePrefix).collect(toImmutableSet());
+  }
+
+  @Test
+  public void deflatedJarFile() throws IOException {
+    File jar = writeJar(createJar(false));
+    assertThat(describe(finder.findInnerJarPaths(jar, ALLOW_NON_EMPTY_PACKAGE_PREFIXES)))
+        .containsExactly("java:", "gen:com.gen");
+  }
+
+  @Test
+  public void storedJarFile() throws IOException {
+    File jar = writeJar(createJar(true));
+    assertThat(describe(finder.findInnerJarPaths(jar, ALLOW_NON_EMPTY_PACKAGE_PREFIXES)))
+        .containsExactly("java:", "gen:com.gen");
+  }
+
+  @Test
+  public void emptyPackagePrefixesOnly() throws IOException {
+    File jar = writeJar(createJar(false));
+    assertThat(describe(finder.findInnerJarPaths(jar, EMPTY_PACKAGE_PREFIXES_ONLY)))
+        .containsExactly("java:");
+  }
+
+  @Test
+  public void byteSource_sameAsFile() throws IOException {
+    byte[] contents = createJar(false);
+    assertThat(
+            describe(
+                finder.findInnerJarPaths(
+                    ByteSource.wrap(contents), ALLOW_NON_EMPTY_PACKAGE_PREFIXES)))
+        .isEqualTo(
+            describe(
+                new SrcJarInnerPathFinder(new PackageStatementParser())
+                    .findInnerJarPaths(writeJar(contents), ALLOW_NON_EMPTY_PACKAGE_PREFIXES)));
+  }
+
+  @Test
+  public void notAJar_returnsRoot() throws IOException {
+    File jar = writeJar("not a jar".getBytes(UTF_8));
+    assertThat(describe(finder.findInnerJarPaths(jar, ALLOW_NON_EMPTY_PACKAGE_PREFIXES)))
+        .containsExactly(":");
+  }
+
+  @Test
+  public void buildArtifact_fetchedOncePerDigest() throws Exception {
+    when(cache.get("digest"))
+        .thenReturn(
+            Optional.of(Futures.immediateFuture(ByteSource.wrap(createJar(/* stored= */ false)))));
+    BuildArtifact artifact =
+        BuildArtifact.create("digest", Path.of("out/sources.srcjar"), Label.of("//foo:bar"));
+
+    ImmutableSet<JarPath> first =
+        finder.findInnerJarPaths(artifact, cache, ALLOW_NON_EMPTY_PACKAGE_PREFIXES);
+    ImmutableSet<JarPath> second =
+        finder.findInnerJarPaths(artifact, cache, ALLOW_NON_EMPTY_PACKAGE_PREFIXES);
+
+    assertThat(describe(first)).containsExactly("java:", "gen:com.gen");
+    assertThat(second).isSameInstanceAs(first);
+    verify(cache, times(1)).get("digest");
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.common.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IndexedLabelMultimapTest {
+
+  private static final Label A = Label.of("//a:a");
+  private static final Label B = Label.of("//b:b");
+  private static final Label C = Label.of("//c:c");
+  private static final Label D = Label.of("//d:d");
+
+  @Test
+  public void testEmpty() {
+    assertThat(IndexedLabelMultimap.EMPTY.get(A)).isEmpty();
+    assertThat(IndexedLabelMultimap.EMPTY.get(null)).isEmpty();
+    assertThat(IndexedLabelMultimap.EMPTY.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGet() {
+    IndexedLabelMultimap map =
+        IndexedLabelMultimap.builder().put(C, A).put(A, B).put(A, C).put(B, C).build();
+
+    assertThat(map.get(A)).containsExactly(B, C);
+    assertThat(map.get(B)).containsExactly(C);
+    assertThat(map.get(C)).containsExactly(A);
+    assertThat(map.get(D)).isEmpty();
+    assertThat(map.containsKey(A)).isTrue();
+    assertThat(map.containsKey(D)).isFalse();
+  }
+
+  @Test
+  public void testValueOnlyLabelIsNotAKey() {
+    IndexedLabelMultimap map = IndexedLabelMultimap.builder().put(A, B).build();
+
+    assertThat(map.containsKey(B)).isFalse();
+    assertThat(map.get(B)).isEmpty();
+  }
+
+  @Test
+  public void testDuplicatesIgnored() {
+    IndexedLabelMultimap map = IndexedLabelMultimap.builder().put(A, B).put(A, B).build();
+
+    assertThat(map.get(A)).containsExactly(B);
+    assertThat(map.size()).isEqualTo(1);
+  }
+}
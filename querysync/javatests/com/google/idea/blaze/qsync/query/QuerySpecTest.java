@@ -16,6 +16,7 @@
 package com.google.idea.blaze.qsync.query;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
 
 import java.nio.file.Path;
 import org.junit.Test;
@@ -114,4 +115,30 @@ public class QuerySpecTest {
             .build();
     assertThat(String.format("%.200s", qs)).isEqualTo(qs.toString());
   }
+
+  @Test
+  public void testShard_distributesIncludesAndKeepsExcludes() {
+    QuerySpec qs =
+        QuerySpec.builder()
+            .workspaceRoot(Path.of("/workspace/"))
+            .includePath(Path.of("a"))
+            .includePath(Path.of("b"))
+            .includePath(Path.of("c"))
+            .excludePath(Path.of("a/excluded"))
+            .build();
+    assertThat(qs.shard(2).stream().map(QuerySpec::getQueryExpression).collect(toList()))
+        .containsExactly(
+            "(//a/...:* + //c/...:* - //a/excluded/...:*)", "(//b/...:* - //a/excluded/...:*)")
+        .inOrder();
+  }
+
+  @Test
+  public void testShard_fewerIncludesThanShards() {
+    QuerySpec qs =
+        QuerySpec.builder()
+            .workspaceRoot(Path.of("/workspace/"))
+            .includePath(Path.of("a"))
+            .build();
+    assertThat(qs.shard(4)).containsExactly(qs);
+  }
 }
@@ -18,6 +18,7 @@ package com.google.idea.blaze.qsync.query;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.idea.blaze.qsync.query.QuerySummaryTestUtil.createProtoForPackages;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.truth.Truth8;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.query.Query.SourceFile;
@@ -159,4 +160,21 @@ public class QuerySummaryTest {
     assertThat(qs.getPackages().size()).isEqualTo(1);
     assertThat(qs.getPackages().asPathSet()).containsExactly(TestData.ROOT.resolve("empty"));
   }
+
+  @Test
+  public void testMerge() {
+    QuerySummary merged =
+        QuerySummary.merge(
+            ImmutableList.of(
+                QuerySummary.create(
+                    new QuerySummaryTestBuilder()
+                        .addPackages("//my/build/package1:rule")
+                        .addBuildFileLabelsWithErrors("//my/build/package3:BUILD")
+                        .build()),
+                QuerySummary.create(createProtoForPackages("//my/build/package2:rule"))));
+    assertThat(merged.getRulesMap().keySet())
+        .containsExactly(
+            Label.of("//my/build/package1:rule"), Label.of("//my/build/package2:rule"));
+    assertThat(merged.getPackagesWithErrors()).containsExactly(Path.of("my/build/package3"));
+  }
 }
@@ -133,7 +133,7 @@ class DeployableJarRunConfigurationProducer
         .map(blazeProjectData.getTargetMap()::get)
         .filter(Objects::nonNull)
         .filter(t -> relevantTarget(t))
-        .map(TargetIdeInfo::toTargetInfo)
+        .map(blazeProjectData.getTargetMap()::toTargetInfo)
         .findFirst()
         .orElse(null);
   }
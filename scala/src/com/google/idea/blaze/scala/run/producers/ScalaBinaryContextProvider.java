@@ -54,12 +54,13 @@ class ScalaBinaryContextProvider implements BinaryContextProvider {
       return null;
     }
     TargetIdeInfo target = getTarget(context.getProject(), mainObject);
-    if (target == null) {
+    FilteredTargetMap map = getTargetMap(context.getProject());
+    if (target == null || map == null) {
       return null;
     }
     Option<PsiMethod> mainMethod = ScalaMainMethodUtil.findScala2MainMethod(mainObject);
     PsiElement sourceElement = mainMethod.getOrElse(() -> mainObject);
-    return BinaryRunContext.create(sourceElement, target.toTargetInfo());
+    return BinaryRunContext.create(sourceElement, map.toTargetInfo(target));
   }
 
   @Nullable
@@ -162,12 +163,16 @@ class ScalaBinaryContextProvider implements BinaryContextProvider {
   /** Returns all scala_binary targets reachable from the given source file. */
   private static Collection<TargetIdeInfo> findScalaBinaryTargets(
       Project project, File mainClassFile) {
-    FilteredTargetMap map =
-        SyncCache.getInstance(project)
-            .get(SCALA_BINARY_MAP_KEY, ScalaBinaryContextProvider::computeTargetMap);
+    FilteredTargetMap map = getTargetMap(project);
     return map != null ? map.targetsForSourceFile(mainClassFile) : ImmutableList.of();
   }
 
+  @Nullable
+  private static FilteredTargetMap getTargetMap(Project project) {
+    return SyncCache.getInstance(project)
+        .get(SCALA_BINARY_MAP_KEY, ScalaBinaryContextProvider::computeTargetMap);
+  }
+
   private static FilteredTargetMap computeTargetMap(Project project, BlazeProjectData projectData) {
     return new FilteredTargetMap(
         project,
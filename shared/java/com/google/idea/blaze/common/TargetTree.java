@@ -15,21 +15,21 @@
  */
 package com.google.idea.blaze.common;
 
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-
-import com.google.auto.value.AutoValue;
-import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.base.Joiner;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -37,42 +37,69 @@ import java.util.function.Supplier;
  *
  * <p>This class uses a tree to store the set of targets so that finding all the child targets of a
  * given directory is fast.
+ *
+ * <p>The tree is stored in flat arrays rather than as a graph of node objects, since it may contain
+ * millions of targets. Nodes are numbered in depth first pre-order, so that the subtree rooted at
+ * any node is a contiguous range of node ids. This means that a subtree can share the arrays of the
+ * tree it came from, and its size can be found without visiting it.
  */
 public class TargetTree {
 
-  public static final TargetTree EMPTY = new TargetTree(Node.EMPTY);
+  public static final TargetTree EMPTY = new Builder().build();
   private static final Joiner PATH_JOINER = Joiner.on('/');
 
-  private final Node root;
+  /** Return value of {@link #find} when the path does not exist in the tree. */
+  private static final int NOT_FOUND = -1;
+
+  /** Return value of {@link #find} when the path is a proper prefix of {@link #rootPath}. */
+  private static final int ANCESTOR = -2;
+
+  private final Nodes nodes;
+  private final int root;
 
-  private TargetTree(Node root) {
+  /** The path segments leading to {@link #root}. Empty, unless this tree is a subtree. */
+  private final ImmutableList<String> rootPath;
+
+  private TargetTree(Nodes nodes, int root, ImmutableList<String> rootPath) {
+    this.nodes = nodes;
     this.root = root;
+    this.rootPath = rootPath;
   }
 
   /** Returns the set of labels at the given path, excluding any labels in child packages. */
   public ImmutableSet<Label> get(Path packagePath) {
-    return root.find(packagePath.iterator())
-        .map(
-            node ->
-                node.targets().stream()
-                    .map(name -> Label.fromPackageAndName(packagePath, name))
-                    .collect(toImmutableSet()))
-        .orElse(ImmutableSet.of());
+    int node = find(packagePath);
+    if (node < 0) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Label> labels =
+        ImmutableSet.builderWithExpectedSize(
+            nodes.targetOffsets[node + 1] - nodes.targetOffsets[node]);
+    for (int i = nodes.targetOffsets[node]; i < nodes.targetOffsets[node + 1]; i++) {
+      labels.add(Label.fromPackageAndName(packagePath, nodes.targets[i]));
+    }
+    return labels.build();
   }
 
   public int size() {
-    return root.size();
+    return nodes.targetOffsets[nodes.subtreeEnd[root]] - nodes.targetOffsets[root];
   }
 
   public boolean isEmpty() {
-    return root.isEmpty();
+    return size() == 0;
   }
 
   /** Returns the entire tree as a set of labels. */
   public ImmutableSet<Label> toLabelSet() {
-    return toMap().entries().stream()
-        .map(e -> Label.fromPackageAndName(e.getKey(), e.getValue()))
-        .collect(toImmutableSet());
+    ImmutableSet.Builder<Label> builder = ImmutableSet.builderWithExpectedSize(size());
+    visit(
+        (path, labelNames) -> {
+          if (!labelNames.isEmpty()) {
+            Path pkg = path.get();
+            labelNames.forEach(name -> builder.add(Label.fromPackageAndName(pkg, name)));
+          }
+        });
+    return builder.build();
   }
 
   /**
@@ -81,8 +108,7 @@ public class TargetTree {
    */
   public ImmutableSet<Path> toPathSet() {
     ImmutableSet.Builder<Path> builder = ImmutableSet.builder();
-    root.visit(
-        new ArrayDeque<>(),
+    visit(
         (path, labelNames) -> {
           if (!labelNames.isEmpty()) {
             builder.add(path.get());
@@ -94,95 +120,137 @@ public class TargetTree {
   /** Returns this tree as a map of (package path) -> (label names). */
   public ImmutableMultimap<Path, String> toMap() {
     ImmutableMultimap.Builder<Path, String> builder = ImmutableMultimap.builder();
-    root.visit(new ArrayDeque<>(), (path, labelNames) -> builder.putAll(path.get(), labelNames));
+    visit(
+        (path, labelNames) -> {
+          if (!labelNames.isEmpty()) {
+            builder.putAll(path.get(), labelNames);
+          }
+        });
     return builder.build();
   }
 
   public TargetTree getSubpackages(Path pkg) {
-    return root.find(pkg.iterator())
-        .map(node -> Node.forPath(pkg, node))
-        .map(TargetTree::new)
-        .orElse(TargetTree.EMPTY);
+    int node = find(pkg);
+    if (node == ANCESTOR) {
+      return this;
+    }
+    if (node == NOT_FOUND) {
+      return TargetTree.EMPTY;
+    }
+    ImmutableList.Builder<String> path = ImmutableList.builder();
+    pkg.forEach(p -> path.add(p.toString()));
+    return new TargetTree(nodes, node, path.build());
   }
 
-  interface Visitor {
-    void visit(Supplier<Path> path, ImmutableSet<String> labelNames);
+  /**
+   * Finds the node for the given path.
+   *
+   * @return the node id, or {@link #NOT_FOUND} or {@link #ANCESTOR}.
+   */
+  private int find(Path path) {
+    Iterator<Path> it = path.iterator();
+    for (String segment : rootPath) {
+      if (!it.hasNext()) {
+        return ANCESTOR;
+      }
+      if (!it.next().toString().equals(segment)) {
+        return NOT_FOUND;
+      }
+    }
+    int node = root;
+    while (it.hasNext()) {
+      node = nodes.child(node, it.next().toString());
+      if (node < 0) {
+        return NOT_FOUND;
+      }
+    }
+    return node;
   }
 
-  @AutoValue
-  abstract static class Node {
+  private void visit(Visitor visitor) {
+    visit(root, new ArrayDeque<>(rootPath), visitor);
+  }
 
-    static final Node EMPTY = new AutoValue_TargetTree_Node(ImmutableSet.of(), ImmutableMap.of());
+  private void visit(int node, ArrayDeque<String> path, Visitor visitor) {
+    visitor.visit(
+        () -> Path.of(PATH_JOINER.join(path)),
+        Arrays.asList(nodes.targets)
+            .subList(nodes.targetOffsets[node], nodes.targetOffsets[node + 1]));
+    for (int i = nodes.childOffsets[node]; i < nodes.childOffsets[node + 1]; i++) {
+      int child = nodes.children[i];
+      path.addLast(nodes.names[child]);
+      visit(child, path, visitor);
+      path.removeLast();
+    }
+  }
 
-    abstract ImmutableSet<String> targets();
+  interface Visitor {
+    void visit(Supplier<Path> path, List<String> labelNames);
+  }
 
-    abstract ImmutableMap<String, Node> children();
+  /** The flat representation of a tree, shared between it and all of its subtrees. */
+  private static final class Nodes {
+    /** The name of each node, i.e. the last segment of its path. */
+    final String[] names;
 
-    static Node create(ImmutableMap<String, Node> children, ImmutableSet<String> content) {
-      return new AutoValue_TargetTree_Node(content, children);
-    }
+    /** The children of node {@code i}, sorted by name, are {@code children[childOffsets[i]..]}. */
+    final int[] childOffsets;
 
-    /** Constructs a new node for the given path with an existing node as its only child. */
-    static Node forPath(Path path, Node child) {
-      // iterate backwards through the path elements to construct the new nodes bottom up, as
-      // required the the immutable data structure.
-      for (int i = path.getNameCount() - 1; i >= 0; i--) {
-        child = Node.create(ImmutableMap.of(path.getName(i).toString(), child), ImmutableSet.of());
-      }
-      return child;
-    }
+    final int[] children;
 
-    @Memoized
-    int size() {
-      return targets().size() + children().values().stream().mapToInt(Node::size).sum();
-    }
+    /** The subtree rooted at node {@code i} is nodes {@code i .. subtreeEnd[i] - 1}. */
+    final int[] subtreeEnd;
 
-    @Memoized
-    boolean isEmpty() {
-      return targets().isEmpty() && children().values().stream().allMatch(Node::isEmpty);
-    }
+    /** The target names in node {@code i} are {@code targets[targetOffsets[i]..]}. */
+    final int[] targetOffsets;
 
-    Optional<Node> find(Iterator<Path> path) {
-      if (!path.hasNext()) {
-        return Optional.of(this);
-      }
-      String childKey = path.next().toString();
-      Node child = children().get(childKey);
-      if (child == null) {
-        return Optional.empty();
-      }
-      return child.find(path);
+    final String[] targets;
+
+    Nodes(
+        String[] names,
+        int[] childOffsets,
+        int[] children,
+        int[] subtreeEnd,
+        int[] targetOffsets,
+        String[] targets) {
+      this.names = names;
+      this.childOffsets = childOffsets;
+      this.children = children;
+      this.subtreeEnd = subtreeEnd;
+      this.targetOffsets = targetOffsets;
+      this.targets = targets;
     }
 
-    void visit(ArrayDeque<String> path, Visitor visitor) {
-      visitor.visit(() -> Path.of(PATH_JOINER.join(path)), targets());
-      for (Map.Entry<String, Node> e : children().entrySet()) {
-        path.addLast(e.getKey());
-        e.getValue().visit(path, visitor);
-        path.removeLast();
+    /** Returns the id of the named child of a node, or a negative number if there is none. */
+    int child(int node, String name) {
+      int low = childOffsets[node];
+      int high = childOffsets[node + 1] - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = names[children[mid]].compareTo(name);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return children[mid];
+        }
       }
+      return NOT_FOUND;
     }
   }
 
   /** Builder for {@link TargetTree}. */
   public static class Builder {
-    private final ImmutableSet.Builder<String> content;
+    private final Set<String> content = new LinkedHashSet<>();
     private final Map<String, Builder> children = new HashMap<>();
 
-    public Builder() {
-      content = ImmutableSet.builder();
-    }
+    public Builder() {}
 
     public TargetTree build() {
-      return new TargetTree(buildNode());
-    }
-
-    Node buildNode() {
-      ImmutableMap.Builder<String, Node> builder = ImmutableMap.builder();
-      for (Map.Entry<String, Builder> e : children.entrySet()) {
-        builder.put(e.getKey(), e.getValue().buildNode());
-      }
-      return Node.create(builder.buildOrThrow(), content.build());
+      Flattener flattener = new Flattener();
+      flattener.add(this, "");
+      return new TargetTree(flattener.build(), 0, ImmutableList.of());
     }
 
     @CanIgnoreReturnValue
@@ -201,4 +269,57 @@ public class TargetTree {
       return this;
     }
   }
+
+  /** Converts a tree of {@link Builder}s into {@link Nodes}. */
+  private static class Flattener {
+    private final List<String> names = new ArrayList<>();
+    private final List<int[]> children = new ArrayList<>();
+    private final List<Integer> subtreeEnd = new ArrayList<>();
+    private final List<Integer> targetOffsets = new ArrayList<>();
+    private final List<String> targets = new ArrayList<>();
+
+    /** Adds a node and its descendants in pre-order, returning its id. */
+    int add(Builder builder, String name) {
+      int id = names.size();
+      names.add(Interners.STRING.intern(name));
+      children.add(null);
+      subtreeEnd.add(null);
+      targetOffsets.add(targets.size());
+      builder.content.forEach(target -> targets.add(Interners.STRING.intern(target)));
+
+      String[] childNames = builder.children.keySet().toArray(new String[0]);
+      Arrays.sort(childNames);
+      int[] childIds = new int[childNames.length];
+      for (int i = 0; i < childNames.length; i++) {
+        childIds[i] = add(builder.children.get(childNames[i]), childNames[i]);
+      }
+      children.set(id, childIds);
+      subtreeEnd.set(id, names.size());
+      return id;
+    }
+
+    Nodes build() {
+      int count = names.size();
+      int[] childOffsets = new int[count + 1];
+      for (int i = 0; i < count; i++) {
+        childOffsets[i + 1] = childOffsets[i] + children.get(i).length;
+      }
+      int[] flatChildren = new int[childOffsets[count]];
+      for (int i = 0; i < count; i++) {
+        System.arraycopy(children.get(i), 0, flatChildren, childOffsets[i], children.get(i).length);
+      }
+      int[] flatTargetOffsets = new int[count + 1];
+      for (int i = 0; i < count; i++) {
+        flatTargetOffsets[i] = targetOffsets.get(i);
+      }
+      flatTargetOffsets[count] = targets.size();
+      return new Nodes(
+          names.toArray(new String[0]),
+          childOffsets,
+          flatChildren,
+          subtreeEnd.stream().mapToInt(Integer::intValue).toArray(),
+          flatTargetOffsets,
+          targets.toArray(new String[0]));
+    }
+  }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common.artifact;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.MoreFiles;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * An index of the entries in a {@link BuildArtifactCacheDirectory}, recording the size of each
+ * entry and when it was last accessed.
+ *
+ * <p>The index is held in memory so that deciding what to evict from the cache does not require
+ * reading the attributes of every file in it. It is also journaled to a file inside the cache
+ * directory so that it survives restarts. This means we do not rely on the file system last access
+ * time, which is not maintained on file systems mounted with {@code noatime}.
+ *
+ * <p>The journal is an append-only text file with one record per line, either {@code <digest>
+ * <last access> <size>} for an access or {@code <digest> -} for a removal. It is compacted when it
+ * grows much larger than the index itself.
+ *
+ * <p>Records are buffered in memory and appended to the journal in batches, or when {@link #flush}
+ * is called. Records lost if the IDE dies before they are written only make the eviction order less
+ * accurate, since the index is reconciled against the directory contents when it is loaded.
+ */
+class ArtifactAccessIndex {
+
+  private static final Logger logger = Logger.getLogger(ArtifactAccessIndex.class.getName());
+
+  /** Name of the journal file. Starts with a '.' so that it can never clash with a digest. */
+  static final String JOURNAL_FILE_NAME = ".access_journal";
+
+  private static final String REMOVED = "-";
+
+  /** Don't bother compacting the journal until it has at least this many redundant records. */
+  private static final int MIN_REDUNDANT_RECORDS_TO_COMPACT = 1000;
+
+  /** The number of records to buffer before appending them to the journal. */
+  private static final int JOURNAL_BATCH_SIZE = 100;
+
+  @AutoValue
+  abstract static class Entry {
+    abstract String digest();
+
+    abstract Instant lastAccess();
+
+    abstract long size();
+
+    static Entry create(String digest, Instant lastAccess, long size) {
+      return new AutoValue_ArtifactAccessIndex_Entry(digest, lastAccess, size);
+    }
+  }
+
+  /** Functional interface for reading the size of a file, which may fail. */
+  @FunctionalInterface
+  interface SizeReader {
+    long size() throws IOException;
+  }
+
+  private final Path journalFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong totalSize = new AtomicLong();
+
+  // The following are guarded by `this`:
+  private final List<String> pendingRecords = new ArrayList<>();
+  private int journalRecords;
+
+  private ArtifactAccessIndex(Path journalFile) {
+    this.journalFile = journalFile;
+  }
+
+  /** Returns true if the given path is one of the index's own files, rather than a cache entry. */
+  static boolean isIndexFile(Path path) {
+    return path.getFileName().toString().startsWith(".");
+  }
+
+  /**
+   * Loads the index for the given cache directory.
+   *
+   * <p>The journal is replayed, and then reconciled against the actual contents of the directory:
+   * entries whose file has gone are dropped, and files that are not present in the journal (e.g.
+   * those written by an older version of the plugin) are added based on their file attributes.
+   */
+  static ArtifactAccessIndex load(Path cacheDir) throws IOException {
+    ArtifactAccessIndex index = new ArtifactAccessIndex(cacheDir.resolve(JOURNAL_FILE_NAME));
+    if (Files.exists(index.journalFile)) {
+      index.replay(Files.readAllLines(index.journalFile, UTF_8));
+    }
+    Set<String> present = new HashSet<>();
+    for (Path file : MoreFiles.listFiles(cacheDir)) {
+      if (isIndexFile(file)) {
+        continue;
+      }
+      String digest = file.getFileName().toString();
+      present.add(digest);
+      if (!index.entries.containsKey(digest)) {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        index.put(
+            Entry.create(digest, attributes.lastAccessTime().toInstant(), attributes.size()));
+      }
+    }
+    for (String digest : ImmutableList.copyOf(index.entries.keySet())) {
+      if (!present.contains(digest)) {
+        index.forget(digest);
+      }
+    }
+    index.compact();
+    return index;
+  }
+
+  private void replay(List<String> records) {
+    for (String record : records) {
+      List<String> parts = Splitter.on(' ').splitToList(record);
+      try {
+        if (parts.size() == 2 && parts.get(1).equals(REMOVED)) {
+          forget(parts.get(0));
+        } else if (parts.size() == 3) {
+          put(
+              Entry.create(
+                  parts.get(0), Instant.parse(parts.get(1)), Long.parseLong(parts.get(2))));
+        } else {
+          logger.warning("Ignoring malformed cache journal record: " + record);
+        }
+      } catch (NumberFormatException | DateTimeParseException e) {
+        // This can happen if the IDE died while appending to the journal.
+        logger.warning("Ignoring malformed cache journal record: " + record);
+      }
+    }
+  }
+
+  private void put(Entry entry) {
+    Entry previous = entries.put(entry.digest(), entry);
+    totalSize.addAndGet(entry.size() - (previous == null ? 0 : previous.size()));
+  }
+
+  private void forget(String digest) {
+    Entry previous = entries.remove(digest);
+    if (previous != null) {
+      totalSize.addAndGet(-previous.size());
+    }
+  }
+
+  /**
+   * Records an access to a cache entry.
+   *
+   * @param sizeReader used to find the size of the entry if it's not already in the index.
+   */
+  synchronized void recordAccess(String digest, Instant lastAccess, SizeReader sizeReader)
+      throws IOException {
+    Entry existing = entries.get(digest);
+    Entry entry =
+        Entry.create(digest, lastAccess, existing != null ? existing.size() : sizeReader.size());
+    put(entry);
+    append(entry.digest() + " " + entry.lastAccess() + " " + entry.size());
+  }
+
+  /** Records that an entry has been deleted from the cache. */
+  synchronized void recordRemoval(String digest) throws IOException {
+    forget(digest);
+    append(digest + " " + REMOVED);
+  }
+
+  @Nullable
+  Entry get(String digest) {
+    return entries.get(digest);
+  }
+
+  /** The total size of all entries in the cache. */
+  long totalSize() {
+    return totalSize.get();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /** Returns a snapshot of all entries in the cache, least recently accessed first. */
+  ImmutableList<Entry> entriesByLastAccess() {
+    return entries.values().stream()
+        .sorted(Comparator.comparing(Entry::lastAccess))
+        .collect(toImmutableList());
+  }
+
+  private void append(String record) throws IOException {
+    pendingRecords.add(record);
+    if (pendingRecords.size() >= JOURNAL_BATCH_SIZE) {
+      flush();
+    }
+  }
+
+  /** Appends any buffered records to the journal. */
+  synchronized void flush() throws IOException {
+    if (pendingRecords.isEmpty()) {
+      return;
+    }
+    Files.write(
+        journalFile, pendingRecords, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    journalRecords += pendingRecords.size();
+    pendingRecords.clear();
+    int redundantRecords = journalRecords - entries.size();
+    if (redundantRecords > Math.max(MIN_REDUNDANT_RECORDS_TO_COMPACT, entries.size())) {
+      compact();
+    }
+  }
+
+  /** Rewrites the journal so that it contains just one record per entry. */
+  @VisibleForTesting
+  synchronized void compact() throws IOException {
+    // The snapshot reflects any buffered records, so they need not be written separately.
+    pendingRecords.clear();
+    Path tmp = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+    ImmutableList<Entry> snapshot = entriesByLastAccess();
+    try (BufferedWriter out = Files.newBufferedWriter(tmp, UTF_8)) {
+      for (Entry entry : snapshot) {
+        out.write(entry.digest() + " " + entry.lastAccess() + " " + entry.size());
+        out.newLine();
+      }
+    }
+    Files.move(
+        tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    journalRecords = snapshot.size();
+  }
+}
@@ -23,6 +23,7 @@ import com.google.idea.blaze.common.Context;
 import com.google.idea.blaze.exception.BuildException;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 /**
@@ -35,7 +36,7 @@ import java.util.Optional;
  * Context)}, provides access to their contents as a local file via {@link #get(String)}.
  *
  * <p>Access times are updated when artifacts downloads are requested, and when the contents are
- * requested, to enable unused cache entries to be cleaned up later on (not implemented yet).
+ * requested, to enable unused cache entries to be cleaned up later on.
  */
 public interface BuildArtifactCache {
 
@@ -45,6 +46,21 @@ public interface BuildArtifactCache {
     return new BuildArtifactCacheDirectory(cacheDir, fetcher, executor);
   }
 
+  /**
+   * Creates a cache that is kept to within {@code maxSizeBytes} by evicting the least recently used
+   * artifacts, except for those used within {@code minAgeToDelete}.
+   */
+  static BuildArtifactCache create(
+      Path cacheDir,
+      ArtifactFetcher<OutputArtifact> fetcher,
+      ListeningExecutorService executor,
+      long maxSizeBytes,
+      Duration minAgeToDelete)
+      throws BuildException {
+    return new BuildArtifactCacheDirectory(
+        cacheDir, fetcher, executor, maxSizeBytes, minAgeToDelete);
+  }
+
   /**
    * Requests that the given artifacts are added to the cache.
    *
@@ -65,4 +81,9 @@ public interface BuildArtifactCache {
 
   /** Synchronously clean the cache. */
   void clean() throws IOException;
+
+  /** Returns statistics about the usage of this cache. */
+  default BuildArtifactCacheStats getStats() {
+    return BuildArtifactCacheStats.EMPTY;
+  }
 }
@@ -17,43 +17,48 @@ package com.google.idea.blaze.common.artifact;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
-import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
 import com.google.common.io.ByteSource;
 import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.idea.blaze.common.Context;
 import com.google.idea.blaze.common.artifact.ArtifactFetcher.ArtifactDestination;
 import com.google.idea.blaze.exception.BuildException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
@@ -67,7 +72,10 @@ import javax.annotation.Nullable;
  * Context)}, provides access to their contents as a local file via {@link #get(String)}.
  *
  * <p>Access times are updated when artifacts downloads are requested, and when the contents are
- * requested, to enable unused cache entries to be cleaned up later on (not implemented yet).
+ * requested, to enable unused cache entries to be cleaned up later on. Access times and sizes are
+ * kept in an {@link ArtifactAccessIndex} rather than being read from the file system. When the
+ * cache grows beyond its maximum size, the least recently used entries are evicted in the
+ * background.
  *
  * <p>An instance of this class is expected to be the sole user of the provided cache directory.
  */
@@ -76,26 +84,73 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
   private static final Logger logger =
       Logger.getLogger(BuildArtifactCacheDirectory.class.getName());
 
+  /** By default, we keep 1GB of artifacts, or any accessed in the last 24 hours if this is more. */
+  private static final long DEFAULT_MAX_SIZE_BYTES = 1024L * 1024L * 1024L;
+
+  private static final Duration DEFAULT_MIN_AGE_TO_DELETE = Duration.ofHours(24);
+
+  /**
+   * The number of entries to delete each time the write lock is acquired when cleaning, to avoid
+   * blocking other users of the cache for a long time.
+   */
+  private static final int CLEAN_BATCH_SIZE = 100;
+
   private final Path cacheDir;
   private final ListeningExecutorService executor;
   private final ArtifactFetcher<OutputArtifact> fetcher;
+  private final long maxSizeBytes;
+  private final Duration minAgeToDelete;
+  private final ArtifactAccessIndex index;
+
+  private final AtomicBoolean backgroundCleanPending = new AtomicBoolean(false);
 
-  private final Map<String, ListenableFuture<?>> activeFetches;
+  /**
+   * Set when a background clean gave up because the cache was in use, so that it is retried once
+   * the read lock is released.
+   */
+  private final AtomicBoolean backgroundCleanDeferred = new AtomicBoolean(false);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictedEntries = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+  private final AtomicLong cleanTimeNanos = new AtomicLong();
+
+  /**
+   * Futures for artifacts that are currently being fetched or having their metadata updated, keyed
+   * by digest. Entries are claimed with {@link ConcurrentMap#putIfAbsent}, so at most one operation
+   * is ever in flight for a given digest, without needing a lock.
+   */
+  private final ConcurrentMap<String, ListenableFuture<?>> activeFetches =
+      new ConcurrentHashMap<>();
 
   /**
    * Read-write lock where the "read" is also used to adding items to the cache. The write is only
    * acquired for cleaning the cache whcih allows all other functionality to assume that cache items
    * are never deleted.
+   *
+   * <p>This is a {@link StampedLock} since a read lock is released by whichever thread completes
+   * the operation it guards, which is not usually the thread that acquired it.
    */
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final StampedLock lock = new StampedLock();
 
   public BuildArtifactCacheDirectory(
       Path cacheDir, ArtifactFetcher<OutputArtifact> fetcher, ListeningExecutorService executor)
       throws BuildException {
+    this(cacheDir, fetcher, executor, DEFAULT_MAX_SIZE_BYTES, DEFAULT_MIN_AGE_TO_DELETE);
+  }
+
+  public BuildArtifactCacheDirectory(
+      Path cacheDir,
+      ArtifactFetcher<OutputArtifact> fetcher,
+      ListeningExecutorService executor,
+      long maxSizeBytes,
+      Duration minAgeToDelete)
+      throws BuildException {
     this.cacheDir = cacheDir;
     this.fetcher = fetcher;
     this.executor = executor;
-    this.activeFetches = Maps.newHashMap();
+    this.maxSizeBytes = maxSizeBytes;
+    this.minAgeToDelete = minAgeToDelete;
 
     if (!Files.exists(cacheDir)) {
       try {
@@ -107,16 +162,21 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
     if (!Files.isDirectory(cacheDir)) {
       throw new BuildException("Cache dir is not a directory: " + cacheDir);
     }
+    try {
+      this.index = ArtifactAccessIndex.load(cacheDir);
+    } catch (IOException e) {
+      throw new BuildException("Failed to load cache index from " + cacheDir, e);
+    }
   }
 
   @VisibleForTesting
   int readLockCount() {
-    return lock.getReadHoldCount();
+    return lock.getReadLockCount();
   }
 
   @VisibleForTesting
   int writeLockCount() {
-    return lock.getWriteHoldCount();
+    return lock.isWriteLocked() ? 1 : 0;
   }
 
   @VisibleForTesting
@@ -144,19 +204,14 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
   /**
    * Updates the metadata for a cache entry.
    *
-   * <p>For now, we juse use the filesystem last access timestamp for this, in future we may
-   * consider adding an explicit metadata file if the timestamp alone proves insufficient.
+   * <p>The metadata is recorded in the {@link ArtifactAccessIndex} rather than as file system
+   * timestamps, since the last access time is not reliably maintained by all file systems.
    *
    * <p>Note we return Void to make this method easier to use with {@link
    * java.util.concurrent.ExecutorService#submit(Callable)}. }
    */
   private Void updateMetadata(String digest, Instant lastAccess) throws IOException {
-    // note, when we pass null in here, the existing timestamps are left unchanged:
-    Files.getFileAttributeView(artifactPath(digest), BasicFileAttributeView.class)
-        .setTimes(
-            /* lastModifiedTime */ null,
-            /* lastAccessTime */ FileTime.from(lastAccess),
-            /* createTime */ null);
+    index.recordAccess(digest, lastAccess, () -> Files.size(artifactPath(digest)));
     return null;
   }
 
@@ -170,50 +225,25 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
   }
 
   /**
-   * Marks a set of artifacts as being actively fetched while an asynchronous process is running.
+   * Claims a digest, marking it as being actively fetched until the returned future completes.
    *
-   * @param artifacts The affected artifacts
-   * @param done The fetch future. Once this future completes, and artifacts will be un-marked as
-   *     being actively fetched.
-   * @return The passed future, for convenience.
+   * @return A future that the caller must complete (via {@link SettableFuture#setFuture}) once the
+   *     operation for the digest is complete, or empty if there is already an operation in flight
+   *     for the digest.
    */
-  @CanIgnoreReturnValue
-  private ListenableFuture<?> markActiveUntilComplete(
-      ImmutableCollection<OutputArtifact> artifacts, ListenableFuture<?> done) {
-    ImmutableSet<String> digests =
-        artifacts.stream().map(OutputArtifact::getDigest).collect(toImmutableSet());
-    synchronized (activeFetches) {
-      // mark the  artifacts as being actively fetched. If they are requested in the meantime,
-      // the future will be used to wait until the fetch is complete.
-      digests.forEach(d -> activeFetches.put(d, done));
-      // and when that's done, un-mark them as active fetches:
-      done.addListener(
-          () -> {
-            synchronized (activeFetches) {
-              activeFetches.keySet().removeAll(digests);
-            }
-          },
-          executor);
+  private Optional<SettableFuture<Object>> claim(String digest) {
+    SettableFuture<Object> claim = SettableFuture.create();
+    if (activeFetches.putIfAbsent(digest, claim) != null) {
+      return Optional.empty();
     }
-    return done;
+    // Once the operation is done, un-mark the digest as active. Note, we use the two-argument
+    // remove in case the artifact has been claimed again in the meantime.
+    claim.addListener(() -> activeFetches.remove(digest, claim), directExecutor());
+    return Optional.of(claim);
   }
 
   /**
-   * Updates metadata for a set of artifacts, marking that as active while this takes place, to
-   * avoid any potential race conditions.
-   *
-   * @param artifacts The affected artifacts.
-   * @param lastAccess The last access time to set.
-   * @return A future of the update operation.
-   */
-  private ListenableFuture<?> safeUpdateMetadata(
-      ImmutableCollection<OutputArtifact> artifacts, Instant lastAccess) {
-    ListenableFuture<?> update = updateMetadata(artifacts, lastAccess);
-    return markActiveUntilComplete(artifacts, update);
-  }
-
-  /**
-   * Kicks off an artifacts fetch, marking the artifacts as active while it's running.
+   * Kicks off an artifacts fetch.
    *
    * @param artifacts Artifatcs to fetch.
    * @param accessTime The time that the artifacts were requested.
@@ -231,31 +261,36 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
                 .collect(toImmutableMap(Functions.identity(), this::artifactDestination)),
             context);
     // when that's done, set their metadata:
-    ListenableFuture<?> done =
-        Futures.transformAsync(newFetch, unused -> updateMetadata(artifacts, accessTime), executor);
-
-    return markActiveUntilComplete(artifacts, done);
+    return Futures.transformAsync(
+        newFetch, unused -> updateMetadata(artifacts, accessTime), executor);
   }
 
   private <T> Optional<ListenableFuture<T>> performWithReadLock(
       Supplier<Optional<ListenableFuture<T>>> method) {
-    Lock readLock = lock.readLock();
-    readLock.lock();
+    long stamp = lock.readLock();
+    boolean release = true;
     try {
       Optional<ListenableFuture<T>> future = method.get();
       if (future.isEmpty()) {
         return future;
       }
-      future.get().addListener(readLock::unlock, directExecutor());
-      readLock = null;
+      future.get().addListener(() -> releaseReadLock(stamp), directExecutor());
+      release = false;
       return future;
     } finally {
-      if (readLock != null) {
-        readLock.unlock();
+      if (release) {
+        releaseReadLock(stamp);
       }
     }
   }
 
+  private void releaseReadLock(long stamp) {
+    lock.unlockRead(stamp);
+    if (backgroundCleanDeferred.get()) {
+      maybeCleanInBackground();
+    }
+  }
+
   /**
    * Requests that the given artifacts are added to the cache.
    *
@@ -266,32 +301,72 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
   @Override
   public ListenableFuture<?> addAll(
       ImmutableCollection<OutputArtifact> artifacts, Context<?> context) {
-    return performWithReadLock(() -> Optional.of(performAdd(artifacts, context))).get();
+    ListenableFuture<?> added =
+        performWithReadLock(() -> Optional.of(performAdd(artifacts, context))).get();
+    added.addListener(this::onAddComplete, executor);
+    return added;
+  }
+
+  private void onAddComplete() {
+    try {
+      index.flush();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to write cache index for " + cacheDir, e);
+    }
+    maybeCleanInBackground();
   }
 
   private ListenableFuture<?> performAdd(
       ImmutableCollection<OutputArtifact> artifacts, Context<?> context) {
-    synchronized (activeFetches) {
-      Instant accessTime = Instant.now();
-      // filter out any artifacts for which there is already a fetch pending:
-      ImmutableList<OutputArtifact> allArtifacts =
-          artifacts.stream()
-              .filter(a -> !activeFetches.containsKey(a.getDigest()))
-              .collect(toImmutableList());
+    Instant accessTime = Instant.now();
+    // Claim the artifacts for which there is no operation already in flight. For the others, we
+    // just wait for the existing operation.
+    Map<String, SettableFuture<Object>> claims = new LinkedHashMap<>();
+    Map<String, OutputArtifact> claimedArtifacts = new LinkedHashMap<>();
+    List<ListenableFuture<?>> pending = new ArrayList<>();
+    for (OutputArtifact artifact : artifacts) {
+      String digest = artifact.getDigest();
+      if (claims.containsKey(digest)) {
+        continue;
+      }
+      Optional<SettableFuture<Object>> claim = claim(digest);
+      if (claim.isPresent()) {
+        claims.put(digest, claim.get());
+        claimedArtifacts.put(digest, artifact);
+      } else {
+        ListenableFuture<?> existing = activeFetches.get(digest);
+        if (existing != null) {
+          pending.add(existing);
+        }
+      }
+    }
 
+    ListenableFuture<?> fetch;
+    ListenableFuture<?> metadataUpdate;
+    ImmutableListMultimap<Boolean, OutputArtifact> artifactsByPresence;
+    try {
       // group them based on whether the artifact is already cached
-      ImmutableListMultimap<Boolean, OutputArtifact> artifactsByPresence =
-          Multimaps.index(allArtifacts, this::contains);
+      artifactsByPresence = Multimaps.index(claimedArtifacts.values(), this::contains);
 
       // Fetch absent artifacts
-      ListenableFuture<?> fetch = startFetch(artifactsByPresence.get(false), accessTime, context);
-
+      fetch =
+          artifactsByPresence.containsKey(false)
+              ? startFetch(artifactsByPresence.get(false), accessTime, context)
+              : Futures.immediateVoidFuture();
       // Update the metadata of present artifacts
-      ListenableFuture<?> metadataUpdate =
-          safeUpdateMetadata(artifactsByPresence.get(true), accessTime);
-
-      return Futures.allAsList(fetch, metadataUpdate);
+      metadataUpdate = updateMetadata(artifactsByPresence.get(true), accessTime);
+    } catch (RuntimeException e) {
+      // Make sure we don't leave the claimed artifacts marked as active forever.
+      claims.values().forEach(c -> c.setException(e));
+      throw e;
     }
+
+    artifactsByPresence.get(false).forEach(a -> claims.get(a.getDigest()).setFuture(fetch));
+    artifactsByPresence.get(true).forEach(a -> claims.get(a.getDigest()).setFuture(metadataUpdate));
+
+    pending.add(fetch);
+    pending.add(metadataUpdate);
+    return Futures.allAsList(pending);
   }
 
   @Nullable
@@ -317,16 +392,30 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
   }
 
   public Optional<ListenableFuture<ByteSource>> performGet(String digest) {
-    ListenableFuture<?> activeFetch;
-    synchronized (activeFetches) {
-      activeFetch = activeFetches.get(digest);
-    }
+    ListenableFuture<?> activeFetch = activeFetches.get(digest);
     Path artifactPath = artifactPath(digest);
     if (activeFetch == null) {
-      return Optional.ofNullable(getArtifactIfPresent(digest))
+      Path present = getArtifactIfPresent(digest);
+      (present == null ? misses : hits).incrementAndGet();
+      return Optional.ofNullable(present)
           .map(MoreFiles::asByteSource)
           .map(Futures::immediateFuture);
     } else {
+      // Only count the hit once the fetch has succeeded, since a failed fetch leaves no artifact.
+      Futures.addCallback(
+          activeFetch,
+          new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+              hits.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              misses.incrementAndGet();
+            }
+          },
+          directExecutor());
       ListenableFuture<?> unused = executor.submit(() -> updateMetadata(digest, Instant.now()));
       return Optional.of(
           Futures.transform(
@@ -339,23 +428,13 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
       throws IOException {
     MoreFiles.asByteSink(artifactPath(digest)).writeFrom(content);
     updateMetadata(digest, lastAccessTime);
-  }
-
-  @AutoValue
-  abstract static class Entry {
-    abstract Path path();
-
-    abstract FileTime lastAccessTime();
-
-    abstract long size();
-
-    static Entry create(Path p, FileTime lastAccessTime, long size) {
-      return new AutoValue_BuildArtifactCacheDirectory_Entry(p, lastAccessTime, size);
-    }
+    index.flush();
   }
 
   private ImmutableList<Path> list() throws IOException {
-    return MoreFiles.listFiles(cacheDir);
+    return MoreFiles.listFiles(cacheDir).stream()
+        .filter(p -> !ArtifactAccessIndex.isIndexFile(p))
+        .collect(toImmutableList());
   }
 
   @VisibleForTesting
@@ -365,68 +444,129 @@ class BuildArtifactCacheDirectory implements BuildArtifactCache {
 
   @VisibleForTesting
   FileTime readAccessTime(String digest) throws IOException {
-    return readAccessTime(artifactPath(digest));
+    ArtifactAccessIndex.Entry entry = index.get(digest);
+    if (entry == null) {
+      throw new NoSuchFileException(artifactPath(digest).toString());
+    }
+    return FileTime.from(entry.lastAccess());
   }
 
-  FileTime readAccessTime(Path entry) throws IOException {
-    return Files.getFileAttributeView(entry, BasicFileAttributeView.class)
-        .readAttributes()
-        .lastAccessTime();
+  @Override
+  public BuildArtifactCacheStats getStats() {
+    return BuildArtifactCacheStats.create(
+        hits.get(),
+        misses.get(),
+        index.size(),
+        index.totalSize(),
+        evictedEntries.get(),
+        evictedBytes.get(),
+        Duration.ofNanos(cleanTimeNanos.get()));
   }
 
   @Override
   public void clean() throws IOException {
-    Lock writeLock = lock.writeLock();
-    writeLock.lock();
-    try {
-      // We keep 1GB of artifacts, or any accessed in the last 24 hours if this is more:
-      clean(1024L * 1024L * 1024L, Instant.now().minus(Duration.ofHours(24)));
-    } finally {
-      writeLock.unlock();
-    }
+    clean(maxSizeBytes, Instant.now().minus(minAgeToDelete));
   }
 
   @VisibleForTesting
   void clean(long maxTargetSize, Instant minAgeToDelete) throws IOException {
-    ImmutableList<Path> entries = list();
-    int failed = 0;
-    long totalSize = 0;
-    PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing(Entry::lastAccessTime));
-    for (Path p : entries) {
-      try {
-        Entry e = Entry.create(p, readAccessTime(p), Files.size(p));
-        queue.add(e);
-        totalSize += e.size();
-      } catch (IOException e) {
-        // If we fail read the attributes for a file, we just ignore it and clean up the rest of the
-        // cache as best we can.
-        failed += 1;
-      }
-    }
-    if (failed > 0) {
-      logger.warning("Failed to read attributes from " + failed + " cache files when cleaning");
+    evict(maxTargetSize, minAgeToDelete, /* waitForLock= */ true);
+  }
+
+  /**
+   * Starts cleaning the cache on a background thread if it has grown beyond its maximum size, and
+   * there is not already a clean pending.
+   *
+   * <p>If the clean is deferred because the cache is in use, it is retried when the read lock is
+   * next released.
+   */
+  private void maybeCleanInBackground() {
+    if (index.totalSize() <= maxSizeBytes || !backgroundCleanPending.compareAndSet(false, true)) {
+      return;
     }
-    long remainingSize = totalSize;
-    while (!queue.isEmpty()) {
-      if (remainingSize <= maxTargetSize) {
-        // size target reached
-        logger.info("Reached target cache size: " + remainingSize + "<=" + maxTargetSize);
-        return;
-      }
-      if (queue.peek().lastAccessTime().toInstant().isAfter(minAgeToDelete)) {
-        // the oldest artifact is newer than the minimum age, so we stop deleting artifacts even
-        // though the cache is bigger than the max size.
-        logger.info(
-            "Not deleting entries accessed since "
-                + minAgeToDelete
-                + "; remaining cache size="
-                + remainingSize);
-        return;
-      }
+    backgroundCleanDeferred.set(false);
+    ListenableFuture<?> unused =
+        executor.submit(
+            () -> {
+              try {
+                evict(maxSizeBytes, Instant.now().minus(minAgeToDelete), /* waitForLock= */ false);
+              } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to clean cache " + cacheDir, e);
+              } finally {
+                backgroundCleanPending.set(false);
+              }
+              if (backgroundCleanDeferred.get() && lock.getReadLockCount() == 0) {
+                // The readers which made the clean give up have already released the lock.
+                maybeCleanInBackground();
+              }
+              return null;
+            });
+  }
 
-      Entry toDelete = queue.poll();
-      remainingSize -= toDelete.size();
-      Files.delete(toDelete.path());
+  /**
+   * Deletes least recently used entries from the cache until it is no bigger than {@code
+   * maxTargetSize}, or until all remaining entries were accessed after {@code minAgeToDelete}.
+   *
+   * <p>Entries are deleted in batches, with the write lock held only for the duration of each
+   * batch, so that other users of the cache are not blocked for the whole clean.
+   *
+   * @param waitForLock If true, waits to acquire the write lock for each batch. Otherwise gives up
+   *     as soon as the lock is contended, and sets {@link #backgroundCleanDeferred} so that the
+   *     clean is retried once the lock is free.
+   */
+  private void evict(long maxTargetSize, Instant minAgeToDelete, boolean waitForLock)
+      throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    long evictedBefore = evictedBytes.get();
+    try {
+      Iterator<ArtifactAccessIndex.Entry> candidates = index.entriesByLastAccess().iterator();
+      while (candidates.hasNext()) {
+        long stamp = waitForLock ? lock.writeLock() : lock.tryWriteLock();
+        if (stamp == 0) {
+          logger.info("Cache is busy, deferring clean");
+          backgroundCleanDeferred.set(true);
+          return;
+        }
+        try {
+          for (int i = 0; i < CLEAN_BATCH_SIZE && candidates.hasNext(); i++) {
+            if (index.totalSize() <= maxTargetSize) {
+              // size target reached
+              logger.info("Reached target cache size: " + index.totalSize() + "<=" + maxTargetSize);
+              return;
+            }
+            ArtifactAccessIndex.Entry candidate = candidates.next();
+            if (!candidate.equals(index.get(candidate.digest()))) {
+              // The entry has been accessed or deleted since we took the snapshot.
+              continue;
+            }
+            if (candidate.lastAccess().isAfter(minAgeToDelete)) {
+              // the oldest artifact is newer than the minimum age, so we stop deleting artifacts
+              // even though the cache is bigger than the max size.
+              logger.info(
+                  "Not deleting entries accessed since "
+                      + minAgeToDelete
+                      + "; remaining cache size="
+                      + index.totalSize());
+              return;
+            }
+            Files.deleteIfExists(artifactPath(candidate.digest()));
+            index.recordRemoval(candidate.digest());
+            evictedEntries.incrementAndGet();
+            evictedBytes.addAndGet(candidate.size());
+          }
+        } finally {
+          lock.unlockWrite(stamp);
+        }
+      }
+    } finally {
+      index.flush();
+      cleanTimeNanos.addAndGet(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+      logger.info(
+          String.format(
+              "Cleaned cache %s in %d ms, evicting %d bytes",
+              cacheDir,
+              stopwatch.elapsed(TimeUnit.MILLISECONDS),
+              evictedBytes.get() - evictedBefore));
     }
   }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common.artifact;
+
+import com.google.auto.value.AutoValue;
+import java.time.Duration;
+
+/** A snapshot of the statistics of a {@link BuildArtifactCache}. */
+@AutoValue
+public abstract class BuildArtifactCacheStats {
+
+  public static final BuildArtifactCacheStats EMPTY = create(0, 0, 0, 0, 0, 0, Duration.ZERO);
+
+  /** The number of calls to {@link BuildArtifactCache#get(String)} that found the artifact. */
+  public abstract long hits();
+
+  /** The number of calls to {@link BuildArtifactCache#get(String)} that did not. */
+  public abstract long misses();
+
+  /** The number of entries currently in the cache. */
+  public abstract long entries();
+
+  /** The total size of all entries currently in the cache. */
+  public abstract long cachedBytes();
+
+  /** The number of entries that have been evicted by cleaning the cache. */
+  public abstract long evictedEntries();
+
+  /** The total size of the entries that have been evicted by cleaning the cache. */
+  public abstract long evictedBytes();
+
+  /** The total time spent cleaning the cache. */
+  public abstract Duration cleanTime();
+
+  public double hitRate() {
+    long requests = hits() + misses();
+    return requests == 0 ? 0 : (double) hits() / requests;
+  }
+
+  static BuildArtifactCacheStats create(
+      long hits,
+      long misses,
+      long entries,
+      long cachedBytes,
+      long evictedEntries,
+      long evictedBytes,
+      Duration cleanTime) {
+    return new AutoValue_BuildArtifactCacheStats(
+        hits, misses, entries, cachedBytes, evictedEntries, evictedBytes, cleanTime);
+  }
+}
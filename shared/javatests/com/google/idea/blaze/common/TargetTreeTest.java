@@ -131,4 +131,42 @@ public class TargetTreeTest {
             Label.of("//a/b/c/d:d"),
             Label.of("//a/b/c/e:e"));
   }
+
+  @Test
+  public void test_getSubpackages_lookupsWithinSubtree() {
+    TargetTree tt =
+        new TargetTree.Builder()
+            .add(Label.of("//a/b:b"))
+            .add(Label.of("//a/b/c:c"))
+            .add(Label.of("//a/b/c/d:d"))
+            .add(Label.of("//a/x:x"))
+            .build();
+    TargetTree subtree = tt.getSubpackages(Path.of("a/b"));
+    assertThat(subtree.size()).isEqualTo(3);
+    assertThat(subtree.get(Path.of("a/b/c"))).containsExactly(Label.of("//a/b/c:c"));
+    assertThat(subtree.get(Path.of("a/x"))).isEmpty();
+    assertThat(subtree.get(Path.of("a"))).isEmpty();
+    assertThat(subtree.toPathSet())
+        .containsExactly(Path.of("a/b"), Path.of("a/b/c"), Path.of("a/b/c/d"));
+    assertThat(subtree.getSubpackages(Path.of("a/b/c")).toLabelSet())
+        .containsExactly(Label.of("//a/b/c:c"), Label.of("//a/b/c/d:d"));
+    assertThat(subtree.getSubpackages(Path.of("a")).toLabelSet())
+        .containsExactlyElementsIn(subtree.toLabelSet());
+    assertThat(subtree.getSubpackages(Path.of("a/x")).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void test_toMap() {
+    TargetTree tt =
+        new TargetTree.Builder()
+            .add(Label.of("//:root"))
+            .add(Label.of("//a/b:b"))
+            .add(Label.of("//a/b:c"))
+            .add(Label.of("//a/b/c:c"))
+            .build();
+    assertThat(tt.toMap())
+        .containsExactly(
+            Path.of(""), "root", Path.of("a/b"), "b", Path.of("a/b"), "c", Path.of("a/b/c"), "c");
+    assertThat(tt.get(Path.of(""))).containsExactly(Label.of("//:root"));
+  }
 }
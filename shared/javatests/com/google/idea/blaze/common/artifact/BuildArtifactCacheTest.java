@@ -30,6 +30,8 @@ import java.nio.file.Files;
 import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import org.junit.After;
 import org.junit.Before;
@@ -154,6 +156,26 @@ public class BuildArtifactCacheTest {
         .isEqualTo(artifactFetcher.getExpectedArtifactContents("def"));
   }
 
+  @Test
+  public void addAll_waits_for_fetch_already_in_flight() throws Exception {
+    OutputArtifact artifact = TestOutputArtifact.forDigest("abc");
+    ListenableFuture<?> fetch1 = cache.addAll(ImmutableList.of(artifact), new NoopContext());
+    ListenableFuture<?> fetch2 =
+        cache.addAll(ImmutableList.of(artifact, artifact), new NoopContext());
+
+    assertThat(fetch1.isDone()).isFalse();
+    assertThat(fetch2.isDone()).isFalse();
+
+    artifactFetcher.executeOldestTask();
+
+    assertThat(fetch1.isDone()).isTrue();
+    assertThat(fetch2.isDone()).isTrue();
+    assertThat(cache.get("abc").map(Future::isDone)).hasValue(true);
+    // The second request should not have started another fetch:
+    artifactFetcher.executePendingTasks();
+    assertThat(artifactFetcher.takeRequestedDigests()).containsExactly("abc");
+  }
+
   private static InputStream fileOfSize(int size) throws IOException {
     return ByteSource.wrap(new byte[size]).openStream();
   }
@@ -201,4 +223,133 @@ public class BuildArtifactCacheTest {
     // We keep C despite it being over the max size because it's newer than max age.
     assertThat(cache.listDigests()).containsExactly("a", "b", "c");
   }
+
+  @Test
+  public void clean_uses_persisted_access_times() throws Exception {
+    Instant now = Instant.now();
+    cache.insertForTest(fileOfSize(10), "a", now.minus(Duration.ofMinutes(10)));
+    cache.insertForTest(fileOfSize(10), "b", now.minus(Duration.ofMinutes(20)));
+    cache.insertForTest(fileOfSize(10), "c", now.minus(Duration.ofMinutes(30)));
+
+    // Re-open the cache, so that access times must be read back from the journal:
+    cache =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(), artifactFetcher, newDirectExecutorService());
+    assertThat(cache.listDigests()).containsExactly("a", "b", "c");
+    assertThat(cache.readAccessTime("c"))
+        .isEquivalentAccordingToCompareTo(FileTime.from(now.minus(Duration.ofMinutes(30))));
+
+    cache.clean(20, now.minus(Duration.ofMinutes(5)));
+
+    assertThat(cache.listDigests()).containsExactly("a", "b");
+    assertThat(cache.getStats().evictedEntries()).isEqualTo(1);
+    assertThat(cache.getStats().evictedBytes()).isEqualTo(10);
+    assertThat(cache.getStats().cachedBytes()).isEqualTo(20);
+  }
+
+  @Test
+  public void get_records_hits_and_misses() throws Exception {
+    cache.insertForTest(fileOfSize(10), "a", Instant.now());
+
+    assertThat(cache.get("a")).isPresent();
+    assertThat(cache.get("b")).isEmpty();
+
+    assertThat(cache.getStats().hits()).isEqualTo(1);
+    assertThat(cache.getStats().misses()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_in_flight_counts_hit_once_fetch_succeeds() throws Exception {
+    OutputArtifact artifact = TestOutputArtifact.forDigest("abc");
+    ListenableFuture<?> unused = cache.addAll(ImmutableList.of(artifact), new NoopContext());
+
+    assertThat(cache.get("abc")).isPresent();
+    assertThat(cache.getStats().hits()).isEqualTo(0);
+
+    artifactFetcher.executePendingTasks();
+
+    assertThat(cache.getStats().hits()).isEqualTo(1);
+    assertThat(cache.getStats().misses()).isEqualTo(0);
+  }
+
+  @Test
+  public void addAll_evicts_in_background_when_over_size() throws Exception {
+    cache =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(),
+            artifactFetcher,
+            newDirectExecutorService(),
+            /* maxSizeBytes= */ 10,
+            /* minAgeToDelete= */ Duration.ofMinutes(1));
+    cache.insertForTest(fileOfSize(10), "old", Instant.now().minus(Duration.ofMinutes(10)));
+
+    ListenableFuture<?> unused =
+        cache.addAll(ImmutableList.of(TestOutputArtifact.forDigest("new")), new NoopContext());
+    artifactFetcher.executePendingTasks();
+
+    assertThat(cache.listDigests()).containsExactly("new");
+  }
+
+  @Test
+  public void addAll_retries_deferred_eviction_once_cache_not_in_use() throws Exception {
+    cache =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(),
+            artifactFetcher,
+            newDirectExecutorService(),
+            /* maxSizeBytes= */ 200,
+            /* minAgeToDelete= */ Duration.ofMinutes(1));
+    cache.insertForTest(fileOfSize(200), "old", Instant.now().minus(Duration.ofMinutes(10)));
+
+    ListenableFuture<?> unused =
+        cache.addAll(ImmutableList.of(TestOutputArtifact.forDigest("new")), new NoopContext());
+    unused =
+        cache.addAll(ImmutableList.of(TestOutputArtifact.forDigest("other")), new NoopContext());
+
+    // The second fetch still holds the read lock, so the clean after the first one is deferred.
+    artifactFetcher.executeOldestTask();
+    assertThat(cache.listDigests()).containsExactly("old", "new");
+
+    artifactFetcher.executeOldestTask();
+    assertThat(cache.listDigests()).containsExactly("new", "other");
+  }
+
+  @Test
+  public void addAll_evicts_when_fetch_completes_on_another_thread() throws Exception {
+    cache =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(),
+            artifactFetcher,
+            newDirectExecutorService(),
+            /* maxSizeBytes= */ 10,
+            /* minAgeToDelete= */ Duration.ofMinutes(1));
+    cache.insertForTest(fileOfSize(10), "old", Instant.now().minus(Duration.ofMinutes(10)));
+
+    ListenableFuture<?> unused =
+        cache.addAll(ImmutableList.of(TestOutputArtifact.forDigest("new")), new NoopContext());
+    ExecutorService fetchExecutor = Executors.newSingleThreadExecutor();
+    try {
+      fetchExecutor.submit(artifactFetcher::executePendingTasks).get();
+    } finally {
+      fetchExecutor.shutdown();
+    }
+
+    assertThat(cache.readLockCount()).isEqualTo(0);
+    assertThat(cache.listDigests()).containsExactly("new");
+  }
+
+  @Test
+  public void access_times_persisted_in_batches() throws Exception {
+    cache.insertForTest(fileOfSize(10), "a", Instant.now().minus(Duration.ofMinutes(10)));
+    Instant accessTime = Instant.now();
+    ArtifactAccessIndex index = ArtifactAccessIndex.load(cacheDir.getRoot().toPath());
+
+    index.recordAccess("a", accessTime, () -> 10);
+    assertThat(ArtifactAccessIndex.load(cacheDir.getRoot().toPath()).get("a").lastAccess())
+        .isNotEqualTo(accessTime);
+
+    index.flush();
+    assertThat(ArtifactAccessIndex.load(cacheDir.getRoot().toPath()).get("a").lastAccess())
+        .isEqualTo(accessTime);
+  }
 }